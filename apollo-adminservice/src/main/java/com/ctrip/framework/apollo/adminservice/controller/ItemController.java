@@ -27,12 +27,16 @@ import com.ctrip.framework.apollo.biz.service.NamespaceService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ConfigChangeContentBuilder;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceBundleDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
+import com.ctrip.framework.apollo.common.dto.ReleaseDTO;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.ctrip.framework.apollo.common.utils.BeanUtils;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
@@ -184,6 +188,40 @@ public class ItemController {
                                         @PathVariable("namespaceName") String namespaceName) {
     //get latest release time
     Release latestActiveRelease = releaseService.findLatestActiveRelease(appId, clusterName, namespaceName);
+    return findDeletedItems(appId, clusterName, namespaceName, latestActiveRelease);
+  }
+
+  /**
+   * all the namespaces of the cluster with their items, latest active release and deleted items, which saves the
+   * portal from requesting them namespace by namespace
+   */
+  @GetMapping("/apps/{appId}/clusters/{clusterName}/namespace-bundles")
+  public List<NamespaceBundleDTO> findNamespaceBundles(@PathVariable("appId") String appId,
+                                                       @PathVariable("clusterName") String clusterName,
+                                                       @RequestParam(value = "includeDeletedItems", defaultValue = "true")
+                                                           boolean includeDeletedItems) {
+    List<Namespace> namespaces = namespaceService.findNamespaces(appId, clusterName);
+    List<NamespaceBundleDTO> bundles = new ArrayList<>(namespaces.size());
+    for (Namespace namespace : namespaces) {
+      String namespaceName = namespace.getNamespaceName();
+      Release latestActiveRelease = releaseService.findLatestActiveRelease(appId, clusterName, namespaceName);
+
+      NamespaceBundleDTO bundle = new NamespaceBundleDTO();
+      bundle.setNamespace(BeanUtils.transform(NamespaceDTO.class, namespace));
+      bundle.setItems(BeanUtils.batchTransform(ItemDTO.class, itemService.findItemsWithOrdered(namespace.getId())));
+      if (latestActiveRelease != null) {
+        bundle.setLatestRelease(BeanUtils.transform(ReleaseDTO.class, latestActiveRelease));
+      }
+      if (includeDeletedItems) {
+        bundle.setDeletedItems(findDeletedItems(appId, clusterName, namespaceName, latestActiveRelease));
+      }
+      bundles.add(bundle);
+    }
+    return bundles;
+  }
+
+  private List<ItemDTO> findDeletedItems(String appId, String clusterName, String namespaceName,
+                                         Release latestActiveRelease) {
     List<Commit> commits;
     if (Objects.nonNull(latestActiveRelease)) {
       commits = commitService.find(appId, clusterName, namespaceName, latestActiveRelease.getDataChangeCreatedTime(), null);
@@ -24,6 +24,7 @@ import com.ctrip.framework.apollo.biz.repository.ItemRepository;
 import com.ctrip.framework.apollo.common.dto.AppDTO;
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceBundleDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
 import java.util.List;
 import java.util.Objects;
@@ -150,4 +151,38 @@ public class ItemControllerTest extends AbstractControllerTest {
         Pageable.ofSize(10));
     assertThat(commitList).hasSize(2);
   }
+
+  @Test
+  @Sql(scripts = "/controller/test-itemset.sql", executionPhase = ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/controller/cleanup.sql", executionPhase = ExecutionPhase.AFTER_TEST_METHOD)
+  public void testFindNamespaceBundles() {
+    this.testDelete();
+
+    String anotherItemKey = "another-key";
+    NamespaceDTO namespace = restTemplate.getForObject(namespaceBaseUrl(),
+        NamespaceDTO.class, "someAppId", "default", "application");
+    assert namespace != null;
+    ItemDTO item = new ItemDTO(anotherItemKey, "another-value", "", 1);
+    item.setNamespaceId(namespace.getId());
+    item.setDataChangeLastModifiedBy("apollo");
+    restTemplate.postForEntity(itemBaseUrl(), item, ItemDTO.class, "someAppId", "default", "application");
+
+    String bundlesUrl = url("/apps/{appId}/clusters/{clusterName}/namespace-bundles?includeDeletedItems={includeDeletedItems}");
+    NamespaceBundleDTO[] bundles = restTemplate.getForObject(bundlesUrl, NamespaceBundleDTO[].class,
+        "someAppId", "default", true);
+
+    assertThat(bundles).hasSize(2);
+    assertThat(bundles[0].getNamespace().getNamespaceName()).isEqualTo("application");
+    assertThat(bundles[0].getItems()).extracting(ItemDTO::getKey).containsExactly(anotherItemKey);
+    assertThat(bundles[0].getDeletedItems()).extracting(ItemDTO::getKey).containsExactly("test-key");
+    assertThat(bundles[1].getNamespace().getNamespaceName()).isEqualTo("someNamespace");
+    assertThat(bundles[1].getItems()).isEmpty();
+    assertThat(bundles[1].getDeletedItems()).isEmpty();
+
+    bundles = restTemplate.getForObject(bundlesUrl, NamespaceBundleDTO[].class, "someAppId", "default", false);
+
+    assertThat(bundles).hasSize(2);
+    assertThat(bundles[0].getItems()).extracting(ItemDTO::getKey).containsExactly(anotherItemKey);
+    assertThat(bundles[0].getDeletedItems()).isEmpty();
+  }
 }
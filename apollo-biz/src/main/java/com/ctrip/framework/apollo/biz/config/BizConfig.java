@@ -38,15 +38,20 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_ITEM_VALUE_LENGTH = 20000;
   private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; //60s
   private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; //60s
+  private static final int DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL = 600; //600s
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESS_KEY_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESS_KEY_CACHE_REBUILD_INTERVAL = 60; //60s
   private static final int DEFAULT_ACCESS_KEY_AUTH_TIME_DIFF_TOLERANCE = 60; //60s
   private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
+  private static final int DEFAULT_RELEASE_MESSAGE_PUSH_SCAN_INTERVAL_IN_MS = 10000; //10s
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_FAN_OUT_THREADS = 4;
   private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; //60s
+  private static final int DEFAULT_NOTIFICATION_STREAM_TIMEOUT = 1800; //30min
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_WARM_UP_THREADS = 4;
   public static final int DEFAULT_RELEASE_HISTORY_RETENTION_SIZE = -1;
 
   private static final Gson GSON = new Gson();
@@ -83,12 +88,23 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL);
   }
 
+  public int grayReleaseRuleRebuildInterval() {
+    int interval = getIntProperty("apollo.gray-release-rule-rebuild.interval", DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL);
+  }
+
   public long longPollingTimeoutInMilli() {
     int timeout = getIntProperty("long.polling.timeout", DEFAULT_LONG_POLLING_TIMEOUT);
     // java client's long polling timeout is 90 seconds, so server side long polling timeout must be less than 90
     return 1000 * checkInt(timeout, 1, 90, DEFAULT_LONG_POLLING_TIMEOUT);
   }
 
+  public long notificationStreamTimeoutInMilli() {
+    int timeout = getIntProperty("notification.stream.timeout", DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+    // clients reconnect when the stream times out, keep it long enough to avoid reconnect storms
+    return 1000L * checkInt(timeout, 60, 86400, DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+  }
+
   public int itemKeyLengthLimit() {
     int limit = getIntProperty("item.key.length.limit", DEFAULT_ITEM_KEY_LENGTH);
     return checkInt(limit, 5, Integer.MAX_VALUE, DEFAULT_ITEM_KEY_LENGTH);
@@ -201,10 +217,74 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  /**
+   * The max notifications sent per second when notifying a large number of clients,
+   * defaults to notification batch / notification batch interval
+   */
+  public int releaseMessageNotificationRate() {
+    int rate = getIntProperty("apollo.release-message.notification.rate", 0);
+    if (rate > 0) {
+      return rate;
+    }
+    long defaultRate = 1000L * releaseMessageNotificationBatch() / releaseMessageNotificationBatchIntervalInMilli();
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, defaultRate));
+  }
+
+  public int releaseMessageNotificationFanOutThreads() {
+    int threads = getIntProperty("apollo.release-message.notification.fan-out.threads",
+        DEFAULT_RELEASE_MESSAGE_NOTIFICATION_FAN_OUT_THREADS);
+    return checkInt(threads, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_FAN_OUT_THREADS);
+  }
+
+  /**
+   * Whether admin services push new release message ids to config services, the database scan is kept as a fallback
+   */
+  public boolean isReleaseMessagePushEnabled() {
+    return getBooleanProperty("apollo.release-message.push.enabled", false);
+  }
+
+  /**
+   * The database scan interval used instead of apollo.message-scan.interval when release message push is enabled
+   */
+  public int releaseMessagePushScanIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message.push.scan.interval",
+        DEFAULT_RELEASE_MESSAGE_PUSH_SCAN_INTERVAL_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_PUSH_SCAN_INTERVAL_IN_MS);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
 
+  /**
+   * The max estimated heap retained by the config service caches in total, 0 means unbounded
+   */
+  public long configServiceCacheMaxSizeInBytes() {
+    int maxSizeInMB = getIntProperty("config-service.cache.max-size-in-mb", 0);
+    return 1024L * 1024 * checkInt(maxSizeInMB, 0, Integer.MAX_VALUE, 0);
+  }
+
+  /**
+   * Cached releases accessed after this interval are reloaded asynchronously, 0 means refresh is disabled
+   */
+  public int configServiceCacheRefreshIntervalInSeconds() {
+    int interval = getIntProperty("config-service.cache.refresh.interval", 0);
+    return checkInt(interval, 0, Integer.MAX_VALUE, 0);
+  }
+
+  /**
+   * The number of the hottest namespaces preloaded into the config service cache on startup, 0 means warm-up is disabled
+   */
+  public int configServiceCacheWarmUpSize() {
+    int size = getIntProperty("config-service.cache.warm-up.size", 0);
+    return checkInt(size, 0, Integer.MAX_VALUE, 0);
+  }
+
+  public int configServiceCacheWarmUpThreads() {
+    int threads = getIntProperty("config-service.cache.warm-up.threads", DEFAULT_CONFIG_SERVICE_CACHE_WARM_UP_THREADS);
+    return checkInt(threads, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_WARM_UP_THREADS);
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable index of the active gray release rules of one configAppId+configCluster+configNamespace.
+ * <p>
+ * Rule items are indexed by clientAppId, then by client ip and client label, so a lookup is a few hash lookups
+ * instead of a scan of all the rule items. When a client matches more than one rule, the rule with the smallest id
+ * wins, which is the same as scanning the rules ordered by id.
+ * <p>
+ * The index is rebuilt and swapped as a whole when the rules change, so lookups need no locking and allocate nothing.
+ */
+final class GrayReleaseRuleIndex {
+  private final Map<String, ClientAppRules> clientAppRules;
+
+  private GrayReleaseRuleIndex(Map<String, ClientAppRules> clientAppRules) {
+    this.clientAppRules = clientAppRules;
+  }
+
+  /**
+   * @param rules the rules of one namespace, ordered by rule id
+   * @return the index, or null if there is no active rule
+   */
+  static GrayReleaseRuleIndex build(Iterable<GrayReleaseRuleCache> rules) {
+    Map<String, ClientAppRules> clientAppRules = Maps.newHashMap();
+    for (GrayReleaseRuleCache rule : rules) {
+      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+        continue;
+      }
+      MatchedRule matchedRule = new MatchedRule(rule.getRuleId(), rule.getReleaseId());
+      for (GrayReleaseRuleItemDTO ruleItem : rule.getRuleItems()) {
+        clientAppRules.computeIfAbsent(normalizeClientAppId(ruleItem.getClientAppId()), k -> new ClientAppRules())
+            .add(ruleItem, matchedRule);
+      }
+    }
+    if (clientAppRules.isEmpty()) {
+      return null;
+    }
+    return new GrayReleaseRuleIndex(clientAppRules);
+  }
+
+  Long findReleaseId(String clientAppId, String clientIp, String clientLabel) {
+    if (clientAppId == null) {
+      return null;
+    }
+    ClientAppRules rules = clientAppRules.get(normalizeClientAppId(clientAppId));
+    if (rules == null) {
+      return null;
+    }
+    MatchedRule matchedRule = earlier(rules.allIp, rules.allLabel);
+    if (clientIp != null) {
+      matchedRule = earlier(matchedRule, rules.ips.get(clientIp));
+    }
+    if (clientLabel != null) {
+      matchedRule = earlier(matchedRule, rules.labels.get(clientLabel));
+    }
+    return matchedRule == null ? null : matchedRule.releaseId;
+  }
+
+  private static String normalizeClientAppId(String clientAppId) {
+    // returns the same instance if it's already lower case
+    return clientAppId.toLowerCase(Locale.ROOT);
+  }
+
+  private static MatchedRule earlier(MatchedRule some, MatchedRule another) {
+    if (some == null) {
+      return another;
+    }
+    if (another == null) {
+      return some;
+    }
+    return some.ruleId <= another.ruleId ? some : another;
+  }
+
+  private static final class ClientAppRules {
+    private Map<String, MatchedRule> ips = Collections.emptyMap();
+    private Map<String, MatchedRule> labels = Collections.emptyMap();
+    private MatchedRule allIp;
+    private MatchedRule allLabel;
+
+    // rules are added in the order of rule id, so the first one added wins
+    private void add(GrayReleaseRuleItemDTO ruleItem, MatchedRule matchedRule) {
+      for (String clientIp : ruleItem.getClientIpList()) {
+        if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+          allIp = earlier(allIp, matchedRule);
+        } else if (clientIp != null) {
+          if (ips.isEmpty()) {
+            ips = Maps.newHashMap();
+          }
+          ips.putIfAbsent(clientIp, matchedRule);
+        }
+      }
+      for (String clientLabel : ruleItem.getClientLabelList()) {
+        if (GrayReleaseRuleItemDTO.ALL_Label.equals(clientLabel)) {
+          allLabel = earlier(allLabel, matchedRule);
+        } else if (clientLabel != null) {
+          if (labels.isEmpty()) {
+            labels = Maps.newHashMap();
+          }
+          labels.putIfAbsent(clientLabel, matchedRule);
+        }
+      }
+    }
+  }
+
+  private static final class MatchedRule {
+    private final long ruleId;
+    // boxed once here, so that lookups do not allocate
+    private final Long releaseId;
+
+    private MatchedRule(long ruleId, long releaseId) {
+      this.ruleId = ruleId;
+      this.releaseId = releaseId;
+    }
+  }
+}
@@ -19,7 +19,7 @@ package com.ctrip.framework.apollo.biz.grayReleaseRule;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
@@ -45,8 +45,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -63,11 +68,18 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private final BizConfig bizConfig;
 
   private int databaseScanInterval;
+  private int databaseRebuildInterval;
   private ScheduledExecutorService executorService;
-  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
+  //only accessed by the scan thread
+  private Date lastTimeScanned;
+  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map, only accessed when merging rules
   private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
+  //store lower case configAppId+configCluster+configNamespace -> index of active rules, rebuilt when rules change
+  private ConcurrentMap<String, GrayReleaseRuleIndex> grayReleaseRuleIndexes;
   //store clientAppId+clientNamespace+ip -> ruleId map
   private Multimap<String, Long> reversedGrayReleaseRuleCache;
+  //store clientAppId+clientNamespace -> ruleId map of the rules matching clients by label
+  private Multimap<String, Long> reversedLabelledGrayReleaseRuleCache;
   //an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
 
@@ -76,10 +88,13 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     this.grayReleaseRuleRepository = grayReleaseRuleRepository;
     this.bizConfig = bizConfig;
     loadVersion = new AtomicLong();
-    grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    lastTimeScanned = new Date(0L);
+    grayReleaseRuleCache = TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural());
+    grayReleaseRuleIndexes = Maps.newConcurrentMap();
     reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
         TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    reversedLabelledGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
+        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
   }
@@ -88,10 +103,14 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
     //force sync load for the first time
-    periodicScanRules();
+    periodicRebuildRules();
     executorService.scheduleWithFixedDelay(this::periodicScanRules,
         getDatabaseScanIntervalSecond(), getDatabaseScanIntervalSecond(), getDatabaseScanTimeUnit()
     );
+    //full scan is the fallback for rules missed by the incremental scan, e.g. committed with an earlier modified time
+    executorService.scheduleAtFixedRate(this::periodicRebuildRules,
+        getDatabaseRebuildIntervalSecond(), getDatabaseRebuildIntervalSecond(), getDatabaseScanTimeUnit()
+    );
   }
 
   @Override
@@ -121,7 +140,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         "scanGrayReleaseRules");
     try {
       loadVersion.incrementAndGet();
-      scanGrayReleaseRules();
+      scanNewAndUpdatedGrayReleaseRules();
+      removeOutdatedInactiveRules();
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       transaction.setStatus(ex);
@@ -131,24 +151,28 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
+  private void periodicRebuildRules() {
+    Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
+        "rebuildGrayReleaseRules");
+    try {
+      scanGrayReleaseRules();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Rebuild gray release rule failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String clientLabel, String
       configAppId, String configCluster, String configNamespaceName) {
-    String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    GrayReleaseRuleIndex index = grayReleaseRuleIndexes.get(assembleGrayReleaseRuleIndexKey(
+        assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName)));
+    if (index == null) {
       return null;
     }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp, clientLabel)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return index.findReleaseId(clientAppId, clientIp, clientLabel);
   }
 
   /**
@@ -163,6 +187,14 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
             .ALL_IP));
   }
 
+  /**
+   * Check whether there are gray release rules matching clients of the clientAppId by label for the namespace. Labels
+   * are not indexed per client, so callers sharing results among clients could tell whether a label might matter.
+   */
+  public boolean hasLabelledGrayReleaseRule(String clientAppId, String namespaceName) {
+    return reversedLabelledGrayReleaseRuleCache.containsKey(STRING_JOINER.join(clientAppId, namespaceName));
+  }
+
   private void scanGrayReleaseRules() {
     long maxIdScanned = 0;
     boolean hasMore = true;
@@ -174,6 +206,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         break;
       }
       mergeGrayReleaseRules(grayReleaseRules);
+      updateLastTimeScanned(grayReleaseRules);
       int rulesScanned = grayReleaseRules.size();
       maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
       //batch is 500
@@ -181,10 +214,65 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+  /**
+   * Rules are never updated in place, each change inserts a new rule, so only rules modified after the last scan need
+   * to be loaded and parsed.
+   */
+  private void scanNewAndUpdatedGrayReleaseRules() {
+    boolean hasMore = true;
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      //current batch is 500
+      List<GrayReleaseRule> grayReleaseRules = grayReleaseRuleRepository
+          .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(lastTimeScanned);
+      if (CollectionUtils.isEmpty(grayReleaseRules)) {
+        break;
+      }
+
+      int rulesScanned = grayReleaseRules.size();
+      mergeGrayReleaseRules(grayReleaseRules);
+      logger.info("Loaded {} new/updated gray release rules from startTime {}", rulesScanned, lastTimeScanned);
+
+      hasMore = rulesScanned == 500;
+      lastTimeScanned = grayReleaseRules.get(rulesScanned - 1).getDataChangeLastModifiedTime();
+
+      // In order to avoid missing some records at the last time, we need to scan records at this time individually
+      if (hasMore) {
+        mergeGrayReleaseRules(grayReleaseRuleRepository.findByDataChangeLastModifiedTime(lastTimeScanned));
+      }
+    }
+  }
+
+  private void updateLastTimeScanned(List<GrayReleaseRule> grayReleaseRules) {
+    for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
+      Date lastModifiedTime = grayReleaseRule.getDataChangeLastModifiedTime();
+      if (lastModifiedTime != null && lastModifiedTime.after(lastTimeScanned)) {
+        lastTimeScanned = lastModifiedTime;
+      }
+    }
+  }
+
+  /**
+   * Inactive branch rules are kept for 2 scan cycles so that stale rules of the branch are not loaded again, then
+   * removed. They used to be removed when seen by the next full scan, but the incremental scan doesn't see them again.
+   */
+  private synchronized void removeOutdatedInactiveRules() {
+    Iterator<Map.Entry<String, GrayReleaseRuleCache>> iterator = grayReleaseRuleCache.entries().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, GrayReleaseRuleCache> entry = iterator.next();
+      GrayReleaseRuleCache ruleCache = entry.getValue();
+      if (ruleCache.getBranchStatus() != NamespaceBranchStatus.ACTIVE
+          && (loadVersion.get() - ruleCache.getLoadVersion()) > 1) {
+        //inactive rules are not in the index or the reversed cache
+        iterator.remove();
+      }
+    }
+  }
+
+  private synchronized void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
       return;
     }
+    Set<String> changedKeys = Sets.newHashSet();
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         //filter rules with no release id, i.e. never released
@@ -192,10 +280,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       }
       String key = assembleGrayReleaseRuleKey(grayReleaseRule.getAppId(), grayReleaseRule
           .getClusterName(), grayReleaseRule.getNamespaceName());
-      //create a new list to avoid ConcurrentModificationException
-      List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
       GrayReleaseRuleCache oldRule = null;
-      for (GrayReleaseRuleCache ruleCache : rules) {
+      for (GrayReleaseRuleCache ruleCache : grayReleaseRuleCache.get(key)) {
         if (ruleCache.getBranchName().equals(grayReleaseRule.getBranchName())) {
           oldRule = ruleCache;
           break;
@@ -213,6 +299,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         if (oldRule != null) {
           removeCache(key, oldRule);
         }
+        changedKeys.add(key);
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           //update load version
@@ -220,9 +307,25 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           //remove outdated inactive branch rule after 2 update cycles
           removeCache(key, oldRule);
+          changedKeys.add(key);
         }
       }
     }
+
+    //rebuild once per namespace, so that loading many rules of the same namespace is not quadratic
+    for (String key : changedKeys) {
+      rebuildIndex(key);
+    }
+  }
+
+  private void rebuildIndex(String key) {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(grayReleaseRuleCache.get(key));
+    String indexKey = assembleGrayReleaseRuleIndexKey(key);
+    if (index == null) {
+      grayReleaseRuleIndexes.remove(indexKey);
+    } else {
+      grayReleaseRuleIndexes.put(indexKey, index);
+    }
   }
 
   private void addCache(String key, GrayReleaseRuleCache ruleCache) {
@@ -232,6 +335,10 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
           reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
               .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
         }
+        if (!CollectionUtils.isEmpty(ruleItemDTO.getClientLabelList())) {
+          reversedLabelledGrayReleaseRuleCache.put(STRING_JOINER.join(ruleItemDTO.getClientAppId(),
+              ruleCache.getNamespaceName()), ruleCache.getRuleId());
+        }
       }
     }
     grayReleaseRuleCache.put(key, ruleCache);
@@ -244,6 +351,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
             .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
       }
+      reversedLabelledGrayReleaseRuleCache.remove(STRING_JOINER.join(ruleItemDTO.getClientAppId(),
+          ruleCache.getNamespaceName()), ruleCache.getRuleId());
     }
   }
 
@@ -266,12 +375,17 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   private void populateDataBaseInterval() {
     databaseScanInterval = bizConfig.grayReleaseRuleScanInterval();
+    databaseRebuildInterval = bizConfig.grayReleaseRuleRebuildInterval();
   }
 
   private int getDatabaseScanIntervalSecond() {
     return databaseScanInterval;
   }
 
+  private int getDatabaseRebuildIntervalSecond() {
+    return databaseRebuildInterval;
+  }
+
   private TimeUnit getDatabaseScanTimeUnit() {
     return TimeUnit.SECONDS;
   }
@@ -281,6 +395,11 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
   }
 
+  private String assembleGrayReleaseRuleIndexKey(String grayReleaseRuleKey) {
+    //keys are case insensitive, returns the same instance if it's already lower case
+    return grayReleaseRuleKey.toLowerCase(Locale.ROOT);
+  }
+
   private String assembleReversedGrayReleaseRuleKey(String clientAppId, String
       clientNamespaceName, String clientIp) {
     return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
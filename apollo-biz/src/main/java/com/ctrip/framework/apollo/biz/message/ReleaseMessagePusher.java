@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.registry.DatabaseDiscoveryClient;
+import com.ctrip.framework.apollo.biz.registry.ServiceInstance;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Push the ids of newly saved release messages to all config service instances found by {@link DatabaseDiscoveryClient},
+ * so they don't have to wait for the next database scan.
+ * <p>
+ * Pushing is best effort, the {@link ReleaseMessageScanner} on config services would still pick up the messages if
+ * pushing failed.
+ */
+@Component
+public class ReleaseMessagePusher {
+  private static final Logger logger = LoggerFactory.getLogger(ReleaseMessagePusher.class);
+  private static final int PUSH_QUEUE_MAX_SIZE = 1000;
+  private static final int PUSH_THREADS = 4;
+  private static final int CONNECT_TIMEOUT_IN_MILLI = 500;
+  private static final int READ_TIMEOUT_IN_MILLI = 1000;
+  static final String PUSH_PATH = "release-messages";
+  private static final Splitter ACCESS_TOKEN_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+
+  private final BlockingQueue<Long> toPush = Queues.newLinkedBlockingQueue(PUSH_QUEUE_MAX_SIZE);
+  private final ExecutorService drainExecutorService;
+  private final ExecutorService pushExecutorService;
+  private final AtomicBoolean pushStopped;
+  private final RestTemplate restTemplate;
+
+  private final BizConfig bizConfig;
+  private final ObjectProvider<DatabaseDiscoveryClient> discoveryClientProvider;
+
+  public ReleaseMessagePusher(final BizConfig bizConfig,
+      final ObjectProvider<DatabaseDiscoveryClient> discoveryClientProvider) {
+    drainExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create("ReleaseMessagePusher", true));
+    pushExecutorService = Executors.newFixedThreadPool(PUSH_THREADS,
+        ApolloThreadFactory.create("ReleaseMessagePusher-Http", true));
+    pushStopped = new AtomicBoolean(false);
+    this.bizConfig = bizConfig;
+    this.discoveryClientProvider = discoveryClientProvider;
+
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLI);
+    requestFactory.setReadTimeout(READ_TIMEOUT_IN_MILLI);
+    restTemplate = new RestTemplate(requestFactory);
+  }
+
+  /**
+   * Push the release message id once the current transaction (if any) is committed
+   */
+  public void push(long releaseMessageId) {
+    if (!bizConfig.isReleaseMessagePushEnabled()) {
+      return;
+    }
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      enqueue(releaseMessageId);
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        enqueue(releaseMessageId);
+      }
+    });
+  }
+
+  private void enqueue(long releaseMessageId) {
+    if (!toPush.offer(releaseMessageId)) {
+      logger.warn("Queue is full, Failed to add message {} to push queue", releaseMessageId);
+    }
+  }
+
+  @PostConstruct
+  private void initialize() {
+    drainExecutorService.submit(() -> {
+      while (!pushStopped.get() && !Thread.currentThread().isInterrupted()) {
+        try {
+          Long releaseMessageId = toPush.poll(1, TimeUnit.SECONDS);
+          if (releaseMessageId == null) {
+            continue;
+          }
+          // push the messages piled up in one request
+          List<Long> releaseMessageIds = Lists.newArrayList(releaseMessageId);
+          toPush.drainTo(releaseMessageIds);
+          pushToConfigServices(releaseMessageIds);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+      }
+    });
+  }
+
+  void pushToConfigServices(List<Long> releaseMessageIds) {
+    DatabaseDiscoveryClient discoveryClient = discoveryClientProvider.getIfAvailable();
+    if (discoveryClient == null) {
+      logger.debug("No database discovery client found, skip pushing release messages {}", releaseMessageIds);
+      return;
+    }
+
+    List<ServiceInstance> instances = discoveryClient.getInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    HttpHeaders headers = buildHeaders();
+    for (ServiceInstance instance : instances) {
+      String url = buildPushUrl(instance);
+      pushExecutorService.submit(() -> {
+        try {
+          restTemplate.postForEntity(url, new HttpEntity<>(releaseMessageIds, headers), Void.class);
+        } catch (Throwable ex) {
+          logger.warn("Push release messages {} to {} failed, will fall back to database scan", releaseMessageIds,
+              url, ex);
+          Tracer.logError(ex);
+        }
+      });
+    }
+  }
+
+  /**
+   * Config services check the pushes with the admin service access tokens, so the first one is used if any
+   */
+  private HttpHeaders buildHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    if (!bizConfig.isAdminServiceAccessControlEnabled()) {
+      return headers;
+    }
+    String accessTokens = bizConfig.getAdminServiceAccessTokens();
+    if (!Strings.isNullOrEmpty(accessTokens)) {
+      List<String> accessTokenList = ACCESS_TOKEN_SPLITTER.splitToList(accessTokens);
+      if (!accessTokenList.isEmpty()) {
+        headers.set(HttpHeaders.AUTHORIZATION, accessTokenList.get(0));
+      }
+    }
+    return headers;
+  }
+
+  private String buildPushUrl(ServiceInstance instance) {
+    String uri = instance.getUri().toString();
+    return uri.endsWith("/") ? uri + PUSH_PATH : uri + "/" + PUSH_PATH;
+  }
+
+  @PreDestroy
+  void stopPush() {
+    pushStopped.set(true);
+    pushExecutorService.shutdown();
+  }
+}
@@ -17,6 +17,9 @@
 package com.ctrip.framework.apollo.biz.message;
 
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +28,8 @@ import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,13 +50,19 @@ import com.google.common.collect.Lists;
 public class ReleaseMessageScanner implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
   private static final int missingReleaseMessageMaxAge = 10; // hardcoded to 10, could be configured via BizConfig if necessary
+  // pushed ids too far ahead of the scan are not real messages, the same as the batch size of the push endpoint
+  private static final long MAX_PUSHED_RELEASE_MESSAGE_ID_AHEAD = 1000;
+  private static final int MAX_PENDING_PUSHED_RELEASE_MESSAGES = 1000;
   private final BizConfig bizConfig;
   private final ReleaseMessageRepository releaseMessageRepository;
   private int databaseScanInterval;
   private final List<ReleaseMessageListener> listeners;
   private final ScheduledExecutorService executorService;
   private final Map<Long, Integer> missingReleaseMessages; // missing release message id => age counter
-  private long maxIdScanned;
+  private final Set<Long> pushedReleaseMessages; // pushed release message ids not scanned yet
+  private final Set<Long> pendingPushedReleaseMessages; // pushed release message ids not handled yet
+  private final AtomicBoolean pushedReleaseMessagesScheduled;
+  private volatile long maxIdScanned;
 
   public ReleaseMessageScanner(final BizConfig bizConfig,
       final ReleaseMessageRepository releaseMessageRepository) {
@@ -61,11 +72,18 @@ public class ReleaseMessageScanner implements InitializingBean {
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
     missingReleaseMessages = Maps.newHashMap();
+    pushedReleaseMessages = Sets.newHashSet();
+    pendingPushedReleaseMessages = Sets.newConcurrentHashSet();
+    pushedReleaseMessagesScheduled = new AtomicBoolean(false);
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
     databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
+    if (bizConfig.isReleaseMessagePushEnabled()) {
+      // new messages are pushed, so the scan is only for the pushes failed
+      databaseScanInterval = Math.max(databaseScanInterval, bizConfig.releaseMessagePushScanIntervalInMilli());
+    }
     maxIdScanned = loadLargestMessageId();
     executorService.scheduleWithFixedDelay(() -> {
       Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
@@ -93,6 +111,74 @@ public class ReleaseMessageScanner implements InitializingBean {
     }
   }
 
+  /**
+   * Notify listeners with the pushed release messages ahead of the next scan.
+   * The messages are handled in the scanner thread, so listeners are never invoked concurrently,
+   * and messages already sent would not be sent again.
+   * <p>
+   * The ids pushed before the scanner thread gets to them are loaded together, and the ids too far ahead of the scan or
+   * beyond the max pending ones are ignored, so pushes could not hold up the scan. The ignored messages, if any, are
+   * still picked up by the scan.
+   */
+  public void onReleaseMessagesPushed(Collection<Long> releaseMessageIds) {
+    long maxIdAllowed = maxIdScanned + MAX_PUSHED_RELEASE_MESSAGE_ID_AHEAD;
+    for (Long releaseMessageId : releaseMessageIds) {
+      if (releaseMessageId == null || releaseMessageId > maxIdAllowed) {
+        continue;
+      }
+      if (pendingPushedReleaseMessages.size() >= MAX_PENDING_PUSHED_RELEASE_MESSAGES) {
+        logger.warn("Too many pushed release messages pending, ignore the rest and wait for the scan");
+        break;
+      }
+      pendingPushedReleaseMessages.add(releaseMessageId);
+    }
+
+    if (pendingPushedReleaseMessages.isEmpty() || !pushedReleaseMessagesScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    executorService.execute(() -> {
+      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "handlePushedMessage");
+      try {
+        // reset before taking the ids, so the ids pushed afterwards are handled by another run
+        pushedReleaseMessagesScheduled.set(false);
+        List<Long> pushedReleaseMessageIds = Lists.newArrayList(pendingPushedReleaseMessages);
+        pendingPushedReleaseMessages.removeAll(pushedReleaseMessageIds);
+        sendPushedMessages(pushedReleaseMessageIds);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        logger.error("Send pushed message failed", ex);
+      } finally {
+        transaction.complete();
+      }
+    });
+  }
+
+  private void sendPushedMessages(Collection<Long> releaseMessageIds) {
+    List<Long> toLoad = releaseMessageIds.stream().filter(this::isNotSent).sorted().collect(Collectors.toList());
+    if (toLoad.isEmpty()) {
+      return;
+    }
+    List<ReleaseMessage> releaseMessages = Lists.newArrayList(releaseMessageRepository.findAllById(toLoad));
+    releaseMessages.sort(Comparator.comparing(ReleaseMessage::getId));
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      if (releaseMessage.getId() > maxIdScanned) {
+        pushedReleaseMessages.add(releaseMessage.getId());
+      } else {
+        missingReleaseMessages.remove(releaseMessage.getId());
+      }
+    }
+    fireMessageScanned(releaseMessages);
+  }
+
+  private boolean isNotSent(long releaseMessageId) {
+    if (releaseMessageId > maxIdScanned) {
+      return !pushedReleaseMessages.contains(releaseMessageId);
+    }
+    return missingReleaseMessages.containsKey(releaseMessageId);
+  }
+
   /**
    * Scan messages, continue scanning until there is no more messages
    */
@@ -115,7 +201,10 @@ public class ReleaseMessageScanner implements InitializingBean {
     if (CollectionUtils.isEmpty(releaseMessages)) {
       return false;
     }
-    fireMessageScanned(releaseMessages);
+    // skip the messages already sent by push
+    fireMessageScanned(releaseMessages.stream()
+        .filter(releaseMessage -> !pushedReleaseMessages.remove(releaseMessage.getId()))
+        .collect(Collectors.toList()));
     int messageScanned = releaseMessages.size();
     long newMaxIdScanned = releaseMessages.get(messageScanned - 1).getId();
     // check id gaps, possible reasons are release message not committed yet or already rolled back
@@ -123,6 +212,10 @@ public class ReleaseMessageScanner implements InitializingBean {
       recordMissingReleaseMessageIds(releaseMessages, maxIdScanned);
     }
     maxIdScanned = newMaxIdScanned;
+    // pushed messages might be cleaned before being scanned
+    if (!pushedReleaseMessages.isEmpty()) {
+      pushedReleaseMessages.removeIf(releaseMessageId -> releaseMessageId <= newMaxIdScanned);
+    }
     return messageScanned == 500;
   }
 
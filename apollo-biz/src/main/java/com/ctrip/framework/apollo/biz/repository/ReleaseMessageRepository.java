@@ -39,4 +39,7 @@ public interface ReleaseMessageRepository extends PagingAndSortingRepository<Rel
 
   @Query("select message, max(id) as id from ReleaseMessage where message in :messages group by message")
   List<Object[]> findLatestReleaseMessagesGroupByMessages(@Param("messages") Collection<String> messages);
+
+  @Query("select message, max(id) as id from ReleaseMessage group by message")
+  List<Object[]> findAllLatestReleaseMessagesGroupByMessages();
 }
@@ -20,21 +20,26 @@ import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
 import com.ctrip.framework.apollo.biz.repository.InstanceRepository;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import java.util.Objects;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
 import java.math.BigInteger;
+import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -43,14 +48,25 @@ import java.util.stream.Collectors;
  */
 @Service
 public class InstanceService {
+  private static final String INSERT_INSTANCE_SQL = "INSERT INTO Instance (AppId, ClusterName, DataCenter, Ip, "
+      + "DataChange_CreatedTime, DataChange_LastTime) VALUES (?, ?, ?, ?, ?, ?)";
+  private static final String INSERT_INSTANCE_CONFIG_SQL = "INSERT INTO InstanceConfig (InstanceId, ConfigAppId, "
+      + "ConfigClusterName, ConfigNamespaceName, ReleaseKey, ReleaseDeliveryTime, DataChange_CreatedTime, "
+      + "DataChange_LastTime) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_INSTANCE_CONFIG_SQL = "UPDATE InstanceConfig SET ConfigClusterName = ?, "
+      + "ReleaseKey = ?, ReleaseDeliveryTime = ?, DataChange_LastTime = ? WHERE Id = ?";
+
   private final InstanceRepository instanceRepository;
   private final InstanceConfigRepository instanceConfigRepository;
+  private final JdbcTemplate jdbcTemplate;
 
   public InstanceService(
       final InstanceRepository instanceRepository,
-      final InstanceConfigRepository instanceConfigRepository) {
+      final InstanceConfigRepository instanceConfigRepository,
+      final JdbcTemplate jdbcTemplate) {
     this.instanceRepository = instanceRepository;
     this.instanceConfigRepository = instanceConfigRepository;
+    this.jdbcTemplate = jdbcTemplate;
   }
 
   public Instance findInstance(String appId, String clusterName, String dataCenter, String ip) {
@@ -63,6 +79,10 @@ public class InstanceService {
     return Lists.newArrayList(instances);
   }
 
+  public List<Instance> findInstancesByIps(Set<String> ips) {
+    return instanceRepository.findByIpIn(ips);
+  }
+
   @Transactional
   public Instance createInstance(Instance instance) {
     instance.setId(0); //protection
@@ -70,6 +90,31 @@ public class InstanceService {
     return instanceRepository.save(instance);
   }
 
+  /**
+   * Insert the instances in one JDBC batch and load them back by ip, as IDENTITY ids are not returned by batches
+   *
+   * @return the created instances with their ids
+   */
+  @Transactional
+  public List<Instance> createInstances(List<Instance> instances) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    jdbcTemplate.batchUpdate(INSERT_INSTANCE_SQL, instances, instances.size(), (ps, instance) -> {
+      ps.setString(1, instance.getAppId());
+      ps.setString(2, instance.getClusterName());
+      ps.setString(3, instance.getDataCenter());
+      ps.setString(4, instance.getIp());
+      ps.setTimestamp(5, now);
+      ps.setTimestamp(6, now);
+    });
+
+    Set<String> ips = instances.stream().map(Instance::getIp).collect(Collectors.toSet());
+    return findInstancesByIps(ips).stream().filter(created -> instances.stream().anyMatch(instance ->
+        Objects.equals(instance.getAppId(), created.getAppId())
+            && Objects.equals(instance.getClusterName(), created.getClusterName())
+            && Objects.equals(instance.getDataCenter(), created.getDataCenter())
+            && Objects.equals(instance.getIp(), created.getIp()))).collect(Collectors.toList());
+  }
+
   public InstanceConfig findInstanceConfig(long instanceId, String configAppId, String
       configNamespaceName) {
     return instanceConfigRepository
@@ -77,12 +122,30 @@ public class InstanceService {
             instanceId, configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigsByInstanceIds(Set<Long> instanceIds) {
+    return instanceConfigRepository.findByInstanceIdIn(instanceIds);
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, Pageable
       pageable) {
     return instanceConfigRepository.findByReleaseKeyAndDataChangeLastModifiedTimeAfter(releaseKey,
             getValidInstanceConfigDate(), pageable);
   }
 
+  /**
+   * Find the namespaces fetched by the most instances recently
+   *
+   * @return the release message keys of the namespaces, i.e. appId+cluster+namespace, ordered by the number of
+   * instances desc
+   */
+  public List<String> findHottestNamespaces(int limit) {
+    List<Object[]> namespaces = instanceConfigRepository.findNamespacesOrderByInstanceCountDesc(
+        getValidInstanceConfigDate(), PageRequest.of(0, limit));
+
+    return namespaces.stream().map(namespace -> ReleaseMessageKeyGenerator.generate((String) namespace[0],
+        (String) namespace[1], (String) namespace[2])).collect(Collectors.toList());
+  }
+
   public Page<Instance> findInstancesByNamespace(String appId, String clusterName, String
       namespaceName, Pageable pageable) {
     Page<InstanceConfig> instanceConfigs = instanceConfigRepository.
@@ -185,6 +248,44 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  /**
+   * Create the new instance configs, i.e. those without id, in one JDBC batch and update the existing ones by id in
+   * another, both in one transaction
+   */
+  @Transactional
+  public void saveInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    Map<Boolean, List<InstanceConfig>> partitions = instanceConfigs.stream()
+        .collect(Collectors.partitioningBy(instanceConfig -> instanceConfig.getId() > 0));
+    List<InstanceConfig> toCreate = partitions.get(false);
+    List<InstanceConfig> toUpdate = partitions.get(true);
+
+    if (!toCreate.isEmpty()) {
+      jdbcTemplate.batchUpdate(INSERT_INSTANCE_CONFIG_SQL, toCreate, toCreate.size(), (ps, instanceConfig) -> {
+        ps.setLong(1, instanceConfig.getInstanceId());
+        ps.setString(2, instanceConfig.getConfigAppId());
+        ps.setString(3, instanceConfig.getConfigClusterName());
+        ps.setString(4, instanceConfig.getConfigNamespaceName());
+        ps.setString(5, instanceConfig.getReleaseKey());
+        ps.setTimestamp(6, toTimestamp(instanceConfig.getReleaseDeliveryTime()));
+        ps.setTimestamp(7, toTimestamp(instanceConfig.getDataChangeCreatedTime()));
+        ps.setTimestamp(8, toTimestamp(instanceConfig.getDataChangeCreatedTime()));
+      });
+    }
+    if (!toUpdate.isEmpty()) {
+      jdbcTemplate.batchUpdate(UPDATE_INSTANCE_CONFIG_SQL, toUpdate, toUpdate.size(), (ps, instanceConfig) -> {
+        ps.setString(1, instanceConfig.getConfigClusterName());
+        ps.setString(2, instanceConfig.getReleaseKey());
+        ps.setTimestamp(3, toTimestamp(instanceConfig.getReleaseDeliveryTime()));
+        ps.setTimestamp(4, toTimestamp(instanceConfig.getDataChangeLastModifiedTime()));
+        ps.setLong(5, instanceConfig.getId());
+      });
+    }
+  }
+
+  private Timestamp toTimestamp(Date date) {
+    return new Timestamp(date == null ? System.currentTimeMillis() : date.getTime());
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName, String configNamespaceName){
     return instanceConfigRepository.batchDelete(configAppId, configClusterName, configNamespaceName);
@@ -72,6 +72,56 @@ public class BizConfigTest {
     assertEquals(defaultBatch, bizConfig.releaseMessageNotificationBatch());
   }
 
+  @Test
+  public void testReleaseMessageNotificationRate() throws Exception {
+    int someRate = 5000;
+    when(environment.getProperty("apollo.release-message.notification.rate")).thenReturn(String.valueOf(someRate));
+
+    assertEquals(someRate, bizConfig.releaseMessageNotificationRate());
+  }
+
+  @Test
+  public void testReleaseMessageNotificationRateWithDefaultValue() throws Exception {
+    int someBatch = 20;
+    int someBatchInterval = 50;
+    when(environment.getProperty("apollo.release-message.notification.batch")).thenReturn(String.valueOf(someBatch));
+    when(environment.getProperty("apollo.release-message.notification.batch.interval"))
+        .thenReturn(String.valueOf(someBatchInterval));
+
+    assertEquals(someBatch * 1000 / someBatchInterval, bizConfig.releaseMessageNotificationRate());
+  }
+
+  @Test
+  public void testReleaseMessageNotificationFanOutThreadsWithInvalidNumber() throws Exception {
+    int defaultThreads = 4;
+    when(environment.getProperty("apollo.release-message.notification.fan-out.threads")).thenReturn("0");
+
+    assertEquals(defaultThreads, bizConfig.releaseMessageNotificationFanOutThreads());
+  }
+
+  @Test
+  public void testConfigServiceCacheMaxSizeInBytes() throws Exception {
+    int someMaxSizeInMB = 512;
+    when(environment.getProperty("config-service.cache.max-size-in-mb")).thenReturn(String.valueOf(someMaxSizeInMB));
+
+    assertEquals(someMaxSizeInMB * 1024L * 1024L, bizConfig.configServiceCacheMaxSizeInBytes());
+  }
+
+  @Test
+  public void testConfigServiceCacheMaxSizeInBytesWithInvalidNumber() throws Exception {
+    when(environment.getProperty("config-service.cache.max-size-in-mb")).thenReturn("-1");
+
+    assertEquals(0, bizConfig.configServiceCacheMaxSizeInBytes());
+  }
+
+  @Test
+  public void testConfigServiceCacheWarmUpThreadsWithInvalidNumber() throws Exception {
+    int defaultThreads = 4;
+    when(environment.getProperty("config-service.cache.warm-up.threads")).thenReturn("0");
+
+    assertEquals(defaultThreads, bizConfig.configServiceCacheWarmUpThreads());
+  }
+
   @Test
   public void testReleaseHistoryRetentionSize() {
     int someLimit = 20;
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compare scanning the rules of a namespace linearly with the indexed lookup of {@link GrayReleaseRulesHolder}.
+ * <p>
+ * Run with <code>main</code> from the IDE, add <code>-prof gc</code> to the options to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrayReleaseRulesHolderBenchmark {
+  private static final String someAppId = "someAppId";
+  private static final String someClusterName = "default";
+  private static final String someNamespaceName = "application";
+  private static final int IPS_PER_RULE = 10;
+
+  @Param({"10000"})
+  private int rules;
+
+  private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  private List<GrayReleaseRuleCache> ruleCaches;
+  private String[] clientAppIds;
+  private String[] clientIps;
+
+  @Setup
+  public void setUp() {
+    Gson gson = new Gson();
+    List<GrayReleaseRule> grayReleaseRules = Lists.newArrayListWithCapacity(rules);
+    ruleCaches = Lists.newArrayListWithCapacity(rules);
+    clientAppIds = new String[rules];
+    clientIps = new String[rules];
+    for (int i = 0; i < rules; i++) {
+      GrayReleaseRuleItemDTO ruleItem = new GrayReleaseRuleItemDTO(clientAppId(i));
+      for (int j = 0; j < IPS_PER_RULE; j++) {
+        ruleItem.getClientIpList().add(clientIp(i, j));
+      }
+      ruleItem.getClientLabelList().add("label" + i);
+      clientAppIds[i] = clientAppId(i);
+      clientIps[i] = clientIp(i, IPS_PER_RULE - 1);
+
+      GrayReleaseRule grayReleaseRule = new GrayReleaseRule();
+      grayReleaseRule.setId(i + 1);
+      grayReleaseRule.setAppId(someAppId);
+      grayReleaseRule.setClusterName(someClusterName);
+      grayReleaseRule.setNamespaceName(someNamespaceName);
+      grayReleaseRule.setBranchName("branch" + i);
+      grayReleaseRule.setRules(gson.toJson(Lists.newArrayList(ruleItem)));
+      grayReleaseRule.setReleaseId(i + 1L);
+      grayReleaseRule.setBranchStatus(NamespaceBranchStatus.ACTIVE);
+      grayReleaseRules.add(grayReleaseRule);
+
+      ruleCaches.add(new GrayReleaseRuleCache(i + 1, "branch" + i, someNamespaceName, i + 1,
+          NamespaceBranchStatus.ACTIVE, 0, Sets.newHashSet(ruleItem)));
+    }
+
+    GrayReleaseRuleRepository grayReleaseRuleRepository = mock(GrayReleaseRuleRepository.class);
+    when(grayReleaseRuleRepository.findByAppIdAndClusterNameAndNamespaceName(someAppId, someClusterName,
+        someNamespaceName)).thenReturn(grayReleaseRules);
+    grayReleaseRulesHolder = new GrayReleaseRulesHolder(grayReleaseRuleRepository, mock(BizConfig.class));
+    grayReleaseRulesHolder.handleMessage(new ReleaseMessage(Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someClusterName, someNamespaceName)), Topics.APOLLO_RELEASE_TOPIC);
+  }
+
+  @Benchmark
+  public Long linearScan() {
+    int i = ThreadLocalRandom.current().nextInt(rules);
+    String clientAppId = clientAppIds[i];
+    String clientIp = clientIps[i];
+    //the same as before, copy the rules then match them one by one
+    for (GrayReleaseRuleCache rule : Lists.newArrayList(ruleCaches)) {
+      if (rule.matches(clientAppId, clientIp, null)) {
+        return rule.getReleaseId();
+      }
+    }
+    return null;
+  }
+
+  @Benchmark
+  public Long indexedLookup() {
+    int i = ThreadLocalRandom.current().nextInt(rules);
+    return grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(clientAppIds[i], clientIps[i], null,
+        someAppId, someClusterName, someNamespaceName);
+  }
+
+  private static String clientAppId(int i) {
+    return "client-app-" + i % 100;
+  }
+
+  private static String clientIp(int i, int j) {
+    return "10." + (i >> 8 & 0xff) + "." + (i & 0xff) + "." + j;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(GrayReleaseRulesHolderBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -36,15 +36,21 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -89,6 +95,7 @@ public class GrayReleaseRulesHolderTest {
             (someClientIp), Sets.newHashSet(someClientLabel))), someReleaseId, activeBranchStatus);
 
     when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(600);
     when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
         .newArrayList(someRule));
 
@@ -123,6 +130,12 @@ public class GrayReleaseRulesHolderTest {
     assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(anotherClientAppId, anotherClientIp,
         anotherNamespaceName));
 
+    assertTrue(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(someClientAppId, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(someClientAppId.toUpperCase(),
+        someNamespaceName.toUpperCase()));
+    assertFalse(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(someClientAppId, anotherNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(anotherClientAppId, someNamespaceName));
+
     GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName,
         someNamespaceName, Lists.newArrayList(assembleRuleItem(anotherClientAppId, Sets.newHashSet
             (anotherClientIp),Sets.newHashSet(anotherClientLabel))), someReleaseId, activeBranchStatus);
@@ -155,6 +168,115 @@ public class GrayReleaseRulesHolderTest {
         someNamespaceName));
     assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(anotherClientAppId, anotherClientIp,
         anotherNamespaceName));
+
+    assertFalse(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(someClientAppId, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(anotherClientAppId, someNamespaceName));
+  }
+
+  @Test
+  public void testFindReleaseIdFromMultipleBranches() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+    String anotherClientIp = "2.2.2.2";
+    String someClientLabel = "myLabel";
+    long someReleaseId = 1000;
+    long anotherReleaseId = 2000;
+    long yetAnotherReleaseId = 3000;
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp),
+            Sets.newHashSet())), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    someRule.setBranchName("someBranch");
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP),
+            Sets.newHashSet())), anotherReleaseId, NamespaceBranchStatus.ACTIVE);
+    anotherRule.setBranchName("anotherBranch");
+    GrayReleaseRule yetAnotherRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(),
+            Sets.newHashSet(someClientLabel))), yetAnotherReleaseId, NamespaceBranchStatus.ACTIVE);
+    yetAnotherRule.setBranchName("yetAnotherBranch");
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(600);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someRule, anotherRule, yetAnotherRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    //the rule with smaller id wins
+    assertEquals(Long.valueOf(someReleaseId), grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+    assertEquals(Long.valueOf(anotherReleaseId), grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, anotherClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+    assertEquals(Long.valueOf(anotherReleaseId), grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, null, null, someAppId, someClusterName, someNamespaceName));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        null, someClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+
+    GrayReleaseRule deletedRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(), anotherReleaseId, NamespaceBranchStatus.DELETED);
+    deletedRule.setBranchName("anotherBranch");
+
+    when(grayReleaseRuleRepository.findByAppIdAndClusterNameAndNamespaceName(someAppId,
+        someClusterName, someNamespaceName)).thenReturn(Lists.newArrayList(deletedRule));
+
+    grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
+        someNamespaceName), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(Long.valueOf(yetAnotherReleaseId), grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, anotherClientIp, someClientLabel, someAppId, someClusterName, someNamespaceName));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, anotherClientIp, null, someAppId, someClusterName, someNamespaceName));
+  }
+
+  @Test
+  public void testScanNewAndUpdatedGrayReleaseRules() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+    String anotherClientIp = "2.2.2.2";
+    long someReleaseId = 1000;
+    long anotherReleaseId = 2000;
+    Date someLastModifiedTime = new Date(1000);
+    Date anotherLastModifiedTime = new Date(2000);
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp),
+            Sets.newHashSet())), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    someRule.setDataChangeLastModifiedTime(someLastModifiedTime);
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(anotherClientIp),
+            Sets.newHashSet())), anotherReleaseId, NamespaceBranchStatus.ACTIVE);
+    anotherRule.setDataChangeLastModifiedTime(anotherLastModifiedTime);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(1);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(600);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someRule));
+    when(grayReleaseRuleRepository
+        .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(someLastModifiedTime))
+        .thenReturn(Lists.newArrayList(anotherRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(Long.valueOf(someReleaseId), grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someClientIp, null, someAppId, someClusterName, someNamespaceName));
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(Long.valueOf(anotherReleaseId),
+        grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId, anotherClientIp, null, someAppId,
+            someClusterName, someNamespaceName)));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(
+        someClientAppId, someClientIp, null, someAppId, someClusterName, someNamespaceName));
+
+    //only the rules modified after the last scan are loaded
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> verify(grayReleaseRuleRepository, atLeastOnce())
+        .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(anotherLastModifiedTime));
+    verify(grayReleaseRuleRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
   }
 
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
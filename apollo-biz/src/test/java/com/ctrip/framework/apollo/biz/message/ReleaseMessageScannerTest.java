@@ -26,16 +26,24 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.awaitility.Awaitility;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -178,6 +186,121 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     });
   }
 
+  @Test
+  public void testPushedMessageNotifiedOnlyOnce() throws Exception {
+    String someMessage = "someMessage";
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, someMessage);
+
+    String anotherMessage = "anotherMessage";
+    long anotherId = 2;
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(anotherId, anotherMessage);
+
+    List<ReleaseMessage> receivedMessage = Collections.synchronizedList(Lists.newArrayList());
+    ReleaseMessageListener someListener = (message, channel) -> receivedMessage.add(message);
+    releaseMessageScanner.addMessageListener(someListener);
+
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(someId)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    releaseMessageScanner.onReleaseMessagesPushed(Lists.newArrayList(someId));
+
+    await().untilAsserted(() -> {
+      assertEquals(1, receivedMessage.size());
+      assertSame(someReleaseMessage, receivedMessage.get(0));
+    });
+
+    // scanned later, should not be sent again
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someId)).thenReturn(
+        Lists.newArrayList(anotherReleaseMessage));
+
+    await().untilAsserted(() -> {
+      assertEquals(2, receivedMessage.size());
+      assertSame(someReleaseMessage, receivedMessage.get(0));
+      assertSame(anotherReleaseMessage, receivedMessage.get(1));
+    });
+
+    // pushed after scanned, should be ignored
+    releaseMessageScanner.onReleaseMessagesPushed(Lists.newArrayList(anotherId));
+
+    TimeUnit.MILLISECONDS.sleep(databaseScanInterval * 2);
+
+    assertEquals(2, receivedMessage.size());
+    verify(releaseMessageRepository, never()).findAllById(Lists.newArrayList(anotherId));
+  }
+
+  @Test
+  public void testPushedMessagesCoalesced() throws Exception {
+    long someId = 1;
+    long anotherId = 2;
+    long yetAnotherId = 3;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(anotherId, "anotherMessage");
+    ReleaseMessage yetAnotherReleaseMessage = assembleReleaseMessage(yetAnotherId, "yetAnotherMessage");
+
+    CountDownLatch someMessageReceived = new CountDownLatch(1);
+    CountDownLatch scannerReleased = new CountDownLatch(1);
+    List<ReleaseMessage> receivedMessage = Collections.synchronizedList(Lists.newArrayList());
+    ReleaseMessageListener someListener = (message, channel) -> {
+      receivedMessage.add(message);
+      if (message.getId() == someId) {
+        someMessageReceived.countDown();
+        try {
+          scannerReleased.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    releaseMessageScanner.addMessageListener(someListener);
+
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(someId)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(anotherId, yetAnotherId)))
+        .thenReturn(Lists.newArrayList(anotherReleaseMessage, yetAnotherReleaseMessage));
+
+    releaseMessageScanner.onReleaseMessagesPushed(Lists.newArrayList(someId));
+    assertTrue(someMessageReceived.await(5, TimeUnit.SECONDS));
+
+    // pushed while the scanner thread is busy, loaded together afterwards
+    releaseMessageScanner.onReleaseMessagesPushed(Lists.newArrayList(yetAnotherId));
+    releaseMessageScanner.onReleaseMessagesPushed(Lists.newArrayList(anotherId));
+    scannerReleased.countDown();
+
+    await().untilAsserted(() -> {
+      assertEquals(3, receivedMessage.size());
+      assertSame(anotherReleaseMessage, receivedMessage.get(1));
+      assertSame(yetAnotherReleaseMessage, receivedMessage.get(2));
+    });
+    verify(releaseMessageRepository, times(1)).findAllById(Lists.newArrayList(anotherId, yetAnotherId));
+  }
+
+  @Test
+  public void testPushedMessageTooFarAheadIgnored() throws Exception {
+    long someIdTooFarAhead = 100000;
+
+    releaseMessageScanner.onReleaseMessagesPushed(Lists.newArrayList(someIdTooFarAhead));
+
+    TimeUnit.MILLISECONDS.sleep(databaseScanInterval * 2);
+
+    verify(releaseMessageRepository, never()).findAllById(Lists.newArrayList(someIdTooFarAhead));
+  }
+
+  @Test
+  public void testScanIntervalWithPushEnabled() throws Exception {
+    ReleaseMessageScanner anotherReleaseMessageScanner =
+        new ReleaseMessageScanner(bizConfig, releaseMessageRepository);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessagePushScanIntervalInMilli()).thenReturn(databaseScanInterval * 100);
+
+    anotherReleaseMessageScanner.afterPropertiesSet();
+
+    assertEquals(databaseScanInterval * 100,
+        ReflectionTestUtils.getField(anotherReleaseMessageScanner, "databaseScanInterval"));
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
@@ -22,6 +22,7 @@ import com.google.common.collect.Sets;
 import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,10 +31,12 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.test.annotation.Rollback;
 
+import javax.persistence.EntityManager;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
@@ -46,6 +49,8 @@ import static org.junit.Assert.assertNull;
 public class InstanceServiceTest extends AbstractIntegrationTest {
   @Autowired
   private InstanceService instanceService;
+  @Autowired
+  private EntityManager entityManager;
 
   @Test
   @Rollback
@@ -126,6 +131,51 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(anotherReleaseKey, updated.getReleaseKey());
   }
 
+  @Test
+  @Rollback
+  public void testCreateAndFindInstancesInBatch() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someDataCenter = "someDataCenter";
+    String someIp = "someIp";
+    String anotherIp = "anotherIp";
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    List<Instance> instances = instanceService.createInstances(Lists.newArrayList(
+        assembleInstance(someAppId, someClusterName, someDataCenter, someIp),
+        assembleInstance(someAppId, someClusterName, someDataCenter, anotherIp)));
+
+    assertEquals(2, instanceService.findInstancesByIps(Sets.newHashSet(someIp, anotherIp)).size());
+    assertEquals(1, instanceService.findInstancesByIps(Sets.newHashSet(someIp)).size());
+
+    long someInstanceId = instances.get(0).getId();
+    long anotherInstanceId = instances.get(1).getId();
+    InstanceConfig someInstanceConfig = instanceService.createInstanceConfig(assembleInstanceConfig(someInstanceId,
+        someConfigAppId, someConfigClusterName, someConfigNamespaceName, someReleaseKey));
+
+    InstanceConfig toUpdate = assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName,
+        someConfigNamespaceName, anotherReleaseKey);
+    toUpdate.setId(someInstanceConfig.getId());
+    instanceService.saveInstanceConfigs(Lists.newArrayList(toUpdate,
+        assembleInstanceConfig(anotherInstanceId, someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+            someReleaseKey)));
+    // the batches are written with jdbc, so drop the entities loaded before
+    entityManager.clear();
+
+    List<InstanceConfig> instanceConfigs = instanceService.findInstanceConfigsByInstanceIds(
+        Sets.newHashSet(someInstanceId, anotherInstanceId));
+
+    assertEquals(2, instanceConfigs.size());
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(someInstanceId, someConfigAppId,
+        someConfigNamespaceName).getReleaseKey());
+    assertEquals(someReleaseKey, instanceService.findInstanceConfig(anotherInstanceId, someConfigAppId,
+        someConfigNamespaceName).getReleaseKey());
+  }
+
   @Test
   @Rollback
   public void testFindActiveInstanceConfigs() throws Exception {
@@ -186,6 +236,40 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(Lists.newArrayList(someInstance, anotherInstance), result.getContent());
   }
 
+  @Test
+  @Rollback
+  public void testFindHottestNamespaces() throws Exception {
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String anotherConfigNamespaceName = "anotherConfigNamespaceName";
+    String yetAnotherConfigNamespaceName = "yetAnotherConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    Date someValidDate = new Date();
+    Date someInvalidDate = new Date(someValidDate.getTime() - TimeUnit.DAYS.toMillis(2));
+
+    prepareInstanceConfigForInstance(1, someConfigAppId, someConfigClusterName,
+        someConfigNamespaceName, someReleaseKey, someValidDate);
+    prepareInstanceConfigForInstance(1, someConfigAppId, someConfigClusterName,
+        anotherConfigNamespaceName, someReleaseKey, someValidDate);
+    prepareInstanceConfigForInstance(2, someConfigAppId, someConfigClusterName,
+        anotherConfigNamespaceName, someReleaseKey, someValidDate);
+    prepareInstanceConfigForInstance(1, someConfigAppId, someConfigClusterName,
+        yetAnotherConfigNamespaceName, someReleaseKey, someInvalidDate);
+    prepareInstanceConfigForInstance(2, someConfigAppId, someConfigClusterName,
+        yetAnotherConfigNamespaceName, someReleaseKey, someInvalidDate);
+    prepareInstanceConfigForInstance(3, someConfigAppId, someConfigClusterName,
+        yetAnotherConfigNamespaceName, someReleaseKey, someInvalidDate);
+
+    assertEquals(Lists.newArrayList(
+        ReleaseMessageKeyGenerator.generate(someConfigAppId, someConfigClusterName, anotherConfigNamespaceName),
+        ReleaseMessageKeyGenerator.generate(someConfigAppId, someConfigClusterName, someConfigNamespaceName)),
+        instanceService.findHottestNamespaces(10));
+    assertEquals(Lists.newArrayList(
+        ReleaseMessageKeyGenerator.generate(someConfigAppId, someConfigClusterName, anotherConfigNamespaceName)),
+        instanceService.findHottestNamespaces(1));
+  }
+
   @Test
   @Rollback
   public void testFindInstancesByNamespaceAndInstanceAppId() throws Exception {
@@ -17,6 +17,7 @@
 package com.ctrip.framework.apollo.configservice;
 
 import com.ctrip.framework.apollo.biz.service.AppService;
+import com.ctrip.framework.apollo.configservice.service.ConfigCacheWarmUpService;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.data.domain.PageRequest;
@@ -26,14 +27,25 @@ import org.springframework.stereotype.Component;
 public class ConfigServiceHealthIndicator implements HealthIndicator {
 
   private final AppService appService;
+  private final ConfigCacheWarmUpService configCacheWarmUpService;
 
-  public ConfigServiceHealthIndicator(final AppService appService) {
+  public ConfigServiceHealthIndicator(final AppService appService,
+      final ConfigCacheWarmUpService configCacheWarmUpService) {
     this.appService = appService;
+    this.configCacheWarmUpService = configCacheWarmUpService;
   }
 
   @Override
   public Health health() {
     check();
+    if (!configCacheWarmUpService.isCompleted()) {
+      //not ready for traffic until the hottest namespaces are cached
+      return Health.outOfService()
+          .withDetail("warmUpTotal", configCacheWarmUpService.getTotalNamespaces())
+          .withDetail("warmUpLoaded", configCacheWarmUpService.getLoadedNamespaces())
+          .withDetail("warmUpFailed", configCacheWarmUpService.getFailedNamespaces())
+          .build();
+    }
     return Health.up().build();
   }
 
@@ -18,11 +18,16 @@ package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.common.utils.WebUtils;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigDeltaService;
+import com.ctrip.framework.apollo.configservice.service.ConfigDeltaService.ConfigDelta;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigBatch;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigDelta;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
@@ -32,19 +37,23 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -53,27 +62,32 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/configs")
 public class ConfigController {
+  private static final int MAX_NAMESPACES_PER_QUERY = 100;
+  //the release key passed by clients which have not loaded any config yet
+  private static final String NO_RELEASE_KEY = "-1";
+  private static final Type NAMESPACES_TYPE = new TypeToken<LinkedHashMap<String, String>>() {
+  }.getType();
 
   private final ConfigService configService;
   private final AppNamespaceServiceWithCache appNamespaceService;
   private final NamespaceUtil namespaceUtil;
   private final InstanceConfigAuditUtil instanceConfigAuditUtil;
   private final Gson gson;
-
-  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
-      }.getType();
+  private final ConfigDeltaService configDeltaService;
 
   public ConfigController(
       final ConfigService configService,
       final AppNamespaceServiceWithCache appNamespaceService,
       final NamespaceUtil namespaceUtil,
       final InstanceConfigAuditUtil instanceConfigAuditUtil,
-      final Gson gson) {
+      final Gson gson,
+      final ConfigDeltaService configDeltaService) {
     this.configService = configService;
     this.appNamespaceService = appNamespaceService;
     this.namespaceUtil = namespaceUtil;
     this.instanceConfigAuditUtil = instanceConfigAuditUtil;
     this.gson = gson;
+    this.configDeltaService = configDeltaService;
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
@@ -85,62 +99,153 @@ public class ConfigController {
                                   @RequestParam(value = "label", required = false) String clientLabel,
                                   @RequestParam(value = "messages", required = false) String messagesAsString,
                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String originalNamespace = namespace;
-    //strip out .properties suffix
-    namespace = namespaceUtil.filterNamespaceName(namespace);
-    //fix the character case issue, such as FX.apollo <-> fx.apollo
-    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+    return queryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp, clientLabel,
+        messagesAsString, true, request, response);
+  }
+
+  /**
+   * Delta mode of {@link #queryConfig}, only the keys added, changed or deleted since the client side release are
+   * returned. The full config is returned if the delta can't be computed, e.g. the client side release key is unknown.
+   */
+  @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}", params = "delta=true")
+  public ApolloConfigDelta queryConfigDelta(@PathVariable String appId, @PathVariable String clusterName,
+                                            @PathVariable String namespace,
+                                            @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                            @RequestParam(value = "releaseKey", defaultValue = "-1") String clientSideReleaseKey,
+                                            @RequestParam(value = "ip", required = false) String clientIp,
+                                            @RequestParam(value = "label", required = false) String clientLabel,
+                                            @RequestParam(value = "messages", required = false) String messagesAsString,
+                                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+    ApolloConfig apolloConfig = queryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+        clientLabel, messagesAsString, true, request, response);
+    if (apolloConfig == null) {
+      return null;
+    }
+
+    ConfigDelta configDelta = null;
+    if (!Objects.equals(NO_RELEASE_KEY, clientSideReleaseKey)) {
+      configDelta = configDeltaService.findDelta(clientSideReleaseKey, apolloConfig.getReleaseKey());
+    }
+    if (configDelta == null) {
+      return new ApolloConfigDelta(apolloConfig);
+    }
+
+    Tracer.logEvent("Apollo.Config.DeltaFound", assembleKey(appId, apolloConfig.getCluster(),
+        apolloConfig.getNamespaceName(), dataCenter));
+    return new ApolloConfigDelta(apolloConfig, clientSideReleaseKey, configDelta.getChangedConfigurations(),
+        configDelta.getDeletedKeys());
+  }
 
+  /**
+   * @param checkNotModified whether to answer 304 when the If-None-Match header matches the merged release key, callers
+   *                         rendering the config in another format handle the conditional request themselves
+   */
+  ApolloConfig queryConfig(String appId, String clusterName, String namespace, String dataCenter,
+                           String clientSideReleaseKey, String clientIp, String clientLabel, String messagesAsString,
+                           boolean checkNotModified, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
     if (Strings.isNullOrEmpty(clientIp)) {
       clientIp = WebUtils.tryToGetClientIp(request);
     }
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
 
-    List<Release> releases = Lists.newLinkedList();
+    // The merged release key is the ETag, gray releases have their own release keys so it also tells gray configs apart.
+    // The ETag header is set as well, and 304 is returned if it matches If-None-Match.
+    NamespaceConfigResult result = queryNamespaceConfig(appId, clusterName, namespace, dataCenter,
+        clientSideReleaseKey, clientIp, clientLabel, clientMessages, mergedReleaseKey ->
+            checkNotModified && new ServletWebRequest(request, response).checkNotModified(mergedReleaseKey));
 
-    String appClusterNameLoaded = clusterName;
-    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
-      Release currentAppRelease = configService.loadConfig(appId, clientIp, clientLabel, appId, clusterName, namespace,
-          dataCenter, clientMessages);
+    if (result == NamespaceConfigResult.NOT_FOUND) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND,
+          String.format(
+              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
+              appId, clusterName, namespace));
+      return null;
+    }
 
-      if (currentAppRelease != null) {
-        releases.add(currentAppRelease);
-        //we have cluster search process, so the cluster name might be overridden
-        appClusterNameLoaded = currentAppRelease.getClusterName();
-      }
+    if (result == NamespaceConfigResult.NOT_MODIFIED) {
+      // Client side configuration is the same with server side, return 304
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return null;
     }
 
-    //if namespace does not belong to this appId, should check if there is a public configuration
-    if (!namespaceBelongsToAppId(appId, namespace)) {
-      Release publicRelease = this.findPublicConfig(appId, clientIp, clientLabel, clusterName, namespace,
-          dataCenter, clientMessages);
-      if (Objects.nonNull(publicRelease)) {
-        releases.add(publicRelease);
+    return result.getConfig();
+  }
+
+  /**
+   * Query the configs of multiple namespaces in one request, only the namespaces changed are returned, and the
+   * namespaces not found are listed separately.
+   * <p>
+   * Client ip, notification messages and the audit context are resolved once for all the namespaces.
+   *
+   * @param namespacesAsString namespace -> client side release key in json format, e.g. {"application":"-1"}
+   */
+  @GetMapping(value = "/{appId}/{clusterName}")
+  public ApolloConfigBatch queryConfigs(@PathVariable String appId, @PathVariable String clusterName,
+                                         @RequestParam(value = "namespaces") String namespacesAsString,
+                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                         @RequestParam(value = "ip", required = false) String clientIp,
+                                         @RequestParam(value = "label", required = false) String clientLabel,
+                                         @RequestParam(value = "messages", required = false) String messagesAsString,
+                                         HttpServletRequest request) {
+    Map<String, String> clientSideReleaseKeys = transformNamespaces(namespacesAsString);
+
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = WebUtils.tryToGetClientIp(request);
+    }
+
+    ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
+
+    List<ApolloConfig> changedConfigs = Lists.newArrayList();
+    List<String> notFoundNamespaces = Lists.newArrayList();
+    for (Map.Entry<String, String> entry : clientSideReleaseKeys.entrySet()) {
+      NamespaceConfigResult result = queryNamespaceConfig(appId, clusterName, entry.getKey(), dataCenter,
+          entry.getValue(), clientIp, clientLabel, clientMessages, mergedReleaseKey -> false);
+      if (result == NamespaceConfigResult.NOT_FOUND) {
+        notFoundNamespaces.add(entry.getKey());
+      } else if (result.getConfig() != null) {
+        changedConfigs.add(result.getConfig());
       }
     }
 
+    return new ApolloConfigBatch(changedConfigs, notFoundNamespaces);
+  }
+
+  /**
+   * Query the config of one namespace for the client, shared by {@link #queryConfig} and {@link #queryConfigs}
+   *
+   * @param originalNamespace   the namespace passed by the client, which is returned as is
+   * @param notModifiedChecker tells whether the client is up to date other than by the client side release key, e.g.
+   *                           by If-None-Match, it's given the merged release key
+   */
+  private NamespaceConfigResult queryNamespaceConfig(String appId, String clusterName, String originalNamespace,
+      String dataCenter, String clientSideReleaseKey, String clientIp, String clientLabel,
+      ApolloNotificationMessages clientMessages, Predicate<String> notModifiedChecker) {
+    //strip out .properties suffix
+    String namespace = namespaceUtil.filterNamespaceName(originalNamespace);
+    //fix the character case issue, such as FX.apollo <-> fx.apollo
+    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+
+    List<Release> releases = findReleases(appId, clientIp, clientLabel, clusterName, namespace, dataCenter,
+        clientMessages);
+
     if (releases.isEmpty()) {
-      response.sendError(HttpServletResponse.SC_NOT_FOUND,
-          String.format(
-              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
-              appId, clusterName, originalNamespace));
       Tracer.logEvent("Apollo.Config.NotFound",
           assembleKey(appId, clusterName, originalNamespace, dataCenter));
-      return null;
+      return NamespaceConfigResult.NOT_FOUND;
     }
 
     auditReleases(appId, clusterName, dataCenter, clientIp, releases);
 
-    String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
-            .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+    //we have cluster search process, so the cluster name might be overridden
+    String appClusterNameLoaded = findClusterNameLoaded(appId, clusterName, releases);
+    String mergedReleaseKey = assembleMergedReleaseKey(releases);
 
-    if (mergedReleaseKey.equals(clientSideReleaseKey)) {
-      // Client side configuration is the same with server side, return 304
-      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    if (mergedReleaseKey.equals(clientSideReleaseKey) || notModifiedChecker.test(mergedReleaseKey)) {
       Tracer.logEvent("Apollo.Config.NotModified",
           assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-      return null;
+      return NamespaceConfigResult.NOT_MODIFIED;
     }
 
     ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
@@ -149,9 +254,60 @@ public class ConfigController {
 
     Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded,
         originalNamespace, dataCenter));
+    return new NamespaceConfigResult(apolloConfig);
+  }
+
+  /**
+   * @return the releases of the namespace, the release of the app itself comes first, then the public one if any
+   */
+  List<Release> findReleases(String appId, String clientIp, String clientLabel, String clusterName,
+                             String namespace, String dataCenter, ApolloNotificationMessages clientMessages) {
+    List<Release> releases = Lists.newLinkedList();
+
+    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
+      Release currentAppRelease = configService.loadConfig(appId, clientIp, clientLabel, appId, clusterName, namespace,
+          dataCenter, clientMessages);
+
+      if (currentAppRelease != null) {
+        releases.add(currentAppRelease);
+      }
+    }
+
+    //if namespace does not belong to this appId, should check if there is a public configuration
+    if (!namespaceBelongsToAppId(appId, namespace)) {
+      Release publicRelease = this.findPublicConfig(appId, clientIp, clientLabel, clusterName, namespace,
+          dataCenter, clientMessages);
+      if (Objects.nonNull(publicRelease)) {
+        releases.add(publicRelease);
+      }
+    }
+
+    return releases;
+  }
+
+  /**
+   * @param releases the releases found by {@link #findReleases}, should not be empty
+   */
+  ApolloConfig assembleApolloConfig(String appId, String clusterName, String namespace, List<Release> releases) {
+    ApolloConfig apolloConfig = new ApolloConfig(appId, findClusterNameLoaded(appId, clusterName, releases), namespace,
+        assembleMergedReleaseKey(releases));
+    apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
     return apolloConfig;
   }
 
+  private String findClusterNameLoaded(String appId, String clusterName, List<Release> releases) {
+    Release firstRelease = releases.get(0);
+    if (!ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId) && Objects.equals(appId, firstRelease.getAppId())) {
+      return firstRelease.getClusterName();
+    }
+    return clusterName;
+  }
+
+  private String assembleMergedReleaseKey(List<Release> releases) {
+    return releases.stream().map(Release::getReleaseKey)
+        .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+  }
+
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
     //Every app has an 'application' namespace
     if (Objects.equals(ConfigConsts.NAMESPACE_APPLICATION, namespaceName)) {
@@ -193,9 +349,12 @@ public class ConfigController {
    * Release in lower index override those in higher index
    */
   Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
+    if (releases.size() == 1) {
+      return configService.loadConfigurations(releases.get(0));
+    }
     Map<String, String> result = Maps.newLinkedHashMap();
     for (Release release : Lists.reverse(releases)) {
-      result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      result.putAll(configService.loadConfigurations(release));
     }
     return result;
   }
@@ -208,8 +367,8 @@ public class ConfigController {
     return String.join(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR, keyParts);
   }
 
-  private void auditReleases(String appId, String cluster, String dataCenter, String clientIp,
-                             List<Release> releases) {
+  void auditReleases(String appId, String cluster, String dataCenter, String clientIp,
+                     List<Release> releases) {
     if (Strings.isNullOrEmpty(clientIp)) {
       //no need to audit instance config when there is no ip
       return;
@@ -221,6 +380,22 @@ public class ConfigController {
     }
   }
 
+  Map<String, String> transformNamespaces(String namespacesAsString) {
+    Map<String, String> namespaces;
+    try {
+      namespaces = gson.fromJson(namespacesAsString, NAMESPACES_TYPE);
+    } catch (Throwable ex) {
+      throw new BadRequestException("Invalid format of namespaces: %s", namespacesAsString);
+    }
+    if (CollectionUtils.isEmpty(namespaces)) {
+      throw new BadRequestException("namespaces should not be empty");
+    }
+    if (namespaces.size() > MAX_NAMESPACES_PER_QUERY) {
+      throw new BadRequestException("Too many namespaces: %s, max: %s", namespaces.size(), MAX_NAMESPACES_PER_QUERY);
+    }
+    return namespaces;
+  }
+
   ApolloNotificationMessages transformMessages(String messagesAsString) {
     ApolloNotificationMessages notificationMessages = null;
     if (!Strings.isNullOrEmpty(messagesAsString)) {
@@ -233,4 +408,22 @@ public class ConfigController {
 
     return notificationMessages;
   }
+
+  /**
+   * The config of a namespace queried, which is null if the namespace is not found or the client is up to date
+   */
+  private static final class NamespaceConfigResult {
+    private static final NamespaceConfigResult NOT_FOUND = new NamespaceConfigResult(null);
+    private static final NamespaceConfigResult NOT_MODIFIED = new NamespaceConfigResult(null);
+
+    private final ApolloConfig config;
+
+    private NamespaceConfigResult(ApolloConfig config) {
+      this.config = config;
+    }
+
+    public ApolloConfig getConfig() {
+      return config;
+    }
+  }
 }
@@ -28,14 +28,16 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.utils.PropertiesUtil;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.Weigher;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,12 +52,16 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -67,14 +73,22 @@ public class ConfigFileController implements ReleaseMessageListener {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   private static final long EXPIRE_AFTER_WRITE = 30;
+  // smaller contents are not worth gzipping
+  private static final int MIN_GZIP_SIZE = 1024;
+  // the cache entry, the cache key and its watched keys in both indexes
+  private static final int CACHE_ENTRY_OVERHEAD_IN_BYTES = 512;
+  private static final String GZIP = "gzip";
+  private static final Splitter ACCEPT_ENCODING_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final Splitter ACCEPT_ENCODING_PARAMETER_SPLITTER = Splitter.on(';').trimResults();
   private final HttpHeaders propertiesResponseHeaders;
   private final HttpHeaders jsonResponseHeaders;
-  private final ResponseEntity<String> NOT_FOUND_RESPONSE;
-  private Cache<String, String> localCache;
-  private final Multimap<String, String>
-      watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-  private final Multimap<String, String>
-      cacheKey2WatchedKeys = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private final HttpHeaders gzippedPropertiesResponseHeaders;
+  private final HttpHeaders gzippedJsonResponseHeaders;
+  private final ResponseEntity<byte[]> NOT_FOUND_RESPONSE;
+  private Cache<String, ConfigFileContent> localCache;
+  //watched key -> cache keys and cache key -> watched keys, updated per key without global locks
+  private final ConcurrentMap<String, Set<String>> watchedKeys2CacheKey = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Set<String>> cacheKey2WatchedKeys = Maps.newConcurrentMap();
   private static final Gson GSON = new Gson();
 
   private final ConfigController configController;
@@ -89,27 +103,28 @@ public class ConfigFileController implements ReleaseMessageListener {
       final GrayReleaseRulesHolder grayReleaseRulesHolder) {
     localCache = CacheBuilder.newBuilder()
         .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
-        .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
+        .weigher((Weigher<String, ConfigFileContent>) (key, value) -> value == null ? 0 : value.getWeight())
         .maximumWeight(MAX_CACHE_SIZE)
         .removalListener(notification -> {
-          String cacheKey = notification.getKey();
-          logger.debug("removing cache key: {}", cacheKey);
-          if (!cacheKey2WatchedKeys.containsKey(cacheKey)) {
+          //the key is still cached when replaced, its watched keys are indexed again by the caller
+          if (notification.getCause() == RemovalCause.REPLACED) {
             return;
           }
-          //create a new list to avoid ConcurrentModificationException
-          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
-          for (String watchedKey : watchedKeys) {
-            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
-          }
-          cacheKey2WatchedKeys.removeAll(cacheKey);
-          logger.debug("removed cache key: {}", cacheKey);
+          removeWatchedKeys(notification.getKey());
         })
         .build();
     propertiesResponseHeaders = new HttpHeaders();
     propertiesResponseHeaders.add("Content-Type", "text/plain;charset=UTF-8");
+    propertiesResponseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
     jsonResponseHeaders = new HttpHeaders();
     jsonResponseHeaders.add("Content-Type", "application/json;charset=UTF-8");
+    jsonResponseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    gzippedPropertiesResponseHeaders = new HttpHeaders();
+    gzippedPropertiesResponseHeaders.putAll(propertiesResponseHeaders);
+    gzippedPropertiesResponseHeaders.add(HttpHeaders.CONTENT_ENCODING, GZIP);
+    gzippedJsonResponseHeaders = new HttpHeaders();
+    gzippedJsonResponseHeaders.putAll(jsonResponseHeaders);
+    gzippedJsonResponseHeaders.add(HttpHeaders.CONTENT_ENCODING, GZIP);
     NOT_FOUND_RESPONSE = new ResponseEntity<>(HttpStatus.NOT_FOUND);
     this.configController = configController;
     this.namespaceUtil = namespaceUtil;
@@ -118,7 +133,7 @@ public class ConfigFileController implements ReleaseMessageListener {
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsProperties(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsProperties(@PathVariable String appId,
                                                         @PathVariable String clusterName,
                                                         @PathVariable String namespace,
                                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
@@ -128,7 +143,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                         HttpServletResponse response)
       throws IOException {
 
-    String result =
+    ConfigFileContent result =
         queryConfig(ConfigFileOutputFormat.PROPERTIES, appId, clusterName, namespace, dataCenter,
             clientIp, clientLabel, request, response);
 
@@ -136,11 +151,11 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, propertiesResponseHeaders, HttpStatus.OK);
+    return buildResponse(result, request, propertiesResponseHeaders, gzippedPropertiesResponseHeaders);
   }
 
   @GetMapping(value = "/json/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsJson(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsJson(@PathVariable String appId,
                                                   @PathVariable String clusterName,
                                                   @PathVariable String namespace,
                                                   @RequestParam(value = "dataCenter", required = false) String dataCenter,
@@ -149,7 +164,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                   HttpServletRequest request,
                                                   HttpServletResponse response) throws IOException {
 
-    String result =
+    ConfigFileContent result =
         queryConfig(ConfigFileOutputFormat.JSON, appId, clusterName, namespace, dataCenter,
             clientIp, clientLabel, request, response);
 
@@ -157,10 +172,10 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
+    return buildResponse(result, request, jsonResponseHeaders, gzippedJsonResponseHeaders);
   }
 
-  String queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+  ConfigFileContent queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                      String namespace, String dataCenter, String clientIp, String clientLabel,
                      HttpServletRequest request,
                      HttpServletResponse response) throws IOException {
@@ -187,10 +202,10 @@ public class ConfigFileController implements ReleaseMessageListener {
     }
 
     //3. if not gray release, check weather cache exists, if exists, return
-    String result = localCache.getIfPresent(cacheKey);
+    ConfigFileContent result = localCache.getIfPresent(cacheKey);
 
     //4. if not exists, load from ConfigController
-    if (Strings.isNullOrEmpty(result)) {
+    if (result == null) {
       Tracer.logEvent("ConfigFile.Cache.Miss", cacheKey);
       result = loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp, clientLabel,
           request, response);
@@ -210,13 +225,19 @@ public class ConfigFileController implements ReleaseMessageListener {
       logger.debug("adding cache for key: {}", cacheKey);
 
       Set<String> watchedKeys =
-          watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
+          ImmutableSet.copyOf(watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter));
 
       for (String watchedKey : watchedKeys) {
-        watchedKeys2CacheKey.put(watchedKey, cacheKey);
+        watchedKeys2CacheKey.compute(watchedKey, (key, cacheKeys) -> {
+          if (cacheKeys == null) {
+            cacheKeys = Sets.newConcurrentHashSet();
+          }
+          cacheKeys.add(cacheKey);
+          return cacheKeys;
+        });
       }
 
-      cacheKey2WatchedKeys.putAll(cacheKey, watchedKeys);
+      cacheKey2WatchedKeys.put(cacheKey, watchedKeys);
       logger.debug("added cache for key: {}", cacheKey);
     } else {
       Tracer.logEvent("ConfigFile.Cache.Hit", cacheKey);
@@ -225,12 +246,80 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
-  private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+  private void removeWatchedKeys(String cacheKey) {
+    logger.debug("removing cache key: {}", cacheKey);
+    Set<String> watchedKeys = cacheKey2WatchedKeys.remove(cacheKey);
+    if (watchedKeys == null) {
+      return;
+    }
+    for (String watchedKey : watchedKeys) {
+      watchedKeys2CacheKey.computeIfPresent(watchedKey, (key, cacheKeys) -> {
+        cacheKeys.remove(cacheKey);
+        return cacheKeys.isEmpty() ? null : cacheKeys;
+      });
+    }
+    logger.debug("removed cache key: {}", cacheKey);
+  }
+
+  /**
+   * The merged release key is the ETag, Spring answers 304 without writing the body if it matches If-None-Match. The
+   * gzipped content is a different representation, so it has a different strong ETag.
+   */
+  private ResponseEntity<byte[]> buildResponse(ConfigFileContent result, HttpServletRequest request,
+      HttpHeaders headers, HttpHeaders gzippedHeaders) {
+    if (shouldGzip(result, request)) {
+      return ResponseEntity.ok().headers(gzippedHeaders).eTag(result.getGzippedETag())
+          .body(result.getGzippedContent());
+    }
+    return ResponseEntity.ok().headers(headers).eTag(result.getETag()).body(result.getContent());
+  }
+
+  private boolean shouldGzip(ConfigFileContent result, HttpServletRequest request) {
+    return result.getGzippedContent() != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+  }
+
+  /**
+   * gzip is acceptable if it's listed, or * is listed without gzip, with a non zero quality value
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (Strings.isNullOrEmpty(acceptEncoding)) {
+      return false;
+    }
+    Boolean wildcardAccepted = null;
+    for (String coding : ACCEPT_ENCODING_SPLITTER.split(acceptEncoding)) {
+      Iterator<String> parameters = ACCEPT_ENCODING_PARAMETER_SPLITTER.split(coding).iterator();
+      String name = parameters.next();
+      boolean accepted = true;
+      while (parameters.hasNext()) {
+        String parameter = parameters.next();
+        if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+          accepted = parseQuality(parameter.substring(2)) > 0;
+        }
+      }
+      if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+        return accepted;
+      }
+      if ("*".equals(name)) {
+        wildcardAccepted = accepted;
+      }
+    }
+    return Boolean.TRUE.equals(wildcardAccepted);
+  }
+
+  private static double parseQuality(String quality) {
+    try {
+      return Double.parseDouble(quality.trim());
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private ConfigFileContent loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                             String namespace, String dataCenter, String clientIp, String clientLabel,
                             HttpServletRequest request,
                             HttpServletResponse response) throws IOException {
     ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
-        dataCenter, "-1", clientIp, clientLabel, null, request, response);
+        dataCenter, "-1", clientIp, clientLabel, null, false, request, response);
 
     if (apolloConfig == null || apolloConfig.getConfigurations() == null) {
       return null;
@@ -249,7 +338,7 @@ public class ConfigFileController implements ReleaseMessageListener {
         break;
     }
 
-    return result;
+    return result == null ? null : new ConfigFileContent(result, apolloConfig.getReleaseKey());
   }
 
   String assembleCacheKey(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
@@ -272,19 +361,68 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
+    Set<String> cacheKeys = watchedKeys2CacheKey.get(content);
+    if (cacheKeys == null) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
-
+    //the set is concurrent, so it could be iterated while the cache keys are removed
     for (String cacheKey : cacheKeys) {
       logger.debug("invalidate cache key: {}", cacheKey);
       localCache.invalidate(cacheKey);
     }
   }
 
+  /**
+   * Rendered config file encoded in UTF-8, so that cache hits don't need to encode it again. Contents large enough are
+   * gzipped up front as well, so that the cache weight covers both.
+   */
+  static final class ConfigFileContent {
+    private final byte[] content;
+    private final byte[] gzippedContent;
+    private final String eTag;
+    private final String gzippedETag;
+
+    ConfigFileContent(String content, String releaseKey) throws IOException {
+      this.content = content.getBytes(StandardCharsets.UTF_8);
+      this.gzippedContent = this.content.length < MIN_GZIP_SIZE ? null : gzip(this.content);
+      //quoted here so that it's not quoted again on every response
+      this.eTag = "\"" + releaseKey + "\"";
+      this.gzippedETag = "\"" + releaseKey + "-" + GZIP + "\"";
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length / 4);
+      try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+        gzipOutputStream.write(content);
+      }
+      return outputStream.toByteArray();
+    }
+
+    String getETag() {
+      return eTag;
+    }
+
+    String getGzippedETag() {
+      return gzippedETag;
+    }
+
+    byte[] getContent() {
+      return content;
+    }
+
+    /**
+     * @return the gzipped content, or null if the content is too small to be worth gzipping
+     */
+    byte[] getGzippedContent() {
+      return gzippedContent;
+    }
+
+    int getWeight() {
+      return CACHE_ENTRY_OVERHEAD_IN_BYTES + content.length + (gzippedContent == null ? 0 : gzippedContent.length);
+    }
+  }
+
   enum ConfigFileOutputFormat {
     PROPERTIES("properties"), JSON("json");
 
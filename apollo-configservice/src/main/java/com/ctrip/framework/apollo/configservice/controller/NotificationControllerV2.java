@@ -17,33 +17,43 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.utils.WebUtils;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanOutService;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.AbstractNotificationWatcher;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigNotificationWithConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.ConfigPayloadContext;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.SseEmitterWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import com.google.common.collect.TreeMultimap;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -51,17 +61,22 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -70,37 +85,65 @@ import java.util.function.Function;
 @RequestMapping("/notifications/v2")
 public class NotificationControllerV2 implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final Multimap<String, DeferredResultWrapper> deferredResults =
-      Multimaps.synchronizedSetMultimap(TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+  private final WatchKeyRegistry<DeferredResultWrapper> deferredResults = new WatchKeyRegistry<>();
+  private final WatchKeyRegistry<SseEmitterWrapper> streams = new WatchKeyRegistry<>();
+  private final Set<SseEmitterWrapper> openStreams = Sets.newConcurrentHashSet();
 
   private static final Type notificationsTypeReference =
       new TypeToken<List<ApolloConfigNotification>>() {
       }.getType();
-
-  private final ExecutorService largeNotificationBatchExecutorService;
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).useForNull("");
+  private static final long CONFIG_PAYLOAD_CACHE_SIZE = 50 * 1024 * 1024; // 50M characters
+  private static final long CONFIG_PAYLOAD_EXPIRE_AFTER_WRITE = 1;
+  private static final int NOTIFICATION_STREAM_WRITER_THREADS = 8;
+  private static final int NOTIFICATION_STREAM_MAX_PENDING_EVENTS = 16;
+  //shorter than the 60s idle timeout commonly used by proxies and load balancers
+  private static final long NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS = 30;
+  //rendered configurations shared by the clients notified of the same release, keyed by client context + notification id
+  private final Cache<String, Optional<ConfigPayload>> configPayloadCache = CacheBuilder.newBuilder()
+      .expireAfterWrite(CONFIG_PAYLOAD_EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
+      .weigher((Weigher<String, Optional<ConfigPayload>>) (key, value) -> value.map(ConfigPayload::getWeight).orElse(0))
+      .maximumWeight(CONFIG_PAYLOAD_CACHE_SIZE)
+      .build();
 
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
+  private final NotificationFanOutService notificationFanOutService;
   private final EntityManagerUtil entityManagerUtil;
   private final NamespaceUtil namespaceUtil;
   private final Gson gson;
   private final BizConfig bizConfig;
+  private final ConfigController configController;
+  private final GrayReleaseRulesHolder grayReleaseRulesHolder;
+  private final ExecutorService streamWriterExecutorService;
+  private final ScheduledExecutorService streamHeartbeatExecutorService;
 
   public NotificationControllerV2(
       final WatchKeysUtil watchKeysUtil,
       final ReleaseMessageServiceWithCache releaseMessageService,
+      final NotificationFanOutService notificationFanOutService,
       final EntityManagerUtil entityManagerUtil,
       final NamespaceUtil namespaceUtil,
       final Gson gson,
-      final BizConfig bizConfig) {
-    largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
-        ("NotificationControllerV2", true));
+      final BizConfig bizConfig,
+      final ConfigController configController,
+      final GrayReleaseRulesHolder grayReleaseRulesHolder) {
     this.watchKeysUtil = watchKeysUtil;
     this.releaseMessageService = releaseMessageService;
+    this.notificationFanOutService = notificationFanOutService;
     this.entityManagerUtil = entityManagerUtil;
     this.namespaceUtil = namespaceUtil;
     this.gson = gson;
     this.bizConfig = bizConfig;
+    this.configController = configController;
+    this.grayReleaseRulesHolder = grayReleaseRulesHolder;
+    streamWriterExecutorService = Executors.newFixedThreadPool(NOTIFICATION_STREAM_WRITER_THREADS,
+        ApolloThreadFactory.create("NotificationStreamWriter", true));
+    streamHeartbeatExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("NotificationStreamHeartbeat", true));
+    streamHeartbeatExecutorService.scheduleWithFixedDelay(this::sendHeartbeats,
+        NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS, NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS,
+        TimeUnit.SECONDS);
   }
 
   @GetMapping
@@ -109,39 +152,20 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       @RequestParam(value = "cluster") String cluster,
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
-      @RequestParam(value = "ip", required = false) String clientIp) {
-    List<ApolloConfigNotification> notifications = null;
-
-    try {
-      notifications =
-          gson.fromJson(notificationsAsString, notificationsTypeReference);
-    } catch (Throwable ex) {
-      Tracer.logError(ex);
-    }
-
-    if (CollectionUtils.isEmpty(notifications)) {
-      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
-    }
-
-    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
-
-    if (CollectionUtils.isEmpty(filteredNotifications)) {
-      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
-    }
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestParam(value = "label", required = false) String clientLabel,
+      @RequestParam(value = "withConfig", defaultValue = "false") boolean withConfig,
+      HttpServletRequest request) {
+    Map<String, ApolloConfigNotification> filteredNotifications = parseNotifications(appId, notificationsAsString);
 
     DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
-    Set<String> namespaces = Sets.newHashSetWithExpectedSize(filteredNotifications.size());
-    Map<String, Long> clientSideNotifications = Maps.newHashMapWithExpectedSize(filteredNotifications.size());
-
-    for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications.entrySet()) {
-      String normalizedNamespace = notificationEntry.getKey();
-      ApolloConfigNotification notification = notificationEntry.getValue();
-      namespaces.add(normalizedNamespace);
-      clientSideNotifications.put(normalizedNamespace, notification.getNotificationId());
-      if (!Objects.equals(notification.getNamespaceName(), normalizedNamespace)) {
-        deferredResultWrapper.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
-      }
+    if (withConfig) {
+      recordConfigPayloadContext(deferredResultWrapper, appId, cluster, dataCenter, clientIp, clientLabel,
+          request);
     }
+    Map<String, Long> clientSideNotifications =
+        recordClientSideNotifications(deferredResultWrapper, filteredNotifications);
+    Set<String> namespaces = clientSideNotifications.keySet();
 
     Multimap<String, String> watchedKeysMap =
         watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
@@ -159,14 +183,14 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     deferredResultWrapper.onCompletion(() -> {
       //unregister all keys
       for (String key : watchedKeys) {
-        deferredResults.remove(key, deferredResultWrapper);
+        deferredResults.unregister(key, deferredResultWrapper);
       }
       logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
     });
 
     //register all keys
     for (String key : watchedKeys) {
-      this.deferredResults.put(key, deferredResultWrapper);
+      this.deferredResults.register(key, deferredResultWrapper);
     }
 
     logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
@@ -176,8 +200,7 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     /**
      * 2、check new release
      */
-    List<ReleaseMessage> latestReleaseMessages =
-        releaseMessageService.findLatestReleaseMessagesGroupByMessages(watchedKeys);
+    checkNewRelease(deferredResultWrapper, clientSideNotifications, watchedKeysMap, watchedKeys);
 
     /**
      * Manually close the entity manager.
@@ -187,15 +210,134 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
      */
     entityManagerUtil.closeEntityManager();
 
+    return deferredResultWrapper.getResult();
+  }
+
+  /**
+   * Subscribe once and receive the notifications as server-sent events until the stream times out, instead of
+   * polling again after every change. Takes the same parameters as long polling.
+   */
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamNotifications(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "notifications") String notificationsAsString,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestParam(value = "label", required = false) String clientLabel,
+      @RequestParam(value = "withConfig", defaultValue = "false") boolean withConfig,
+      HttpServletRequest request) {
+    Map<String, ApolloConfigNotification> filteredNotifications = parseNotifications(appId, notificationsAsString);
+
+    SseEmitterWrapper sseEmitterWrapper = new SseEmitterWrapper(bizConfig.notificationStreamTimeoutInMilli(),
+        streamWriterExecutorService, NOTIFICATION_STREAM_MAX_PENDING_EVENTS);
+    if (withConfig) {
+      recordConfigPayloadContext(sseEmitterWrapper, appId, cluster, dataCenter, clientIp, clientLabel, request);
+    }
+    Map<String, Long> clientSideNotifications = recordClientSideNotifications(sseEmitterWrapper, filteredNotifications);
+
+    Multimap<String, String> watchedKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(appId, cluster, clientSideNotifications.keySet(), dataCenter);
+
+    Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+
+    //the stream completes on timeout, on error and when the client disconnects
+    sseEmitterWrapper.onCompletion(() -> {
+      openStreams.remove(sseEmitterWrapper);
+      for (String key : watchedKeys) {
+        streams.unregister(key, sseEmitterWrapper);
+      }
+      logWatchedKeys(watchedKeys, "Apollo.NotificationStream.CompletedKeys");
+    });
+
+    //register before the check, the same as long polling
+    openStreams.add(sseEmitterWrapper);
+    for (String key : watchedKeys) {
+      streams.register(key, sseEmitterWrapper);
+    }
+
+    logWatchedKeys(watchedKeys, "Apollo.NotificationStream.RegisteredKeys");
+
+    checkNewRelease(sseEmitterWrapper, clientSideNotifications, watchedKeysMap, watchedKeys);
+
+    entityManagerUtil.closeEntityManager();
+
+    return sseEmitterWrapper.getEmitter();
+  }
+
+  private void sendHeartbeats() {
+    try {
+      for (SseEmitterWrapper stream : openStreams) {
+        stream.sendHeartbeat();
+      }
+    } catch (Throwable ex) {
+      logger.error("Send heartbeats to notification streams failed", ex);
+    }
+  }
+
+  private Map<String, ApolloConfigNotification> parseNotifications(String appId, String notificationsAsString) {
+    List<ApolloConfigNotification> notifications = null;
+
+    try {
+      notifications =
+          gson.fromJson(notificationsAsString, notificationsTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    if (CollectionUtils.isEmpty(notifications)) {
+      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
+    }
+
+    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
+
+    if (CollectionUtils.isEmpty(filteredNotifications)) {
+      throw BadRequestException.invalidNotificationsFormat(notificationsAsString);
+    }
+    return filteredNotifications;
+  }
+
+  private void recordConfigPayloadContext(AbstractNotificationWatcher watcher, String appId, String cluster,
+                                          String dataCenter, String clientIp, String clientLabel,
+                                          HttpServletRequest request) {
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = WebUtils.tryToGetClientIp(request);
+    }
+    watcher.recordConfigPayloadContext(new ConfigPayloadContext(appId, cluster, dataCenter, clientIp, clientLabel));
+  }
+
+  /**
+   * @return the client side notification id of each normalized namespace
+   */
+  private Map<String, Long> recordClientSideNotifications(AbstractNotificationWatcher watcher,
+      Map<String, ApolloConfigNotification> filteredNotifications) {
+    Map<String, Long> clientSideNotifications = Maps.newHashMapWithExpectedSize(filteredNotifications.size());
+
+    for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications.entrySet()) {
+      String normalizedNamespace = notificationEntry.getKey();
+      ApolloConfigNotification notification = notificationEntry.getValue();
+      clientSideNotifications.put(normalizedNamespace, notification.getNotificationId());
+      if (!Objects.equals(notification.getNamespaceName(), normalizedNamespace)) {
+        watcher.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
+      }
+    }
+    return clientSideNotifications;
+  }
+
+  private void checkNewRelease(AbstractNotificationWatcher watcher, Map<String, Long> clientSideNotifications,
+                               Multimap<String, String> watchedKeysMap, Set<String> watchedKeys) {
+    List<ReleaseMessage> latestReleaseMessages =
+        releaseMessageService.findLatestReleaseMessagesGroupByMessages(watchedKeys);
+
     List<ApolloConfigNotification> newNotifications =
-        getApolloConfigNotifications(namespaces, clientSideNotifications, watchedKeysMap,
+        getApolloConfigNotifications(clientSideNotifications.keySet(), clientSideNotifications, watchedKeysMap,
             latestReleaseMessages);
 
+    //the configurations might be loaded here if the client asks for them, so set the result before closing
+    //the entity manager
     if (!CollectionUtils.isEmpty(newNotifications)) {
-      deferredResultWrapper.setResult(newNotifications);
+      setResult(watcher, newNotifications);
     }
-
-    return deferredResultWrapper.getResult();
   }
 
   private Map<String, ApolloConfigNotification> filterNotifications(String appId,
@@ -274,44 +416,110 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    if (!deferredResults.containsKey(content)) {
-      return;
-    }
-
-    //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
-
     ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
     configNotification.addMessage(content, message.getId());
 
+    if (deferredResults.containsKey(content)) {
+      //create a new list to avoid ConcurrentModificationException
+      notifyWatchers(content, Lists.newArrayList(deferredResults.get(content)), configNotification);
+    }
+
+    if (streams.containsKey(content)) {
+      notifyWatchers(content, Lists.newArrayList(streams.get(content)), configNotification);
+    }
+  }
+
+  private <T extends AbstractNotificationWatcher> void notifyWatchers(String content, List<T> watchers,
+                                                                     ApolloConfigNotification configNotification) {
     //do async notification if too many clients
-    if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              //ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(configNotification);
-        }
-      });
+    if (watchers.size() > bizConfig.releaseMessageNotificationBatch()) {
+      notificationFanOutService.fanOut(content, watchers, watcher -> setResult(watcher, configNotification));
       return;
     }
 
-    logger.debug("Notify {} clients for key {}", results.size(), content);
+    logger.debug("Notify {} clients for key {}", watchers.size(), content);
 
-    for (DeferredResultWrapper result : results) {
-      result.setResult(configNotification);
+    for (T watcher : watchers) {
+      setResult(watcher, configNotification);
     }
     logger.debug("Notification completed");
   }
 
+  private void setResult(AbstractNotificationWatcher watcher, ApolloConfigNotification notification) {
+    if (watcher.getConfigPayloadContext() == null) {
+      watcher.setResult(notification);
+      return;
+    }
+    setResult(watcher, Lists.newArrayList(notification));
+  }
+
+  private void setResult(AbstractNotificationWatcher watcher, List<ApolloConfigNotification> notifications) {
+    ConfigPayloadContext context = watcher.getConfigPayloadContext();
+    if (context != null) {
+      notifications = notifications.stream().map(notification -> withConfig(context, notification))
+          .collect(Collectors.toList());
+    }
+    watcher.setResult(notifications);
+  }
+
+  /**
+   * Attach the configurations to the notification, clients which might load gray releases still query them as usual
+   */
+  private ApolloConfigNotification withConfig(ConfigPayloadContext context, ApolloConfigNotification notification) {
+    String namespace = notification.getNamespaceName();
+    if (mightLoadGrayRelease(context, namespace)) {
+      return notification;
+    }
+
+    String cacheKey = STRING_JOINER.join(context.getAppId(), context.getCluster(), namespace,
+        context.getDataCenter(), notification.getNotificationId());
+    ConfigPayload configPayload;
+    try {
+      configPayload = configPayloadCache.get(cacheKey, () -> loadConfigPayload(context, notification)).orElse(null);
+    } catch (Throwable ex) {
+      logger.error("Render config payload failed for {}", cacheKey, ex);
+      Tracer.logError(ex);
+      return notification;
+    }
+
+    if (configPayload == null) {
+      return notification;
+    }
+
+    configController.auditReleases(context.getAppId(), context.getCluster(), context.getDataCenter(),
+        context.getClientIp(), configPayload.releases);
+
+    return new ApolloConfigNotificationWithConfig(notification, configPayload.config);
+  }
+
+  /**
+   * The payloads are shared by all the clients of the same app, cluster and data center, so clients matched by ip or
+   * label, or having any rule by label of the namespace, are excluded
+   */
+  private boolean mightLoadGrayRelease(ConfigPayloadContext context, String namespace) {
+    return grayReleaseRulesHolder.hasGrayReleaseRule(context.getAppId(), context.getClientIp(), namespace)
+        || grayReleaseRulesHolder.hasLabelledGrayReleaseRule(context.getAppId(), namespace)
+        || grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(context.getAppId(), context.getClientIp(),
+        context.getClientLabel(), context.getAppId(), context.getCluster(), namespace) != null;
+  }
+
+  private Optional<ConfigPayload> loadConfigPayload(ConfigPayloadContext context,
+                                                    ApolloConfigNotification notification) {
+    String namespace = notification.getNamespaceName();
+    Tracer.logEvent("Apollo.LongPoll.ConfigPayload", STRING_JOINER.join(context.getAppId(), context.getCluster(),
+        namespace, context.getDataCenter()));
+
+    List<Release> releases = configController.findReleases(context.getAppId(), null, null, context.getCluster(),
+        namespace, context.getDataCenter(), notification.getMessages());
+    if (releases.isEmpty()) {
+      return Optional.empty();
+    }
+
+    String config = gson.toJson(configController.assembleApolloConfig(context.getAppId(), context.getCluster(),
+        namespace, releases));
+    return Optional.of(new ConfigPayload(config, releases));
+  }
+
   private static final Function<String, String> retrieveNamespaceFromReleaseMessage =
       releaseMessage -> {
         if (Strings.isNullOrEmpty(releaseMessage)) {
@@ -329,4 +537,22 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       Tracer.logEvent(eventName, watchedKey);
     }
   }
+
+  private static class ConfigPayload {
+    private final String config;
+    private final List<Release> releases;
+
+    private ConfigPayload(String config, List<Release> releases) {
+      this.config = config;
+      this.releases = releases;
+    }
+
+    private int getWeight() {
+      int weight = config.length();
+      for (Release release : releases) {
+        weight += Strings.nullToEmpty(release.getConfigurations()).length();
+      }
+      return weight;
+    }
+  }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Receive the ids of new release messages pushed by admin services.
+ * <p>
+ * Only ids are accepted, the messages are always loaded from database so that pushed content could not be forged.
+ * When admin service access control is enabled, the pushes must carry one of the admin service access tokens, the same
+ * as the requests to admin services.
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageController {
+  private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageController.class);
+  private static final int MAX_RELEASE_MESSAGES_PER_PUSH = 1000;
+  private static final Splitter ACCESS_TOKEN_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+
+  private final ReleaseMessageScanner releaseMessageScanner;
+  private final BizConfig bizConfig;
+
+  public ReleaseMessageController(
+      final ReleaseMessageScanner releaseMessageScanner,
+      final BizConfig bizConfig) {
+    this.releaseMessageScanner = releaseMessageScanner;
+    this.bizConfig = bizConfig;
+  }
+
+  @PostMapping
+  public ResponseEntity<Void> onReleaseMessagesPushed(
+      @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String token,
+      @RequestBody List<Long> releaseMessageIds) {
+    if (!checkAccessToken(token)) {
+      logger.warn("Invalid access token: {} for pushing release messages", token);
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    if (!bizConfig.isReleaseMessagePushEnabled() || CollectionUtils.isEmpty(releaseMessageIds)) {
+      return ResponseEntity.ok().build();
+    }
+    if (releaseMessageIds.size() > MAX_RELEASE_MESSAGES_PER_PUSH) {
+      throw new BadRequestException("too many release messages pushed:%s, max:%s", releaseMessageIds.size(),
+          MAX_RELEASE_MESSAGES_PER_PUSH);
+    }
+
+    releaseMessageScanner.onReleaseMessagesPushed(releaseMessageIds);
+    return ResponseEntity.ok().build();
+  }
+
+  private boolean checkAccessToken(String token) {
+    if (!bizConfig.isAdminServiceAccessControlEnabled()) {
+      return true;
+    }
+    String accessTokens = bizConfig.getAdminServiceAccessTokens();
+    // the same as admin services, pass if access tokens are not configured
+    if (Strings.isNullOrEmpty(accessTokens)) {
+      return true;
+    }
+    return !Strings.isNullOrEmpty(token) && ACCESS_TOKEN_SPLITTER.splitToList(accessTokens).contains(token);
+  }
+}
@@ -17,13 +17,12 @@
 package com.ctrip.framework.apollo.configservice.filter;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.service.AccessKeySecrets;
 import com.ctrip.framework.apollo.configservice.util.AccessKeyUtil;
 import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.google.common.net.HttpHeaders;
 import java.io.IOException;
-import java.util.List;
-import java.util.Objects;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -34,7 +33,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.util.CollectionUtils;
 
 /**
  * @author nisiyong
@@ -68,8 +66,8 @@ public class ClientAuthenticationFilter implements Filter {
       return;
     }
 
-    List<String> availableSecrets = accessKeyUtil.findAvailableSecret(appId);
-    if (!CollectionUtils.isEmpty(availableSecrets)) {
+    AccessKeySecrets availableSecrets = accessKeyUtil.findAvailableSecretKeys(appId);
+    if (!availableSecrets.isEmpty()) {
       String timestamp = request.getHeader(Signature.HTTP_HEADER_TIMESTAMP);
       String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
 
@@ -111,23 +109,19 @@ public class ClientAuthenticationFilter implements Filter {
     return Math.abs(x) < authTimeDiffToleranceInMillis;
   }
 
-  private boolean checkAuthorization(String authorization, List<String> availableSecrets,
+  private boolean checkAuthorization(String authorization, AccessKeySecrets availableSecrets,
       String timestamp, String path, String query) {
 
     String signature = null;
     if (authorization != null) {
-      String[] split = authorization.split(":");
-      if (split.length > 1) {
-        signature = split[1];
+      // the same as authorization.split(":")[1]
+      int start = authorization.indexOf(':') + 1;
+      if (start > 0 && start < authorization.length()) {
+        int end = authorization.indexOf(':', start);
+        signature = authorization.substring(start, end < 0 ? authorization.length() : end);
       }
     }
 
-    for (String secret : availableSecrets) {
-      String availableSignature = accessKeyUtil.buildSignature(path, query, timestamp, secret);
-      if (Objects.equals(signature, availableSignature)) {
-        return true;
-      }
-    }
-    return false;
+    return availableSecrets.verify(signature, timestamp, path, query);
   }
 }
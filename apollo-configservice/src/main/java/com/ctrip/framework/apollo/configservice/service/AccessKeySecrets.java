@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * The enabled access key secrets of an app, prepared once when the access keys change.
+ * <p>
+ * Signatures are verified the same way as {@link com.ctrip.framework.apollo.core.signature.Signature} signs them, but
+ * with a reusable {@link Mac} and buffers per thread instead of a new {@link Mac} and new strings per secret per
+ * request. The {@link Mac} is shared by all apps rather than kept per app and thread, as it's only initialized with the
+ * precomputed key of the secret.
+ */
+public final class AccessKeySecrets {
+  public static final AccessKeySecrets EMPTY = new AccessKeySecrets(ImmutableList.of());
+
+  private static final String ALGORITHM_NAME = "HmacSHA1";
+  //base64 of the 20 bytes HmacSHA1 digest
+  private static final int SIGNATURE_LENGTH = 28;
+  private static final int BUFFER_SIZE = 256;
+  private static final ThreadLocal<SignatureContext> SIGNATURE_CONTEXT = ThreadLocal.withInitial(SignatureContext::new);
+
+  private final List<String> secrets;
+  private final SecretKeySpec[] secretKeys;
+
+  private AccessKeySecrets(List<String> secrets) {
+    this.secrets = secrets;
+    this.secretKeys = new SecretKeySpec[secrets.size()];
+    for (int i = 0; i < secretKeys.length; i++) {
+      secretKeys[i] = new SecretKeySpec(secrets.get(i).getBytes(StandardCharsets.UTF_8), ALGORITHM_NAME);
+    }
+  }
+
+  public static AccessKeySecrets of(List<String> secrets) {
+    if (secrets.isEmpty()) {
+      return EMPTY;
+    }
+    return new AccessKeySecrets(ImmutableList.copyOf(secrets));
+  }
+
+  public boolean isEmpty() {
+    return secrets.isEmpty();
+  }
+
+  /**
+   * @return the immutable list of secrets
+   */
+  public List<String> getSecrets() {
+    return secrets;
+  }
+
+  /**
+   * Verify the signature against all the secrets
+   *
+   * @param signature the base64 encoded signature of the request
+   * @return true if the signature is signed by one of the secrets
+   */
+  public boolean verify(String signature, String timestamp, String path, String query) {
+    if (signature == null || signature.length() != SIGNATURE_LENGTH) {
+      return false;
+    }
+
+    SignatureContext context = SIGNATURE_CONTEXT.get();
+    Mac mac = context.mac;
+    for (SecretKeySpec secretKey : secretKeys) {
+      try {
+        mac.init(secretKey);
+      } catch (GeneralSecurityException ex) {
+        throw new IllegalArgumentException(ex);
+      }
+      //the same as signing timestamp + "\n" + path + "?" + query
+      update(mac, context.buffer, timestamp);
+      mac.update((byte) '\n');
+      update(mac, context.buffer, path);
+      if (!Strings.isNullOrEmpty(query)) {
+        mac.update((byte) '?');
+        update(mac, context.buffer, query);
+      }
+      Base64.getEncoder().encode(mac.doFinal(), context.signature);
+
+      if (isEqual(context.signature, signature)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Update the mac with the utf-8 bytes of the value, ascii characters are copied to the buffer without encoding
+   */
+  private static void update(Mac mac, byte[] buffer, String value) {
+    int length = value.length();
+    int start = 0;
+    while (start < length) {
+      int end = Math.min(start + buffer.length, length);
+      for (int i = start; i < end; i++) {
+        char c = value.charAt(i);
+        if (c >= 0x80) {
+          mac.update(buffer, 0, i - start);
+          mac.update(value.substring(i).getBytes(StandardCharsets.UTF_8));
+          return;
+        }
+        buffer[i - start] = (byte) c;
+      }
+      mac.update(buffer, 0, end - start);
+      start = end;
+    }
+  }
+
+  /**
+   * Compare in constant time, so that the expected signature can't be guessed by timing
+   */
+  private static boolean isEqual(byte[] expected, String actual) {
+    int result = 0;
+    for (int i = 0; i < expected.length; i++) {
+      result |= expected[i] ^ actual.charAt(i);
+    }
+    return result == 0;
+  }
+
+  private static final class SignatureContext {
+    private final Mac mac;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] signature = new byte[SIGNATURE_LENGTH];
+
+    private SignatureContext() {
+      try {
+        mac = Mac.getInstance(ALGORITHM_NAME);
+      } catch (GeneralSecurityException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+}
@@ -19,25 +19,22 @@ package com.ctrip.framework.apollo.configservice.service;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.AccessKey;
 import com.ctrip.framework.apollo.biz.repository.AccessKeyRepository;
+import com.ctrip.framework.apollo.configservice.wrapper.CaseInsensitiveMapWrapper;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
-import com.google.common.collect.ListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.MultimapBuilder.ListMultimapBuilder;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -63,8 +60,10 @@ public class AccessKeyServiceWithCache implements InitializingBean {
   private ScheduledExecutorService scheduledExecutorService;
   private Date lastTimeScanned;
 
-  private ListMultimap<String, AccessKey> accessKeyCache;
-  private ConcurrentMap<Long, AccessKey> accessKeyIdCache;
+  //the index read by requests, which is never modified but rebuilt and swapped as a whole when access keys change
+  private volatile CaseInsensitiveMapWrapper<AccessKeySecrets> accessKeySecretsIndex;
+  //store id -> AccessKey, only accessed when loading access keys, which is synchronized
+  private Map<Long, AccessKey> accessKeyIdCache;
 
   public AccessKeyServiceWithCache(final AccessKeyRepository accessKeyRepository,
       final BizConfig bizConfig) {
@@ -79,22 +78,20 @@ public class AccessKeyServiceWithCache implements InitializingBean {
         ApolloThreadFactory.create("AccessKeyServiceWithCache", true));
     lastTimeScanned = new Date(0L);
 
-    ListMultimap<String, AccessKey> multimap = ListMultimapBuilder.treeKeys(String.CASE_INSENSITIVE_ORDER)
-        .arrayListValues().build();
-    accessKeyCache = Multimaps.synchronizedListMultimap(multimap);
-    accessKeyIdCache = Maps.newConcurrentMap();
+    accessKeySecretsIndex = new CaseInsensitiveMapWrapper<>(ImmutableMap.of());
+    accessKeyIdCache = Maps.newTreeMap();
   }
 
   public List<String> getAvailableSecrets(String appId) {
-    List<AccessKey> accessKeys = accessKeyCache.get(appId);
-    if (CollectionUtils.isEmpty(accessKeys)) {
-      return Collections.emptyList();
-    }
+    return getAvailableSecretKeys(appId).getSecrets();
+  }
 
-    return accessKeys.stream()
-        .filter(AccessKey::isEnabled)
-        .map(AccessKey::getSecret)
-        .collect(Collectors.toList());
+  /**
+   * @return the enabled secrets of the app, which are prepared once when the access keys change
+   */
+  public AccessKeySecrets getAvailableSecretKeys(String appId) {
+    AccessKeySecrets secrets = accessKeySecretsIndex.get(appId);
+    return secrets == null ? AccessKeySecrets.EMPTY : secrets;
   }
 
   @Override
@@ -137,81 +134,118 @@ public class AccessKeyServiceWithCache implements InitializingBean {
     }
   }
 
-  private void loadNewAndUpdatedAccessKeys() {
+  private synchronized void loadNewAndUpdatedAccessKeys() {
     boolean hasMore = true;
-    while (hasMore && !Thread.currentThread().isInterrupted()) {
-      //current batch is 500
-      List<AccessKey> accessKeys = accessKeyRepository
-          .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(lastTimeScanned);
-      if (CollectionUtils.isEmpty(accessKeys)) {
-        break;
-      }
+    boolean loaded = false;
+    try {
+      while (hasMore && !Thread.currentThread().isInterrupted()) {
+        //current batch is 500
+        List<AccessKey> accessKeys = accessKeyRepository
+            .findFirst500ByDataChangeLastModifiedTimeGreaterThanOrderByDataChangeLastModifiedTimeAsc(lastTimeScanned);
+        if (CollectionUtils.isEmpty(accessKeys)) {
+          break;
+        }
 
-      int scanned = accessKeys.size();
-      mergeAccessKeys(accessKeys);
-      logger.info("Loaded {} new/updated Accesskey from startTime {}", scanned, lastTimeScanned);
+        int scanned = accessKeys.size();
+        mergeAccessKeys(accessKeys);
+        loaded = true;
+        logger.info("Loaded {} new/updated Accesskey from startTime {}", scanned, lastTimeScanned);
 
-      hasMore = scanned == 500;
-      lastTimeScanned = accessKeys.get(scanned - 1).getDataChangeLastModifiedTime();
+        hasMore = scanned == 500;
+        lastTimeScanned = accessKeys.get(scanned - 1).getDataChangeLastModifiedTime();
 
-      // In order to avoid missing some records at the last time, we need to scan records at this time individually
-      if (hasMore) {
-        List<AccessKey> lastModifiedTimeAccessKeys = accessKeyRepository.findByDataChangeLastModifiedTime(lastTimeScanned);
-        mergeAccessKeys(lastModifiedTimeAccessKeys);
-        logger.info("Loaded {} new/updated Accesskey at lastModifiedTime {}", scanned, lastTimeScanned);
+        // In order to avoid missing some records at the last time, we need to scan records at this time individually
+        if (hasMore) {
+          List<AccessKey> lastModifiedTimeAccessKeys = accessKeyRepository.findByDataChangeLastModifiedTime(lastTimeScanned);
+          mergeAccessKeys(lastModifiedTimeAccessKeys);
+          logger.info("Loaded {} new/updated Accesskey at lastModifiedTime {}", scanned, lastTimeScanned);
+        }
+      }
+    } finally {
+      //publish what's loaded even if some batch failed
+      if (loaded) {
+        rebuildIndex();
       }
     }
   }
 
   private void mergeAccessKeys(List<AccessKey> accessKeys) {
     for (AccessKey accessKey : accessKeys) {
-      AccessKey thatInCache = accessKeyIdCache.get(accessKey.getId());
-
-      accessKeyIdCache.put(accessKey.getId(), accessKey);
-      accessKeyCache.put(accessKey.getAppId(), accessKey);
+      AccessKey thatInCache = accessKeyIdCache.put(accessKey.getId(), accessKey);
 
       if (thatInCache != null && accessKey.getDataChangeLastModifiedTime()
           .after(thatInCache.getDataChangeLastModifiedTime())) {
-        accessKeyCache.remove(accessKey.getAppId(), thatInCache);
         logger.info("Found Accesskey changes, old: {}, new: {}", thatInCache, accessKey);
       }
     }
   }
 
-  private void deleteAccessKeyCache() {
+  private synchronized void deleteAccessKeyCache() {
     List<Long> ids = Lists.newArrayList(accessKeyIdCache.keySet());
     if (CollectionUtils.isEmpty(ids)) {
       return;
     }
 
-    List<List<Long>> partitionIds = Lists.partition(ids, 500);
-    for (List<Long> toRebuildIds : partitionIds) {
-      Iterable<AccessKey> accessKeys = accessKeyRepository.findAllById(toRebuildIds);
+    boolean deleted = false;
+    try {
+      List<List<Long>> partitionIds = Lists.partition(ids, 500);
+      for (List<Long> toRebuildIds : partitionIds) {
+        Iterable<AccessKey> accessKeys = accessKeyRepository.findAllById(toRebuildIds);
 
-      Set<Long> foundIds = Sets.newHashSet();
-      for (AccessKey accessKey : accessKeys) {
-        foundIds.add(accessKey.getId());
-      }
+        Set<Long> foundIds = Sets.newHashSet();
+        for (AccessKey accessKey : accessKeys) {
+          foundIds.add(accessKey.getId());
+        }
 
-      //handle deleted
-      SetView<Long> deletedIds = Sets.difference(Sets.newHashSet(toRebuildIds), foundIds);
-      handleDeletedAccessKeys(deletedIds);
+        //handle deleted
+        SetView<Long> deletedIds = Sets.difference(Sets.newHashSet(toRebuildIds), foundIds);
+        deleted |= handleDeletedAccessKeys(deletedIds);
+      }
+    } finally {
+      //all the deletions are published at once
+      if (deleted) {
+        rebuildIndex();
+      }
     }
   }
 
-  private void handleDeletedAccessKeys(Set<Long> deletedIds) {
+  private boolean handleDeletedAccessKeys(Set<Long> deletedIds) {
     if (CollectionUtils.isEmpty(deletedIds)) {
-      return;
+      return false;
     }
+    boolean changed = false;
     for (Long deletedId : deletedIds) {
       AccessKey deleted = accessKeyIdCache.remove(deletedId);
       if (deleted == null) {
         continue;
       }
 
-      accessKeyCache.remove(deleted.getAppId(), deleted);
+      changed = true;
       logger.info("Found AccessKey deleted, {}", deleted);
     }
+    return changed;
+  }
+
+  /**
+   * Build the index off the request threads and swap it, so requests never block or see a partially applied change
+   */
+  private void rebuildIndex() {
+    Map<String, List<String>> enabledSecrets = Maps.newHashMap();
+    for (AccessKey accessKey : accessKeyIdCache.values()) {
+      List<String> secrets = enabledSecrets.computeIfAbsent(accessKey.getAppId().toLowerCase(),
+          key -> Lists.newArrayList());
+      if (accessKey.isEnabled()) {
+        secrets.add(accessKey.getSecret());
+      }
+    }
+
+    ImmutableMap.Builder<String, AccessKeySecrets> index = ImmutableMap.builderWithExpectedSize(enabledSecrets.size());
+    for (Map.Entry<String, List<String>> entry : enabledSecrets.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        index.put(entry.getKey(), AccessKeySecrets.of(entry.getValue()));
+      }
+    }
+    accessKeySecretsIndex = new CaseInsensitiveMapWrapper<>(index.build());
   }
 
   private void populateDataBaseInterval() {
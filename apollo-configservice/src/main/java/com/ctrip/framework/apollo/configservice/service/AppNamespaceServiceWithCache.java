@@ -28,6 +28,7 @@ import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -37,6 +38,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,7 @@ import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -62,14 +65,13 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   private TimeUnit rebuildIntervalTimeUnit;
   private ScheduledExecutorService scheduledExecutorService;
   private long maxIdScanned;
+  //increased whenever the cached app namespaces change
+  private final AtomicLong cacheVersion = new AtomicLong();
 
-  //store namespaceName -> AppNamespace
-  private CaseInsensitiveMapWrapper<AppNamespace> publicAppNamespaceCache;
+  //the index read by requests, which is never modified but rebuilt and swapped as a whole when app namespaces change
+  private volatile AppNamespaceIndex appNamespaceIndex;
 
-  //store appId+namespaceName -> AppNamespace
-  private CaseInsensitiveMapWrapper<AppNamespace> appNamespaceCache;
-
-  //store id -> AppNamespace
+  //store id -> AppNamespace, only accessed when loading app namespaces, which is synchronized
   private Map<Long, AppNamespace> appNamespaceIdCache;
 
   public AppNamespaceServiceWithCache(
@@ -82,16 +84,16 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
 
   private void initialize() {
     maxIdScanned = 0;
-    publicAppNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
-    appNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
-    appNamespaceIdCache = Maps.newConcurrentMap();
+    appNamespaceIndex = AppNamespaceIndex.EMPTY;
+    appNamespaceIdCache = Maps.newTreeMap();
+    cacheVersion.incrementAndGet();
     scheduledExecutorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("AppNamespaceServiceWithCache", true));
   }
 
   public AppNamespace findByAppIdAndNamespace(String appId, String namespaceName) {
     Preconditions.checkArgument(!StringUtils.isContainEmpty(appId, namespaceName), "appId and namespaceName must not be empty");
-    return appNamespaceCache.get(STRING_JOINER.join(appId, namespaceName));
+    return appNamespaceIndex.appNamespaces.get(STRING_JOINER.join(appId, namespaceName));
   }
 
   public List<AppNamespace> findByAppIdAndNamespaces(String appId, Set<String> namespaceNames) {
@@ -99,9 +101,11 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     if (namespaceNames == null || namespaceNames.isEmpty()) {
       return Collections.emptyList();
     }
+    //read the index once, so that the results are from the same snapshot
+    AppNamespaceIndex index = appNamespaceIndex;
     List<AppNamespace> result = Lists.newArrayList();
     for (String namespaceName : namespaceNames) {
-      AppNamespace appNamespace = appNamespaceCache.get(STRING_JOINER.join(appId, namespaceName));
+      AppNamespace appNamespace = index.appNamespaces.get(STRING_JOINER.join(appId, namespaceName));
       if (appNamespace != null) {
         result.add(appNamespace);
       }
@@ -111,7 +115,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
 
   public AppNamespace findPublicNamespaceByName(String namespaceName) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(namespaceName), "namespaceName must not be empty");
-    return publicAppNamespaceCache.get(namespaceName);
+    return appNamespaceIndex.publicAppNamespaces.get(namespaceName);
   }
 
   public List<AppNamespace> findPublicNamespacesByNames(Set<String> namespaceNames) {
@@ -119,9 +123,10 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
       return Collections.emptyList();
     }
 
+    AppNamespaceIndex index = appNamespaceIndex;
     List<AppNamespace> result = Lists.newArrayList();
     for (String namespaceName : namespaceNames) {
-      AppNamespace appNamespace = publicAppNamespaceCache.get(namespaceName);
+      AppNamespace appNamespace = index.publicAppNamespaces.get(namespaceName);
       if (appNamespace != null) {
         result.add(appNamespace);
       }
@@ -129,6 +134,14 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     return result;
   }
 
+  /**
+   * @return the version of the cached app namespaces, which changes whenever app namespaces are found created, updated
+   * or deleted, so that results derived from them could be cached until it changes
+   */
+  public long getCacheVersion() {
+    return cacheVersion.get();
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
@@ -165,113 +178,111 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   }
 
   //for those new app namespaces
-  private void loadNewAppNamespaces() {
+  private synchronized void loadNewAppNamespaces() {
     boolean hasMore = true;
-    while (hasMore && !Thread.currentThread().isInterrupted()) {
-      //current batch is 500
-      List<AppNamespace> appNamespaces = appNamespaceRepository
-          .findFirst500ByIdGreaterThanOrderByIdAsc(maxIdScanned);
-      if (CollectionUtils.isEmpty(appNamespaces)) {
-        break;
+    boolean loaded = false;
+    try {
+      while (hasMore && !Thread.currentThread().isInterrupted()) {
+        //current batch is 500
+        List<AppNamespace> appNamespaces = appNamespaceRepository
+            .findFirst500ByIdGreaterThanOrderByIdAsc(maxIdScanned);
+        if (CollectionUtils.isEmpty(appNamespaces)) {
+          break;
+        }
+        mergeAppNamespaces(appNamespaces);
+        loaded = true;
+        int scanned = appNamespaces.size();
+        maxIdScanned = appNamespaces.get(scanned - 1).getId();
+        hasMore = scanned == 500;
+        logger.info("Loaded {} new app namespaces with startId {}", scanned, maxIdScanned);
+      }
+    } finally {
+      //publish what's loaded even if some batch failed
+      if (loaded) {
+        rebuildIndex();
       }
-      mergeAppNamespaces(appNamespaces);
-      int scanned = appNamespaces.size();
-      maxIdScanned = appNamespaces.get(scanned - 1).getId();
-      hasMore = scanned == 500;
-      logger.info("Loaded {} new app namespaces with startId {}", scanned, maxIdScanned);
     }
   }
 
   private void mergeAppNamespaces(List<AppNamespace> appNamespaces) {
     for (AppNamespace appNamespace : appNamespaces) {
-      appNamespaceCache.put(assembleAppNamespaceKey(appNamespace), appNamespace);
       appNamespaceIdCache.put(appNamespace.getId(), appNamespace);
-      if (appNamespace.isPublic()) {
-        publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
-      }
     }
   }
 
   //for those updated or deleted app namespaces
-  private void updateAndDeleteCache() {
+  private synchronized void updateAndDeleteCache() {
     List<Long> ids = Lists.newArrayList(appNamespaceIdCache.keySet());
     if (CollectionUtils.isEmpty(ids)) {
       return;
     }
-    List<List<Long>> partitionIds = Lists.partition(ids, 500);
-    for (List<Long> toRebuild : partitionIds) {
-      Iterable<AppNamespace> appNamespaces = appNamespaceRepository.findAllById(toRebuild);
+    boolean changed = false;
+    try {
+      List<List<Long>> partitionIds = Lists.partition(ids, 500);
+      for (List<Long> toRebuild : partitionIds) {
+        Iterable<AppNamespace> appNamespaces = appNamespaceRepository.findAllById(toRebuild);
 
-      if (appNamespaces == null) {
-        continue;
-      }
+        if (appNamespaces == null) {
+          continue;
+        }
 
-      //handle updated
-      Set<Long> foundIds = handleUpdatedAppNamespaces(appNamespaces);
+        //handle updated
+        Set<Long> foundIds = Sets.newHashSet();
+        changed |= handleUpdatedAppNamespaces(appNamespaces, foundIds);
 
-      //handle deleted
-      handleDeletedAppNamespaces(Sets.difference(Sets.newHashSet(toRebuild), foundIds));
+        //handle deleted
+        changed |= handleDeletedAppNamespaces(Sets.difference(Sets.newHashSet(toRebuild), foundIds));
+      }
+    } finally {
+      //all the changes are published at once
+      if (changed) {
+        rebuildIndex();
+      }
     }
   }
 
   //for those updated app namespaces
-  private Set<Long> handleUpdatedAppNamespaces(Iterable<AppNamespace> appNamespaces) {
-    Set<Long> foundIds = Sets.newHashSet();
+  private boolean handleUpdatedAppNamespaces(Iterable<AppNamespace> appNamespaces, Set<Long> foundIds) {
+    boolean changed = false;
     for (AppNamespace appNamespace : appNamespaces) {
       foundIds.add(appNamespace.getId());
       AppNamespace thatInCache = appNamespaceIdCache.get(appNamespace.getId());
       if (thatInCache != null && appNamespace.getDataChangeLastModifiedTime().after(thatInCache
           .getDataChangeLastModifiedTime())) {
         appNamespaceIdCache.put(appNamespace.getId(), appNamespace);
-        String oldKey = assembleAppNamespaceKey(thatInCache);
-        String newKey = assembleAppNamespaceKey(appNamespace);
-        appNamespaceCache.put(newKey, appNamespace);
-
-        //in case appId or namespaceName changes
-        if (!newKey.equals(oldKey)) {
-          appNamespaceCache.remove(oldKey);
-        }
-
-        if (appNamespace.isPublic()) {
-          publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
-
-          //in case namespaceName changes
-          if (!appNamespace.getName().equals(thatInCache.getName()) && thatInCache.isPublic()) {
-            publicAppNamespaceCache.remove(thatInCache.getName());
-          }
-        } else if (thatInCache.isPublic()) {
-          //just in case isPublic changes
-          publicAppNamespaceCache.remove(thatInCache.getName());
-        }
+        changed = true;
         logger.info("Found AppNamespace changes, old: {}, new: {}", thatInCache, appNamespace);
       }
     }
-    return foundIds;
+    return changed;
   }
 
   //for those deleted app namespaces
-  private void handleDeletedAppNamespaces(Set<Long> deletedIds) {
+  private boolean handleDeletedAppNamespaces(Set<Long> deletedIds) {
     if (CollectionUtils.isEmpty(deletedIds)) {
-      return;
+      return false;
     }
+    boolean changed = false;
     for (Long deletedId : deletedIds) {
       AppNamespace deleted = appNamespaceIdCache.remove(deletedId);
       if (deleted == null) {
         continue;
       }
-      appNamespaceCache.remove(assembleAppNamespaceKey(deleted));
-      if (deleted.isPublic()) {
-        AppNamespace publicAppNamespace = publicAppNamespaceCache.get(deleted.getName());
-        // in case there is some dirty data, e.g. public namespace deleted in some app and now created in another app
-        if (publicAppNamespace == deleted) {
-          publicAppNamespaceCache.remove(deleted.getName());
-        }
-      }
+      changed = true;
       logger.info("Found AppNamespace deleted, {}", deleted);
     }
+    return changed;
   }
 
-  private String assembleAppNamespaceKey(AppNamespace appNamespace) {
+  /**
+   * Build the index off the request threads and swap it, so requests never block or see a partially applied change
+   */
+  private void rebuildIndex() {
+    appNamespaceIndex = AppNamespaceIndex.build(appNamespaceIdCache.values());
+    cacheVersion.incrementAndGet();
+  }
+
+  private static String assembleAppNamespaceKey(AppNamespace appNamespace) {
     return STRING_JOINER.join(appNamespace.getAppId(), appNamespace.getName());
   }
 
@@ -288,4 +299,36 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     initialize();
     afterPropertiesSet();
   }
+
+  private static final class AppNamespaceIndex {
+    private static final AppNamespaceIndex EMPTY = new AppNamespaceIndex(ImmutableMap.of(), ImmutableMap.of());
+
+    //store appId+namespaceName -> AppNamespace
+    private final CaseInsensitiveMapWrapper<AppNamespace> appNamespaces;
+    //store namespaceName -> AppNamespace
+    private final CaseInsensitiveMapWrapper<AppNamespace> publicAppNamespaces;
+
+    private AppNamespaceIndex(Map<String, AppNamespace> appNamespaces, Map<String, AppNamespace> publicAppNamespaces) {
+      this.appNamespaces = new CaseInsensitiveMapWrapper<>(appNamespaces);
+      this.publicAppNamespaces = new CaseInsensitiveMapWrapper<>(publicAppNamespaces);
+    }
+
+    /**
+     * @param appNamespaces ordered by id, so the latest one wins in case of dirty data, e.g. a public namespace
+     *                      deleted in some app and now created in another app
+     */
+    private static AppNamespaceIndex build(Collection<AppNamespace> appNamespaces) {
+      ImmutableMap.Builder<String, AppNamespace> appNamespacesBuilder =
+          ImmutableMap.builderWithExpectedSize(appNamespaces.size());
+      ImmutableMap.Builder<String, AppNamespace> publicAppNamespacesBuilder = ImmutableMap.builder();
+      for (AppNamespace appNamespace : appNamespaces) {
+        appNamespacesBuilder.put(assembleAppNamespaceKey(appNamespace).toLowerCase(), appNamespace);
+        if (appNamespace.isPublic()) {
+          publicAppNamespacesBuilder.put(appNamespace.getName().toLowerCase(), appNamespace);
+        }
+      }
+      return new AppNamespaceIndex(appNamespacesBuilder.buildKeepingLast(),
+          publicAppNamespacesBuilder.buildKeepingLast());
+    }
+  }
 }
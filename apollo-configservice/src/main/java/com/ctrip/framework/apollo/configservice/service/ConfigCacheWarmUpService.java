@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.base.Stopwatch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Preload the hottest namespaces into the config service cache on startup, so that the first requests after a restart
+ * do not all go to the database.
+ * <p>
+ * The hottest namespaces are the ones fetched by the most instances recently, according to the instance configs. They
+ * are loaded in background with bounded parallelism, and the config service reports out of service until the warm-up
+ * completes.
+ */
+@Service
+public class ConfigCacheWarmUpService implements InitializingBean {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigCacheWarmUpService.class);
+
+  private final BizConfig bizConfig;
+  private final InstanceService instanceService;
+  private final ConfigService configService;
+  private final AtomicInteger totalNamespaces = new AtomicInteger();
+  private final AtomicInteger loadedNamespaces = new AtomicInteger();
+  private final AtomicInteger failedNamespaces = new AtomicInteger();
+  private volatile boolean completed;
+
+  public ConfigCacheWarmUpService(final BizConfig bizConfig,
+      final InstanceService instanceService,
+      final ConfigService configService,
+      final MeterRegistry meterRegistry) {
+    this.bizConfig = bizConfig;
+    this.instanceService = instanceService;
+    this.configService = configService;
+
+    Gauge.builder("apollo.config-cache.warm-up.total", totalNamespaces, AtomicInteger::get)
+        .description("Number of namespaces to preload into the config service cache")
+        .register(meterRegistry);
+    Gauge.builder("apollo.config-cache.warm-up.loaded", loadedNamespaces, AtomicInteger::get)
+        .description("Number of namespaces preloaded into the config service cache")
+        .register(meterRegistry);
+    Gauge.builder("apollo.config-cache.warm-up.failed", failedNamespaces, AtomicInteger::get)
+        .description("Number of namespaces failed to preload into the config service cache")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    int size = bizConfig.configServiceCacheWarmUpSize();
+    if (!bizConfig.isConfigServiceCacheEnabled() || size == 0) {
+      completed = true;
+      return;
+    }
+
+    ExecutorService warmUpExecutorService = Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("ConfigCacheWarmUpService", true));
+    warmUpExecutorService.submit(() -> warmUp(size));
+    warmUpExecutorService.shutdown();
+  }
+
+  /**
+   * @return whether the warm-up is completed or disabled, namespaces failed to load do not block the completion
+   */
+  public boolean isCompleted() {
+    return completed;
+  }
+
+  public int getTotalNamespaces() {
+    return totalNamespaces.get();
+  }
+
+  public int getLoadedNamespaces() {
+    return loadedNamespaces.get();
+  }
+
+  public int getFailedNamespaces() {
+    return failedNamespaces.get();
+  }
+
+  private void warmUp(int size) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigCacheWarmUpService", "warmUp");
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    ExecutorService loadExecutorService = Executors.newFixedThreadPool(bizConfig.configServiceCacheWarmUpThreads(),
+        ApolloThreadFactory.create("ConfigCacheWarmUpService-load", true));
+    try {
+      List<String> releaseMessages = instanceService.findHottestNamespaces(size);
+      totalNamespaces.set(releaseMessages.size());
+      logger.info("Warming up config service cache with {} namespaces", releaseMessages.size());
+
+      List<Callable<Void>> loadTasks = releaseMessages.stream().map(releaseMessage -> (Callable<Void>) () -> {
+        load(releaseMessage);
+        return null;
+      }).collect(Collectors.toList());
+      loadExecutorService.invokeAll(loadTasks);
+
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Warm up config service cache failed", ex);
+    } finally {
+      loadExecutorService.shutdownNow();
+      completed = true;
+      transaction.complete();
+      logger.info("Config service cache warm-up completed in {} ms, loaded: {}, failed: {}",
+          stopwatch.elapsed(TimeUnit.MILLISECONDS), loadedNamespaces.get(), failedNamespaces.get());
+    }
+  }
+
+  private void load(String releaseMessage) {
+    try {
+      configService.warmUp(releaseMessage);
+      loadedNamespaces.incrementAndGet();
+    } catch (Throwable ex) {
+      failedNamespaces.incrementAndGet();
+      logger.warn("Warm up config service cache for {} failed", releaseMessage, ex);
+      Tracer.logError(ex);
+    }
+  }
+}
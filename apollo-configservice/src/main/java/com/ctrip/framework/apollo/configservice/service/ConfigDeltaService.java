@@ -0,0 +1,180 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compute the key level delta between the configurations of two (merged) release keys.
+ * <p>
+ * Releases are immutable, so the delta of a release key pair never changes and is cached once computed.
+ */
+@Service
+public class ConfigDeltaService {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigDeltaService.class);
+  private static final Splitter RELEASE_KEY_SPLITTER = Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final String DELTA_KEY_SEPARATOR = "->";
+  private static final long MAX_CACHE_SIZE = 10 * 1024 * 1024; // 10M characters
+  private static final long EXPIRE_AFTER_WRITE = 30;
+
+  private final ReleaseService releaseService;
+  private final ConfigService configService;
+  private final Cache<String, Optional<ConfigDelta>> deltaCache;
+
+  public ConfigDeltaService(final ReleaseService releaseService, final ConfigService configService) {
+    this.releaseService = releaseService;
+    this.configService = configService;
+    this.deltaCache = CacheBuilder.newBuilder()
+        .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
+        .weigher((Weigher<String, Optional<ConfigDelta>>) (key, value) ->
+            key.length() + value.map(ConfigDelta::getWeight).orElse(0))
+        .maximumWeight(MAX_CACHE_SIZE)
+        .build();
+  }
+
+  /**
+   * @param clientSideReleaseKey the release key the client holds
+   * @param releaseKey           the latest release key
+   * @return the delta from the client side release key to the latest one, or null if the client side releases are not
+   * found or are not releases of the same namespaces
+   */
+  public ConfigDelta findDelta(String clientSideReleaseKey, String releaseKey) {
+    String deltaKey = clientSideReleaseKey + DELTA_KEY_SEPARATOR + releaseKey;
+    try {
+      return deltaCache.get(deltaKey, () -> computeDelta(clientSideReleaseKey, releaseKey)).orElse(null);
+    } catch (Throwable ex) {
+      logger.error("Compute config delta failed for {}", deltaKey, ex);
+      Tracer.logError(ex);
+      return null;
+    }
+  }
+
+  private Optional<ConfigDelta> computeDelta(String clientSideReleaseKey, String releaseKey) {
+    Tracer.logEvent("Apollo.Config.Delta", clientSideReleaseKey + DELTA_KEY_SEPARATOR + releaseKey);
+
+    List<String> clientSideReleaseKeys = RELEASE_KEY_SPLITTER.splitToList(clientSideReleaseKey);
+    List<String> releaseKeys = RELEASE_KEY_SPLITTER.splitToList(releaseKey);
+    if (clientSideReleaseKeys.size() != releaseKeys.size()) {
+      return Optional.empty();
+    }
+
+    Set<String> allReleaseKeys = Sets.newHashSet(clientSideReleaseKeys);
+    allReleaseKeys.addAll(releaseKeys);
+    Map<String, Release> releases = Maps.newHashMap();
+    for (Release release : releaseService.findByReleaseKeys(allReleaseKeys)) {
+      releases.put(release.getReleaseKey(), release);
+    }
+
+    List<Release> clientSideReleases = Lists.newArrayListWithCapacity(clientSideReleaseKeys.size());
+    List<Release> latestReleases = Lists.newArrayListWithCapacity(releaseKeys.size());
+    for (int i = 0; i < releaseKeys.size(); i++) {
+      Release clientSideRelease = releases.get(clientSideReleaseKeys.get(i));
+      Release latestRelease = releases.get(releaseKeys.get(i));
+      //the client side release must be a release of the same app and namespace, e.g. not a release of another app
+      if (clientSideRelease == null || latestRelease == null
+          || !Objects.equals(clientSideRelease.getAppId(), latestRelease.getAppId())
+          || !Objects.equals(clientSideRelease.getNamespaceName(), latestRelease.getNamespaceName())) {
+        return Optional.empty();
+      }
+      clientSideReleases.add(clientSideRelease);
+      latestReleases.add(latestRelease);
+    }
+
+    return Optional.of(ConfigDelta.between(mergeReleaseConfigurations(clientSideReleases),
+        mergeReleaseConfigurations(latestReleases)));
+  }
+
+  /**
+   * The same as the configurations returned to clients, release in lower index overrides those in higher index
+   */
+  private Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
+    Map<String, String> result = Maps.newHashMap();
+    for (Release release : Lists.reverse(releases)) {
+      result.putAll(configService.loadConfigurations(release));
+    }
+    return result;
+  }
+
+  public static class ConfigDelta {
+    private final Map<String, String> changedConfigurations;
+    private final Set<String> deletedKeys;
+
+    private ConfigDelta(Map<String, String> changedConfigurations, Set<String> deletedKeys) {
+      this.changedConfigurations = changedConfigurations;
+      this.deletedKeys = deletedKeys;
+    }
+
+    static ConfigDelta between(Map<String, String> previous, Map<String, String> current) {
+      Map<String, String> changedConfigurations = Maps.newHashMap();
+      for (Map.Entry<String, String> entry : current.entrySet()) {
+        if (!Objects.equals(entry.getValue(), previous.get(entry.getKey())) || !previous.containsKey(entry.getKey())) {
+          changedConfigurations.put(entry.getKey(), entry.getValue());
+        }
+      }
+      return new ConfigDelta(Collections.unmodifiableMap(changedConfigurations),
+          ImmutableSet.copyOf(Sets.difference(previous.keySet(), current.keySet())));
+    }
+
+    /**
+     * @return the configurations added or changed
+     */
+    public Map<String, String> getChangedConfigurations() {
+      return changedConfigurations;
+    }
+
+    /**
+     * @return the keys deleted
+     */
+    public Set<String> getDeletedKeys() {
+      return deletedKeys;
+    }
+
+    private int getWeight() {
+      int weight = 0;
+      for (Map.Entry<String, String> entry : changedConfigurations.entrySet()) {
+        weight += entry.getKey().length() + (entry.getValue() == null ? 0 : entry.getValue().length());
+      }
+      for (String deletedKey : deletedKeys) {
+        weight += deletedKey.length();
+      }
+      return weight;
+    }
+  }
+}
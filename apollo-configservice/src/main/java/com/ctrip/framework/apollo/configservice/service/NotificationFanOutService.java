@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Notify a large number of watchers asynchronously.
+ * <p>
+ * Each watch key is notified batch by batch, and a key re-queues itself after every batch, so fan-outs of different
+ * keys are served in parallel by the worker pool instead of being queued behind each other. The total notification
+ * rate of all keys is paced by a token bucket.
+ */
+@Service
+public class NotificationFanOutService {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutService.class);
+
+  private final BizConfig bizConfig;
+  private final ThreadPoolExecutor fanOutExecutorService;
+  private final RateLimiter rateLimiter;
+  private final AtomicLong pendingNotifications = new AtomicLong();
+  private final Timer notificationLagTimer;
+
+  public NotificationFanOutService(final BizConfig bizConfig, final MeterRegistry meterRegistry) {
+    this.bizConfig = bizConfig;
+    int threads = bizConfig.releaseMessageNotificationFanOutThreads();
+    fanOutExecutorService = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), ApolloThreadFactory.create("NotificationFanOutService", true));
+    rateLimiter = RateLimiter.create(bizConfig.releaseMessageNotificationRate());
+
+    Gauge.builder("apollo.notification.fan-out.pending", pendingNotifications, AtomicLong::get)
+        .description("Number of notifications waiting to be sent")
+        .register(meterRegistry);
+    Gauge.builder("apollo.notification.fan-out.queue.depth", fanOutExecutorService, executor -> executor.getQueue().size())
+        .description("Number of watch key batches waiting for a fan-out worker")
+        .register(meterRegistry);
+    notificationLagTimer = Timer.builder("apollo.notification.fan-out.lag")
+        .description("Time from a release message being received to its watchers being notified")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Notify the watchers of the watch key asynchronously
+   */
+  public <T> void fanOut(String watchKey, List<T> watchers, Consumer<T> notifier) {
+    int rate = bizConfig.releaseMessageNotificationRate();
+    if (rateLimiter.getRate() != rate) {
+      rateLimiter.setRate(rate);
+    }
+
+    logger.debug("Async notify {} clients for key {} with rate {}/s", watchers.size(), watchKey, rate);
+
+    pendingNotifications.addAndGet(watchers.size());
+    fanOutExecutorService.execute(new FanOutTask<>(watchKey, watchers, notifier));
+  }
+
+  private class FanOutTask<T> implements Runnable {
+    private final String watchKey;
+    private final List<T> watchers;
+    private final Consumer<T> notifier;
+    private final long startNanos;
+    private int offset;
+
+    FanOutTask(String watchKey, List<T> watchers, Consumer<T> notifier) {
+      this.watchKey = watchKey;
+      this.watchers = watchers;
+      this.notifier = notifier;
+      this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void run() {
+      int end = Math.min(offset + bizConfig.releaseMessageNotificationBatch(), watchers.size());
+      rateLimiter.acquire(end - offset);
+
+      for (int i = offset; i < end; i++) {
+        try {
+          notifier.accept(watchers.get(i));
+        } catch (Throwable ex) {
+          logger.error("Notify {} for key {} failed", watchers.get(i), watchKey, ex);
+          Tracer.logError(ex);
+        }
+      }
+
+      pendingNotifications.addAndGet(offset - end);
+      notificationLagTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      offset = end;
+
+      if (offset < watchers.size()) {
+        // re-queue the rest so that other watch keys get their turn
+        fanOutExecutorService.execute(this);
+      } else {
+        logger.debug("Async notification for key {} completed", watchKey);
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index of the latest release message id of each message, i.e. appId+cluster+namespace.
+ * <p>
+ * Only the message and a primitive id are kept in an open addressing table, which is much more compact than a map of
+ * {@link com.ctrip.framework.apollo.biz.entity.ReleaseMessage} entities when there are millions of messages. Messages
+ * are never removed, so linear probing needs no tombstones.
+ * <p>
+ * Reads are lock free, writes are serialized. A new slot publishes its id before its key, and a resized table is only
+ * published after all entries are copied, so readers always see a consistent entry.
+ */
+final class ReleaseMessageIdIndex {
+  static final long NO_ID = 0;
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private volatile Table table = new Table(DEFAULT_CAPACITY);
+
+  /**
+   * @return the latest release message id of the message, or {@link #NO_ID} if not found
+   */
+  long get(String message) {
+    Table current = table;
+    int mask = current.keys.length() - 1;
+    for (int slot = spread(message.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      String key = current.keys.get(slot);
+      if (key == null) {
+        return NO_ID;
+      }
+      if (key.equals(message)) {
+        return current.ids.get(slot);
+      }
+    }
+  }
+
+  /**
+   * Set the release message id of the message if it's greater than the existing one
+   *
+   * @return whether the id is updated
+   */
+  synchronized boolean putIfGreater(String message, long id) {
+    Table current = table;
+    int mask = current.keys.length() - 1;
+    int slot = spread(message.hashCode()) & mask;
+    for (String key = current.keys.get(slot); key != null; key = current.keys.get(slot)) {
+      if (key.equals(message)) {
+        if (id <= current.ids.get(slot)) {
+          return false;
+        }
+        current.ids.set(slot, id);
+        return true;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    current.ids.set(slot, id);
+    current.keys.set(slot, message);
+    if (++current.size > current.threshold) {
+      table = current.resize();
+    }
+    return true;
+  }
+
+  int size() {
+    return table.size;
+  }
+
+  private static int spread(int hashCode) {
+    return hashCode ^ (hashCode >>> 16);
+  }
+
+  private static final class Table {
+    private final AtomicReferenceArray<String> keys;
+    private final AtomicLongArray ids;
+    private final int threshold;
+    private int size;
+
+    private Table(int capacity) {
+      keys = new AtomicReferenceArray<>(capacity);
+      ids = new AtomicLongArray(capacity);
+      threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private Table resize() {
+      Table resized = new Table(keys.length() * 2);
+      int mask = resized.keys.length() - 1;
+      for (int i = 0; i < keys.length(); i++) {
+        String key = keys.get(i);
+        if (key == null) {
+          continue;
+        }
+        int slot = spread(key.hashCode()) & mask;
+        while (resized.keys.get(slot) != null) {
+          slot = (slot + 1) & mask;
+        }
+        resized.ids.set(slot, ids.get(i));
+        resized.keys.set(slot, key);
+      }
+      resized.size = size;
+      return resized;
+    }
+  }
+}
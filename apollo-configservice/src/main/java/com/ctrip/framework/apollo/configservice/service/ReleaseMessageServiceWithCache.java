@@ -26,7 +26,6 @@ import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -36,11 +35,12 @@ import org.springframework.util.CollectionUtils;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -49,6 +49,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache
       .class);
+  private static final int MISSING_RELEASE_MESSAGES_BATCH = 500;
   private final ReleaseMessageRepository releaseMessageRepository;
   private final BizConfig bizConfig;
 
@@ -57,7 +58,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 
   private volatile long maxIdScanned;
 
-  private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
+  private ReleaseMessageIdIndex releaseMessageCache;
 
   private AtomicBoolean doScan;
   private ExecutorService executorService;
@@ -71,7 +72,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   }
 
   private void initialize() {
-    releaseMessageCache = Maps.newConcurrentMap();
+    releaseMessageCache = new ReleaseMessageIdIndex();
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
         .create("ReleaseMessageServiceWithCache", true));
@@ -82,17 +83,17 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       return null;
     }
 
-    long maxReleaseMessageId = 0;
-    ReleaseMessage result = null;
+    long maxReleaseMessageId = ReleaseMessageIdIndex.NO_ID;
+    String result = null;
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null && releaseMessage.getId() > maxReleaseMessageId) {
-        maxReleaseMessageId = releaseMessage.getId();
-        result = releaseMessage;
+      long releaseMessageId = releaseMessageCache.get(message);
+      if (releaseMessageId > maxReleaseMessageId) {
+        maxReleaseMessageId = releaseMessageId;
+        result = message;
       }
     }
 
-    return result;
+    return result == null ? null : assembleReleaseMessage(maxReleaseMessageId, result);
   }
 
   public List<ReleaseMessage> findLatestReleaseMessagesGroupByMessages(Set<String> messages) {
@@ -102,15 +103,21 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     List<ReleaseMessage> releaseMessages = Lists.newArrayList();
 
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null) {
-        releaseMessages.add(releaseMessage);
+      long releaseMessageId = releaseMessageCache.get(message);
+      if (releaseMessageId != ReleaseMessageIdIndex.NO_ID) {
+        releaseMessages.add(assembleReleaseMessage(releaseMessageId, message));
       }
     }
 
     return releaseMessages;
   }
 
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     //Could stop once the ReleaseMessageScanner starts to work
@@ -124,12 +131,14 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     }
 
     long gap = message.getId() - maxIdScanned;
-    if (gap == 1) {
-      mergeReleaseMessage(message);
-    } else if (gap > 1) {
-      //gap found!
-      loadReleaseMessages(maxIdScanned);
+    if (gap > 1) {
+      //gap found! load the missing ones in background so the scanner thread is not blocked
+      long startId = maxIdScanned;
+      long endId = message.getId();
+      executorService.submit(() -> loadMissingReleaseMessages(startId, endId));
     }
+    //the missing ones are merged later, the per message check keeps the latest one in cache
+    mergeReleaseMessage(message);
   }
 
   @Override
@@ -137,7 +146,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     populateDataBaseInterval();
     //block the startup process until load finished
     //this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
+    loadLatestReleaseMessages();
 
     executorService.submit(() -> {
       while (doScan.get() && !Thread.currentThread().isInterrupted()) {
@@ -162,13 +171,52 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   }
 
   private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
-    ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
-    if (old == null || releaseMessage.getId() > old.getId()) {
-      releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
+    releaseMessageCache.putIfGreater(releaseMessage.getMessage(), releaseMessage.getId());
+    if (releaseMessage.getId() > maxIdScanned) {
       maxIdScanned = releaseMessage.getId();
     }
   }
 
+  /**
+   * Only the latest release message of each message is needed, so load them with one grouped query instead of paging
+   * through the whole table
+   */
+  private void loadLatestReleaseMessages() {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache",
+        "loadLatestReleaseMessages");
+    try {
+      List<Object[]> latestReleaseMessages = releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages();
+      for (Object[] latestReleaseMessage : latestReleaseMessages) {
+        mergeReleaseMessage(assembleReleaseMessage(((Number) latestReleaseMessage[1]).longValue(),
+            (String) latestReleaseMessage[0]));
+      }
+      logger.info("Loaded {} latest release messages, max id {}", latestReleaseMessages.size(), maxIdScanned);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Load the release messages with id in (startId, endId)
+   */
+  private void loadMissingReleaseMessages(long startId, long endId) {
+    try {
+      for (long batchStartId = startId + 1; batchStartId < endId; batchStartId += MISSING_RELEASE_MESSAGES_BATCH) {
+        List<Long> missingIds = LongStream.range(batchStartId, Math.min(batchStartId + MISSING_RELEASE_MESSAGES_BATCH,
+            endId)).boxed().collect(Collectors.toList());
+        releaseMessageRepository.findAllById(missingIds).forEach(this::mergeReleaseMessage);
+      }
+      logger.info("Loaded missing release messages with id between {} and {}", startId, endId);
+    } catch (Throwable ex) {
+      logger.error("Load missing release messages with id between {} and {} failed", startId, endId, ex);
+      Tracer.logError(ex);
+    }
+  }
+
   private void loadReleaseMessages(long startId) {
     boolean hasMore = true;
     while (hasMore && !Thread.currentThread().isInterrupted()) {
@@ -22,13 +22,21 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 
 import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public abstract class AbstractConfigService implements ConfigService {
+  private static final Gson GSON = new Gson();
+  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
+  }.getType();
 
   private final GrayReleaseRulesHolder grayReleaseRulesHolder;
 
@@ -63,6 +71,16 @@ public abstract class AbstractConfigService implements ConfigService {
         clientMessages);
   }
 
+  @Override
+  public Map<String, String> loadConfigurations(Release release) {
+    return parseConfigurations(release);
+  }
+
+  protected static Map<String, String> parseConfigurations(Release release) {
+    Map<String, String> configurations = GSON.fromJson(release.getConfigurations(), configurationTypeReference);
+    return configurations == null ? Collections.emptyMap() : Collections.unmodifiableMap(configurations);
+  }
+
   /**
    * Find release
    *
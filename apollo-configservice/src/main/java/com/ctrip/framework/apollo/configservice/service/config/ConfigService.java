@@ -20,6 +20,8 @@ import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 
+import java.util.Map;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
@@ -40,4 +42,20 @@ public interface ConfigService extends ReleaseMessageListener {
    */
   Release loadConfig(String clientAppId, String clientIp, String clientLabel, String configAppId, String
       configClusterName, String configNamespace, String dataCenter, ApolloNotificationMessages clientMessages);
+
+  /**
+   * Load the configurations of the release
+   *
+   * @param release the release returned by {@link #loadConfig}
+   * @return the immutable configurations
+   */
+  Map<String, String> loadConfigurations(Release release);
+
+  /**
+   * Load the latest release of the namespace into the cache, nothing is done if releases are not cached
+   *
+   * @param releaseMessage the release message of the namespace, i.e. appId+cluster+namespace
+   */
+  default void warmUp(String releaseMessage) {
+  }
 }
@@ -16,12 +16,16 @@
  */
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
@@ -31,15 +35,19 @@ import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
-import java.util.Optional;
-
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
@@ -58,90 +66,139 @@ public class ConfigServiceWithCache extends AbstractConfigService {
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
+  private static final int CACHE_RELOAD_THREADS = 2;
+  // the release id cache only holds gray releases, so it gets the smaller share of the size budget
+  private static final int CONFIG_ID_CACHE_SIZE_SHARE_DIVISOR = 4;
+  // the release entity, the parsed map and the cache entry itself
+  private static final int CACHE_ENTRY_OVERHEAD_IN_BYTES = 512;
 
   private final ReleaseService releaseService;
   private final ReleaseMessageService releaseMessageService;
+  private final BizConfig bizConfig;
+  private final MeterRegistry meterRegistry;
 
   private LoadingCache<String, ConfigCacheEntry> configCache;
 
-  private LoadingCache<Long, Optional<Release>> configIdCache;
+  private LoadingCache<Long, ConfigCacheEntry> configIdCache;
 
   private ConfigCacheEntry nullConfigCacheEntry;
 
+  private ExecutorService cacheReloadExecutorService;
+
   public ConfigServiceWithCache(final ReleaseService releaseService,
       final ReleaseMessageService releaseMessageService,
-      final GrayReleaseRulesHolder grayReleaseRulesHolder) {
+      final GrayReleaseRulesHolder grayReleaseRulesHolder,
+      final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
     super(grayReleaseRulesHolder);
     this.releaseService = releaseService;
     this.releaseMessageService = releaseMessageService;
+    this.bizConfig = bizConfig;
+    this.meterRegistry = meterRegistry;
     nullConfigCacheEntry = new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, null);
   }
 
   @PostConstruct
   void initialize() {
-    configCache = CacheBuilder.newBuilder()
-        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<String, ConfigCacheEntry>() {
-          @Override
-          public ConfigCacheEntry load(String key) throws Exception {
-            List<String> namespaceInfo = ReleaseMessageKeyGenerator.messageToList(key);
-            if (CollectionUtils.isEmpty(namespaceInfo)) {
-              Tracer.logError(
-                  new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
-              return nullConfigCacheEntry;
-            }
-
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-            try {
-              ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
-                  .newArrayList(key));
-              Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
-                  namespaceInfo.get(2));
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
-                  .getId();
-
-              if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-                return nullConfigCacheEntry;
-              }
-
-              return new ConfigCacheEntry(notificationId, latestRelease);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
-            }
+    long maxSizeInBytes = bizConfig.configServiceCacheMaxSizeInBytes();
+    long configIdCacheMaxSizeInBytes = maxSizeInBytes / CONFIG_ID_CACHE_SIZE_SHARE_DIVISOR;
+    long configCacheMaxSizeInBytes = maxSizeInBytes - configIdCacheMaxSizeInBytes;
+
+    configCache = buildCache("configCache", configCacheMaxSizeInBytes, new CacheLoader<String, ConfigCacheEntry>() {
+      @Override
+      public ConfigCacheEntry load(String key) throws Exception {
+        List<String> namespaceInfo = ReleaseMessageKeyGenerator.messageToList(key);
+        if (CollectionUtils.isEmpty(namespaceInfo)) {
+          Tracer.logError(
+              new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
+          return nullConfigCacheEntry;
+        }
+
+        Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+        try {
+          ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
+              .newArrayList(key));
+          Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
+              namespaceInfo.get(2));
+
+          transaction.setStatus(Transaction.SUCCESS);
+
+          long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
+              .getId();
+
+          if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+            return nullConfigCacheEntry;
           }
-        });
-    configIdCache = CacheBuilder.newBuilder()
+
+          return new ConfigCacheEntry(notificationId, latestRelease);
+        } catch (Throwable ex) {
+          transaction.setStatus(ex);
+          throw ex;
+        } finally {
+          transaction.complete();
+        }
+      }
+    });
+    configIdCache = buildCache("configIdCache", configIdCacheMaxSizeInBytes, new CacheLoader<Long, ConfigCacheEntry>() {
+      @Override
+      public ConfigCacheEntry load(Long key) throws Exception {
+        Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD_ID, String.valueOf(key));
+        try {
+          Release release = releaseService.findActiveOne(key);
+
+          transaction.setStatus(Transaction.SUCCESS);
+
+          return release == null ? nullConfigCacheEntry :
+              new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, release);
+        } catch (Throwable ex) {
+          transaction.setStatus(ex);
+          throw ex;
+        } finally {
+          transaction.complete();
+        }
+      }
+    });
+  }
+
+  /**
+   * Build the cache with the size bound and refresh policy configured, the statistics are exposed as cache metrics
+   *
+   * @param maxSizeInBytes the estimated heap the cached entries may retain, 0 means unbounded
+   */
+  private <K> LoadingCache<K, ConfigCacheEntry> buildCache(String name, long maxSizeInBytes,
+      CacheLoader<K, ConfigCacheEntry> loader) {
+    CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<Long, Optional<Release>>() {
-          @Override
-          public Optional<Release> load(Long key) throws Exception {
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD_ID, String.valueOf(key));
-            try {
-              Release release = releaseService.findActiveOne(key);
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              return Optional.ofNullable(release);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
-            }
-          }
-        });
+        .recordStats();
+
+    if (maxSizeInBytes > 0) {
+      cacheBuilder.maximumWeight(maxSizeInBytes).weigher((key, value) -> ((ConfigCacheEntry) value).getWeight());
+    }
+
+    int refreshInterval = bizConfig.configServiceCacheRefreshIntervalInSeconds();
+    if (refreshInterval > 0) {
+      // hot entries are reloaded in background, requests keep getting the old value until the reload completes
+      cacheBuilder.refreshAfterWrite(refreshInterval, TimeUnit.SECONDS);
+      loader = CacheLoader.asyncReloading(loader, getCacheReloadExecutorService());
+    }
+
+    LoadingCache<K, ConfigCacheEntry> cache = cacheBuilder.build(loader);
+    GuavaCacheMetrics.monitor(meterRegistry, cache, name);
+    return cache;
+  }
+
+  private synchronized ExecutorService getCacheReloadExecutorService() {
+    if (cacheReloadExecutorService == null) {
+      cacheReloadExecutorService = Executors.newFixedThreadPool(CACHE_RELOAD_THREADS,
+          ApolloThreadFactory.create("ConfigServiceWithCache", true));
+    }
+    return cacheReloadExecutorService;
   }
 
   @Override
   protected Release findActiveOne(long id, ApolloNotificationMessages clientMessages) {
     Tracer.logEvent(TRACER_EVENT_CACHE_GET_ID, String.valueOf(id));
-    return configIdCache.getUnchecked(id).orElse(null);
+    return configIdCache.getUnchecked(id).getRelease();
   }
 
   @Override
@@ -164,6 +221,28 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     return cacheEntry.getRelease();
   }
 
+  /**
+   * The configurations of cached releases are parsed once and shared by all requests
+   */
+  @Override
+  public Map<String, String> loadConfigurations(Release release) {
+    ConfigCacheEntry cacheEntry = configCache.getIfPresent(
+        ReleaseMessageKeyGenerator.generate(release.getAppId(), release.getClusterName(), release.getNamespaceName()));
+    if (cacheEntry == null || cacheEntry.getRelease() != release) {
+      //might be a gray release
+      cacheEntry = configIdCache.getIfPresent(release.getId());
+    }
+    if (cacheEntry == null || cacheEntry.getRelease() != release) {
+      return super.loadConfigurations(release);
+    }
+    return cacheEntry.getConfigurations();
+  }
+
+  @Override
+  public void warmUp(String releaseMessage) {
+    configCache.getUnchecked(releaseMessage);
+  }
+
   private void invalidate(String key) {
     configCache.invalidate(key);
     Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
@@ -189,10 +268,12 @@ public class ConfigServiceWithCache extends AbstractConfigService {
   private static class ConfigCacheEntry {
     private final long notificationId;
     private final Release release;
+    private final Supplier<Map<String, String>> configurations;
 
     public ConfigCacheEntry(long notificationId, Release release) {
       this.notificationId = notificationId;
       this.release = release;
+      this.configurations = Suppliers.memoize(() -> parseConfigurations(release));
     }
 
     public long getNotificationId() {
@@ -202,5 +283,20 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     public Release getRelease() {
       return release;
     }
+
+    public Map<String, String> getConfigurations() {
+      return configurations.get();
+    }
+
+    /**
+     * The estimated bytes retained: 2 bytes per char of the configurations json, about the same again for the parsed
+     * keys and values, plus a fixed overhead
+     */
+    public int getWeight() {
+      if (release == null || release.getConfigurations() == null) {
+        return CACHE_ENTRY_OVERHEAD_IN_BYTES;
+      }
+      return Ints.saturatedCast(CACHE_ENTRY_OVERHEAD_IN_BYTES + 4L * release.getConfigurations().length());
+    }
   }
 }
@@ -16,6 +16,7 @@
  */
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.configservice.service.AccessKeySecrets;
 import com.ctrip.framework.apollo.configservice.service.AccessKeyServiceWithCache;
 import com.ctrip.framework.apollo.core.signature.Signature;
 import com.google.common.base.Strings;
@@ -46,6 +47,10 @@ public class AccessKeyUtil {
     return accessKeyServiceWithCache.getAvailableSecrets(appId);
   }
 
+  public AccessKeySecrets findAvailableSecretKeys(String appId) {
+    return accessKeyServiceWithCache.getAvailableSecretKeys(appId);
+  }
+
   public String extractAppIdFromRequest(HttpServletRequest request) {
     String appId = null;
     String servletPath = request.getServletPath();
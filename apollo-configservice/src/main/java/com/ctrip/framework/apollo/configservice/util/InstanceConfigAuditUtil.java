@@ -21,7 +21,7 @@ import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
+import com.google.common.collect.Maps;
 
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
@@ -30,58 +30,227 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
+ * Audits are partitioned by instance and coalesced by (instance, config app id, config namespace) until the worker of
+ * the partition flushes them in batches, so a client polling the same namespace repeatedly only results in one write.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
 public class InstanceConfigAuditUtil implements InitializingBean {
   private static final int INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
+  private static final int INSTANCE_CONFIG_AUDIT_WORKERS = 4;
+  private static final int INSTANCE_CONFIG_AUDIT_BATCH_SIZE = 100;
+  private static final long INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI = 1000;
   private static final int INSTANCE_CACHE_MAX_SIZE = 50000;
   private static final int INSTANCE_CONFIG_CACHE_MAX_SIZE = 50000;
   private static final long OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI = TimeUnit.MINUTES.toMillis(10);//10 minutes
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits = Queues.newLinkedBlockingQueue
-      (INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+  private final List<Map<String, InstanceConfigAuditModel>> audits;
   private Cache<String, Long> instanceCache;
   private Cache<String, String> instanceConfigReleaseKeyCache;
 
   private final InstanceService instanceService;
+  private final Counter droppedCounter;
+  private final Counter coalescedCounter;
+  private final Timer flushTimer;
 
-  public InstanceConfigAuditUtil(final InstanceService instanceService) {
+  public InstanceConfigAuditUtil(final InstanceService instanceService, final MeterRegistry meterRegistry) {
     this.instanceService = instanceService;
-    auditExecutorService = Executors.newSingleThreadExecutor(
+    auditExecutorService = Executors.newFixedThreadPool(INSTANCE_CONFIG_AUDIT_WORKERS,
         ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
+    audits = Lists.newArrayListWithCapacity(INSTANCE_CONFIG_AUDIT_WORKERS);
+    for (int i = 0; i < INSTANCE_CONFIG_AUDIT_WORKERS; i++) {
+      audits.add(new ConcurrentHashMap<>());
+    }
     instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
         .maximumSize(INSTANCE_CACHE_MAX_SIZE).build();
     instanceConfigReleaseKeyCache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS)
         .maximumSize(INSTANCE_CONFIG_CACHE_MAX_SIZE).build();
+
+    droppedCounter = Counter.builder("apollo.instance-config-audit.dropped")
+        .description("Number of audits dropped as too many audits are pending")
+        .register(meterRegistry);
+    coalescedCounter = Counter.builder("apollo.instance-config-audit.coalesced")
+        .description("Number of audits merged into a pending audit of the same instance config")
+        .register(meterRegistry);
+    flushTimer = Timer.builder("apollo.instance-config-audit.flush")
+        .description("Time to write a batch of audits to database")
+        .register(meterRegistry);
   }
 
   public boolean audit(String appId, String clusterName, String dataCenter, String
       ip, String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    InstanceConfigAuditModel auditModel = new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
+        configAppId, configClusterName, configNamespace, releaseKey);
+    String instanceKey = assembleInstanceKey(auditModel);
+    String auditKey = STRING_JOINER.join(instanceKey, configAppId, configNamespace);
+
+    // audits of the same instance go to the same partition, so they are written in order
+    Map<String, InstanceConfigAuditModel> partition = audits.get(
+        Math.floorMod(instanceKey.hashCode(), INSTANCE_CONFIG_AUDIT_WORKERS));
+    if (partition.size() >= INSTANCE_CONFIG_AUDIT_MAX_SIZE / INSTANCE_CONFIG_AUDIT_WORKERS
+        && !partition.containsKey(auditKey)) {
+      droppedCounter.increment();
+      return false;
+    }
+    if (partition.put(auditKey, auditModel) != null) {
+      coalescedCounter.increment();
+    }
+    return true;
+  }
+
+  void flush(Map<String, InstanceConfigAuditModel> partition) {
+    List<InstanceConfigAuditModel> batch = Lists.newArrayListWithCapacity(INSTANCE_CONFIG_AUDIT_BATCH_SIZE);
+    for (String auditKey : partition.keySet()) {
+      InstanceConfigAuditModel auditModel = partition.remove(auditKey);
+      if (auditModel != null) {
+        batch.add(auditModel);
+      }
+      if (batch.size() >= INSTANCE_CONFIG_AUDIT_BATCH_SIZE) {
+        flushTimer.record(() -> doAudit(batch));
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      flushTimer.record(() -> doAudit(batch));
+    }
+  }
+
+  void doAudit(List<InstanceConfigAuditModel> auditModels) {
+    try {
+      doBatchAudit(auditModels);
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion by other config services, fall back to audit one by one
+      for (InstanceConfigAuditModel auditModel : auditModels) {
+        try {
+          doAudit(auditModel);
+        } catch (Throwable auditEx) {
+          Tracer.logError(auditEx);
+        }
+      }
+    }
+  }
+
+  private void doBatchAudit(List<InstanceConfigAuditModel> auditModels) {
+    Map<InstanceConfigAuditModel, Long> instanceIds = prepareInstanceIds(auditModels);
+
+    //skip the audits whose release key is the same as cached
+    Map<String, InstanceConfigAuditModel> toAudit = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceConfigCacheKey = assembleInstanceConfigKey(instanceIds.get(auditModel), auditModel
+          .getConfigAppId(), auditModel.getConfigNamespace());
+      String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+      if (cacheReleaseKey == null || !Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
+        toAudit.put(instanceConfigCacheKey, auditModel);
+      }
+    }
+    if (toAudit.isEmpty()) {
+      return;
+    }
+
+    Map<String, InstanceConfig> instanceConfigs = instanceService.findInstanceConfigsByInstanceIds(
+        toAudit.values().stream().map(instanceIds::get).collect(Collectors.toSet())).stream()
+        .collect(Collectors.toMap(instanceConfig -> assembleInstanceConfigKey(instanceConfig.getInstanceId(),
+            instanceConfig.getConfigAppId(), instanceConfig.getConfigNamespaceName()), instanceConfig -> instanceConfig,
+            (one, another) -> one));
+
+    List<InstanceConfig> toSave = Lists.newArrayListWithCapacity(toAudit.size());
+    for (Map.Entry<String, InstanceConfigAuditModel> entry : toAudit.entrySet()) {
+      InstanceConfigAuditModel auditModel = entry.getValue();
+      InstanceConfig instanceConfig = instanceConfigs.get(entry.getKey());
+      if (instanceConfig == null) {
+        toSave.add(assembleInstanceConfig(instanceIds.get(auditModel), auditModel));
+        continue;
+      }
+      if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
+        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+      } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
+          instanceConfig.getDataChangeLastModifiedTime())) {
+        continue;
+      }
+      instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
+      toSave.add(instanceConfig);
+    }
+
+    if (!toSave.isEmpty()) {
+      instanceService.saveInstanceConfigs(toSave);
+    }
+
+    toAudit.forEach((instanceConfigCacheKey, auditModel) -> instanceConfigReleaseKeyCache.put(
+        instanceConfigCacheKey, auditModel.getReleaseKey()));
+  }
+
+  private Map<InstanceConfigAuditModel, Long> prepareInstanceIds(List<InstanceConfigAuditModel> auditModels) {
+    Map<InstanceConfigAuditModel, Long> instanceIds = Maps.newIdentityHashMap();
+    Map<String, List<InstanceConfigAuditModel>> missing = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceCacheKey = assembleInstanceKey(auditModel);
+      Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
+      if (instanceId != null) {
+        instanceIds.put(auditModel, instanceId);
+      } else {
+        missing.computeIfAbsent(instanceCacheKey, key -> Lists.newArrayList()).add(auditModel);
+      }
+    }
+    if (missing.isEmpty()) {
+      return instanceIds;
+    }
+
+    Set<String> ips = missing.values().stream().map(models -> models.get(0).getIp()).collect(Collectors.toSet());
+    Map<String, Instance> instances = Maps.newHashMap();
+    for (Instance instance : instanceService.findInstancesByIps(ips)) {
+      instances.put(assembleInstanceKey(instance.getAppId(), instance.getClusterName(), instance.getIp(),
+          instance.getDataCenter()), instance);
+    }
+
+    List<Instance> toCreate = Lists.newArrayList();
+    for (Map.Entry<String, List<InstanceConfigAuditModel>> entry : missing.entrySet()) {
+      if (!instances.containsKey(entry.getKey())) {
+        toCreate.add(assembleInstance(entry.getValue().get(0)));
+      }
+    }
+    if (!toCreate.isEmpty()) {
+      for (Instance instance : instanceService.createInstances(toCreate)) {
+        instances.put(assembleInstanceKey(instance.getAppId(), instance.getClusterName(), instance.getIp(),
+            instance.getDataCenter()), instance);
+      }
+    }
+
+    for (Map.Entry<String, List<InstanceConfigAuditModel>> entry : missing.entrySet()) {
+      long instanceId = instances.get(entry.getKey()).getId();
+      instanceCache.put(entry.getKey(), instanceId);
+      entry.getValue().forEach(auditModel -> instanceIds.put(auditModel, instanceId));
+    }
+    return instanceIds;
   }
 
   void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
+    String instanceCacheKey = assembleInstanceKey(auditModel);
     Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
     if (instanceId == null) {
       instanceId = prepareInstanceId(auditModel);
@@ -121,7 +290,17 @@ public class InstanceConfigAuditUtil implements InitializingBean {
       return;
     }
 
-    instanceConfig = new InstanceConfig();
+    instanceConfig = assembleInstanceConfig(instanceId, auditModel);
+
+    try {
+      instanceService.createInstanceConfig(instanceConfig);
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion, safe to ignore
+    }
+  }
+
+  private InstanceConfig assembleInstanceConfig(long instanceId, InstanceConfigAuditModel auditModel) {
+    InstanceConfig instanceConfig = new InstanceConfig();
     instanceConfig.setInstanceId(instanceId);
     instanceConfig.setConfigAppId(auditModel.getConfigAppId());
     instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
@@ -129,12 +308,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     instanceConfig.setReleaseKey(auditModel.getReleaseKey());
     instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
     instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
-
-    try {
-      instanceService.createInstanceConfig(instanceConfig);
-    } catch (DataIntegrityViolationException ex) {
-      //concurrent insertion, safe to ignore
-    }
+    return instanceConfig;
   }
 
   private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
@@ -148,12 +322,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     if (instance != null) {
       return instance.getId();
     }
-    instance = new Instance();
-    instance.setAppId(auditModel.getAppId());
-    instance.setClusterName(auditModel.getClusterName());
-    instance.setDataCenter(auditModel.getDataCenter());
-    instance.setIp(auditModel.getIp());
-
+    instance = assembleInstance(auditModel);
 
     try {
       return instanceService.createInstance(instance).getId();
@@ -164,18 +333,36 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     }
   }
 
+  private Instance assembleInstance(InstanceConfigAuditModel auditModel) {
+    Instance instance = new Instance();
+    instance.setAppId(auditModel.getAppId());
+    instance.setClusterName(auditModel.getClusterName());
+    instance.setDataCenter(auditModel.getDataCenter());
+    instance.setIp(auditModel.getIp());
+    return instance;
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.take();
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
+    for (Map<String, InstanceConfigAuditModel> partition : audits) {
+      auditExecutorService.submit(() -> {
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+          try {
+            TimeUnit.MILLISECONDS.sleep(INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI);
+            flush(partition);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          } catch (Throwable ex) {
+            Tracer.logError(ex);
+          }
         }
-      }
-    });
+      });
+    }
+  }
+
+  private String assembleInstanceKey(InstanceConfigAuditModel auditModel) {
+    return assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(), auditModel.getIp(),
+        auditModel.getDataCenter());
   }
 
   private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
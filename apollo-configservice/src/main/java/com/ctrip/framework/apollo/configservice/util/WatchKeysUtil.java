@@ -22,7 +22,13 @@ import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.springframework.stereotype.Component;
@@ -31,6 +37,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -38,7 +45,16 @@ import java.util.stream.Collectors;
  */
 @Component
 public class WatchKeysUtil {
+  private static final int WATCH_KEYS_CACHE_SIZE = 100_000;
+  private static final long WATCH_KEYS_CACHE_EXPIRE_AFTER_ACCESS = 60; //60min
+  //the same watch keys are shared by many entries, e.g. the keys of a public namespace
+  private static final Interner<String> WATCH_KEY_INTERNER = Interners.newWeakInterner();
+
   private final AppNamespaceServiceWithCache appNamespaceService;
+  private final Cache<WatchKeysCacheKey, WatchKeys> watchKeysCache = CacheBuilder.newBuilder()
+      .maximumSize(WATCH_KEYS_CACHE_SIZE)
+      .expireAfterAccess(WATCH_KEYS_CACHE_EXPIRE_AFTER_ACCESS, TimeUnit.MINUTES)
+      .build();
 
   public WatchKeysUtil(final AppNamespaceServiceWithCache appNamespaceService) {
     this.appNamespaceService = appNamespaceService;
@@ -46,22 +62,49 @@ public class WatchKeysUtil {
 
   /**
    * Assemble watch keys for the given appId, cluster, namespace, dataCenter combination
+   *
+   * @return an immutable set of watch keys
    */
   public Set<String> assembleAllWatchKeys(String appId, String clusterName, String namespace,
                                           String dataCenter) {
-    Multimap<String, String> watchedKeysMap =
-        assembleAllWatchKeys(appId, clusterName, Sets.newHashSet(namespace), dataCenter);
-    return Sets.newHashSet(watchedKeysMap.get(namespace));
+    return findAllWatchKeys(appId, clusterName, Collections.singleton(namespace), dataCenter).get(namespace);
   }
 
   /**
-   * Assemble watch keys for the given appId, cluster, namespaces, dataCenter combination
+   * Assemble watch keys for the given appId, cluster, namespaces, dataCenter combination.
+   * <p>
+   * The results are cached until the app namespaces change, as they only depend on the arguments and the app
+   * namespaces.
    *
-   * @return a multimap with namespace as the key and watch keys as the value
+   * @return an immutable multimap with namespace as the key and watch keys as the value
    */
   public Multimap<String, String> assembleAllWatchKeys(String appId, String clusterName,
                                                        Set<String> namespaces,
                                                        String dataCenter) {
+    return findAllWatchKeys(appId, clusterName, namespaces, dataCenter);
+  }
+
+  private ImmutableSetMultimap<String, String> findAllWatchKeys(String appId, String clusterName,
+                                                                Set<String> namespaces, String dataCenter) {
+    //read the version before assembling, so that the result is assembled again if there are changes meanwhile
+    long cacheVersion = appNamespaceService.getCacheVersion();
+    WatchKeysCacheKey cacheKey = new WatchKeysCacheKey(appId, clusterName, namespaces, dataCenter);
+    WatchKeys watchKeys = watchKeysCache.getIfPresent(cacheKey);
+    if (watchKeys != null && watchKeys.cacheVersion == cacheVersion) {
+      return watchKeys.watchedKeysMap;
+    }
+
+    ImmutableSetMultimap<String, String> watchedKeysMap =
+        ImmutableSetMultimap.copyOf(doAssembleAllWatchKeys(appId, clusterName, namespaces, dataCenter));
+    //the namespaces might be a view of the caller's map, so copy it before caching
+    watchKeysCache.put(new WatchKeysCacheKey(appId, clusterName, ImmutableSet.copyOf(namespaces), dataCenter),
+        new WatchKeys(cacheVersion, watchedKeysMap));
+    return watchedKeysMap;
+  }
+
+  private Multimap<String, String> doAssembleAllWatchKeys(String appId, String clusterName,
+                                                          Set<String> namespaces,
+                                                          String dataCenter) {
     Multimap<String, String> watchedKeysMap =
         assembleWatchKeys(appId, clusterName, namespaces, dataCenter);
 
@@ -111,16 +154,16 @@ public class WatchKeysUtil {
 
     //watch specified cluster config change
     if (!Objects.equals(ConfigConsts.CLUSTER_NAME_DEFAULT, clusterName)) {
-      watchedKeys.add(generate(appId, clusterName, namespace));
+      watchedKeys.add(WATCH_KEY_INTERNER.intern(generate(appId, clusterName, namespace)));
     }
 
     //watch data center config change
     if (!Strings.isNullOrEmpty(dataCenter) && !Objects.equals(dataCenter, clusterName)) {
-      watchedKeys.add(generate(appId, dataCenter, namespace));
+      watchedKeys.add(WATCH_KEY_INTERNER.intern(generate(appId, dataCenter, namespace)));
     }
 
     //watch default cluster config change
-    watchedKeys.add(generate(appId, ConfigConsts.CLUSTER_NAME_DEFAULT, namespace));
+    watchedKeys.add(WATCH_KEY_INTERNER.intern(generate(appId, ConfigConsts.CLUSTER_NAME_DEFAULT, namespace)));
 
     return watchedKeys;
   }
@@ -151,4 +194,51 @@ public class WatchKeysUtil {
 
     return appNamespaces.stream().map(AppNamespace::getName).collect(Collectors.toSet());
   }
+
+  private static final class WatchKeysCacheKey {
+    private final String appId;
+    private final String clusterName;
+    private final Set<String> namespaces;
+    private final String dataCenter;
+    private final int hashCode;
+
+    private WatchKeysCacheKey(String appId, String clusterName, Set<String> namespaces, String dataCenter) {
+      this.appId = appId;
+      this.clusterName = clusterName;
+      this.namespaces = namespaces;
+      this.dataCenter = dataCenter;
+      this.hashCode = Objects.hash(appId, clusterName, namespaces, dataCenter);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof WatchKeysCacheKey)) {
+        return false;
+      }
+      WatchKeysCacheKey that = (WatchKeysCacheKey) o;
+      return hashCode == that.hashCode
+          && Objects.equals(appId, that.appId)
+          && Objects.equals(clusterName, that.clusterName)
+          && Objects.equals(namespaces, that.namespaces)
+          && Objects.equals(dataCenter, that.dataCenter);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final class WatchKeys {
+    private final long cacheVersion;
+    private final ImmutableSetMultimap<String, String> watchedKeysMap;
+
+    private WatchKeys(long cacheVersion, ImmutableSetMultimap<String, String> watchedKeysMap) {
+      this.cacheVersion = cacheVersion;
+      this.watchedKeysMap = watchedKeysMap;
+    }
+  }
 }
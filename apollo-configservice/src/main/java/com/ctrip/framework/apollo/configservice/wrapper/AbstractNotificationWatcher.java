@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A client watching release messages, e.g. a long poll request or a notification stream
+ */
+public abstract class AbstractNotificationWatcher {
+  private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+  private ConfigPayloadContext configPayloadContext;
+
+  public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
+    }
+    normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
+  }
+
+  public void recordConfigPayloadContext(ConfigPayloadContext configPayloadContext) {
+    this.configPayloadContext = configPayloadContext;
+  }
+
+  /**
+   * @return the context to render the configurations inline with the notifications, or null if not asked by the client
+   */
+  public ConfigPayloadContext getConfigPayloadContext() {
+    return configPayloadContext;
+  }
+
+  public void setResult(ApolloConfigNotification notification) {
+    setResult(Lists.newArrayList(notification));
+  }
+
+  /**
+   * The namespace name is used as a key in client side, so we have to return the original one instead of the correct one
+   */
+  public void setResult(List<ApolloConfigNotification> notifications) {
+    if (normalizedNamespaceNameToOriginalNamespaceName != null) {
+      notifications.stream().filter(notification -> normalizedNamespaceNameToOriginalNamespaceName.containsKey
+          (notification.getNamespaceName())).forEach(notification -> notification.setNamespaceName(
+              normalizedNamespaceNameToOriginalNamespaceName.get(notification.getNamespaceName())));
+    }
+
+    doSetResult(notifications);
+  }
+
+  protected abstract void doSetResult(List<ApolloConfigNotification> notifications);
+}
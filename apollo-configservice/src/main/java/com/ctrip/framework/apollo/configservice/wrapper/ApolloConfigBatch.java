@@ -0,0 +1,48 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+
+import java.util.List;
+
+/**
+ * Configs of multiple namespaces returned in one request.
+ * <p>
+ * {@link #getConfigs()} contains the namespaces changed, the namespaces not found are listed in
+ * {@link #getNotFoundNamespaces()} so that clients could tell them from the namespaces not changed.
+ */
+public class ApolloConfigBatch {
+  private List<ApolloConfig> configs;
+  private List<String> notFoundNamespaces;
+
+  public ApolloConfigBatch() {
+  }
+
+  public ApolloConfigBatch(List<ApolloConfig> configs, List<String> notFoundNamespaces) {
+    this.configs = configs;
+    this.notFoundNamespaces = notFoundNamespaces;
+  }
+
+  public List<ApolloConfig> getConfigs() {
+    return configs;
+  }
+
+  public List<String> getNotFoundNamespaces() {
+    return notFoundNamespaces;
+  }
+}
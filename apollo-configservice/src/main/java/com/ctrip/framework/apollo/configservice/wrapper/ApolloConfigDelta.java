@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Config returned in the delta mode.
+ * <p>
+ * If {@link #getBaseReleaseKey()} is present, the configurations only contain the keys added or changed since the base
+ * release and the keys deleted are in {@link #getDeletedKeys()}, otherwise it's a full config as usual.
+ */
+public class ApolloConfigDelta extends ApolloConfig {
+  private String baseReleaseKey;
+  private Set<String> deletedKeys;
+
+  public ApolloConfigDelta() {
+  }
+
+  public ApolloConfigDelta(ApolloConfig config) {
+    super(config.getAppId(), config.getCluster(), config.getNamespaceName(), config.getReleaseKey());
+    setConfigurations(config.getConfigurations());
+  }
+
+  public ApolloConfigDelta(ApolloConfig config, String baseReleaseKey, Map<String, String> changedConfigurations,
+                           Set<String> deletedKeys) {
+    super(config.getAppId(), config.getCluster(), config.getNamespaceName(), config.getReleaseKey());
+    setConfigurations(changedConfigurations);
+    this.baseReleaseKey = baseReleaseKey;
+    this.deletedKeys = deletedKeys;
+  }
+
+  public String getBaseReleaseKey() {
+    return baseReleaseKey;
+  }
+
+  public Set<String> getDeletedKeys() {
+    return deletedKeys;
+  }
+}
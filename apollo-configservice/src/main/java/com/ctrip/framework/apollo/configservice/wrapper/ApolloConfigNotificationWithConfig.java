@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Notification with the configurations of the namespace inline, so that the client doesn't need to query them again.
+ * <p>
+ * The configurations are rendered to json once and written as is for all the clients notified.
+ */
+public class ApolloConfigNotificationWithConfig extends ApolloConfigNotification {
+  @JsonAdapter(RawJsonAdapter.class)
+  private final String config;
+
+  public ApolloConfigNotificationWithConfig(ApolloConfigNotification notification, String config) {
+    super(notification.getNamespaceName(), notification.getNotificationId());
+    setMessages(notification.getMessages());
+    this.config = config;
+  }
+
+  /**
+   * @return the {@link com.ctrip.framework.apollo.core.dto.ApolloConfig} in json format
+   */
+  public String getConfig() {
+    return config;
+  }
+
+  static class RawJsonAdapter extends TypeAdapter<String> {
+    @Override
+    public void write(JsonWriter out, String value) throws IOException {
+      out.jsonValue(value);
+    }
+
+    @Override
+    public String read(JsonReader in) throws IOException {
+      return JsonParser.parseReader(in).toString();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+/**
+ * The client of a long poll request which asks for the configurations inline with the notifications
+ */
+public class ConfigPayloadContext {
+  private final String appId;
+  private final String cluster;
+  private final String dataCenter;
+  private final String clientIp;
+  private final String clientLabel;
+
+  public ConfigPayloadContext(String appId, String cluster, String dataCenter, String clientIp, String clientLabel) {
+    this.appId = appId;
+    this.cluster = cluster;
+    this.dataCenter = dataCenter;
+    this.clientIp = clientIp;
+    this.clientLabel = clientLabel;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  public String getCluster() {
+    return cluster;
+  }
+
+  public String getDataCenter() {
+    return dataCenter;
+  }
+
+  public String getClientIp() {
+    return clientIp;
+  }
+
+  public String getClientLabel() {
+    return clientLabel;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A notification stream, which keeps receiving notifications until it times out or the client disconnects.
+ * <p>
+ * Events are queued and written by a single task on the writer executor, so a slow client never blocks the thread
+ * delivering the release messages. A stream whose queue is full has fallen behind and is completed, the client then
+ * reconnects and catches up with the latest notifications.
+ */
+public class SseEmitterWrapper extends AbstractNotificationWatcher {
+  private static final Logger logger = LoggerFactory.getLogger(SseEmitterWrapper.class);
+  public static final String NOTIFICATIONS_EVENT_NAME = "notifications";
+  private static final Gson GSON = new Gson();
+
+  private final SseEmitter emitter;
+  private final Executor writerExecutor;
+  private final BlockingQueue<SseEventBuilder> pendingEvents;
+  private final AtomicBoolean writing = new AtomicBoolean(false);
+  private volatile boolean completed = false;
+
+  public SseEmitterWrapper(long timeoutInMilli, Executor writerExecutor, int maxPendingEvents) {
+    this(new SseEmitter(timeoutInMilli), writerExecutor, maxPendingEvents);
+  }
+
+  SseEmitterWrapper(SseEmitter emitter, Executor writerExecutor, int maxPendingEvents) {
+    this.emitter = emitter;
+    this.writerExecutor = writerExecutor;
+    this.pendingEvents = new ArrayBlockingQueue<>(maxPendingEvents);
+    // clients reconnect when the stream ends, so a timeout is a normal completion
+    emitter.onTimeout(this::complete);
+  }
+
+  public void onCompletion(Runnable completionCallback) {
+    emitter.onCompletion(() -> {
+      completed = true;
+      pendingEvents.clear();
+      completionCallback.run();
+    });
+  }
+
+  /**
+   * Send the notifications as one event, with the notification list in json as data
+   */
+  @Override
+  protected void doSetResult(List<ApolloConfigNotification> notifications) {
+    enqueue(SseEmitter.event().name(NOTIFICATIONS_EVENT_NAME).data(GSON.toJson(notifications)));
+  }
+
+  /**
+   * Send an empty comment to keep the idle stream from being cut by the proxies in between, skipped if there are
+   * events to send anyway
+   */
+  public void sendHeartbeat() {
+    if (pendingEvents.isEmpty()) {
+      enqueue(SseEmitter.event().comment(""));
+    }
+  }
+
+  public SseEmitter getEmitter() {
+    return emitter;
+  }
+
+  private void enqueue(SseEventBuilder event) {
+    if (completed) {
+      return;
+    }
+    if (!pendingEvents.offer(event)) {
+      logger.warn("Notification stream falls behind with {} pending events, complete it",
+          pendingEvents.size());
+      Tracer.logEvent("Apollo.NotificationStream.FallBehind", String.valueOf(pendingEvents.size()));
+      complete();
+      return;
+    }
+    scheduleWrite();
+  }
+
+  private void scheduleWrite() {
+    if (!writing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      writerExecutor.execute(this::write);
+    } catch (RejectedExecutionException ex) {
+      writing.set(false);
+      logger.warn("Schedule notification stream write failed, complete it", ex);
+      complete();
+    }
+  }
+
+  private void write() {
+    try {
+      SseEventBuilder event;
+      while (!completed && (event = pendingEvents.poll()) != null) {
+        emitter.send(event);
+      }
+    } catch (IOException | IllegalStateException ex) {
+      // the client is gone or the stream is completed, it will be unregistered once the request completes
+      logger.debug("Send notifications to stream failed", ex);
+      completed = true;
+      pendingEvents.clear();
+    } finally {
+      writing.set(false);
+    }
+    // events might be queued after the last poll but before the flag is reset
+    if (!completed && !pendingEvents.isEmpty()) {
+      scheduleWrite();
+    }
+  }
+
+  private void complete() {
+    completed = true;
+    pendingEvents.clear();
+    emitter.complete();
+  }
+}
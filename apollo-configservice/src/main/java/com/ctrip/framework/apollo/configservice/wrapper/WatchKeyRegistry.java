@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrent, case-insensitive watch key to watchers registry.
+ * <p>
+ * Register and unregister are O(1) and only lock the bin of the watch key involved, so long poll
+ * requests, completion callbacks and release message fan-out no longer contend on one monitor.
+ *
+ * @param <T> the watcher type
+ */
+public class WatchKeyRegistry<T> {
+  private final ConcurrentMap<String, Set<T>> watchers = new ConcurrentHashMap<>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * Register the watcher on the watch key
+   *
+   * @return true if the watcher was not registered on the watch key before
+   */
+  public boolean register(String watchKey, T watcher) {
+    boolean[] added = new boolean[1];
+    watchers.compute(normalize(watchKey), (key, keyWatchers) -> {
+      if (keyWatchers == null) {
+        keyWatchers = ConcurrentHashMap.newKeySet();
+      }
+      added[0] = keyWatchers.add(watcher);
+      return keyWatchers;
+    });
+    if (added[0]) {
+      size.incrementAndGet();
+    }
+    return added[0];
+  }
+
+  /**
+   * Unregister the watcher from the watch key, the watch key is dropped once it has no watchers
+   *
+   * @return true if the watcher was registered on the watch key
+   */
+  public boolean unregister(String watchKey, T watcher) {
+    boolean[] removed = new boolean[1];
+    watchers.computeIfPresent(normalize(watchKey), (key, keyWatchers) -> {
+      removed[0] = keyWatchers.remove(watcher);
+      return keyWatchers.isEmpty() ? null : keyWatchers;
+    });
+    if (removed[0]) {
+      size.decrementAndGet();
+    }
+    return removed[0];
+  }
+
+  /**
+   * @return a weakly consistent view of the watchers of the watch key, never null
+   */
+  public Collection<T> get(String watchKey) {
+    Set<T> keyWatchers = watchers.get(normalize(watchKey));
+    return keyWatchers == null ? Collections.emptySet() : Collections.unmodifiableSet(keyWatchers);
+  }
+
+  public boolean containsKey(String watchKey) {
+    return watchers.containsKey(normalize(watchKey));
+  }
+
+  /**
+   * @return the number of watch key and watcher pairs
+   */
+  public int size() {
+    return size.get();
+  }
+
+  private String normalize(String watchKey) {
+    return watchKey.toLowerCase(Locale.ROOT);
+  }
+}
@@ -18,30 +18,44 @@ package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.ConfigDeltaService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigBatch;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigDelta;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Type;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 /**
@@ -75,12 +89,16 @@ public class ConfigControllerTest {
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Mock
   private HttpServletRequest someRequest;
+  @Mock
+  private ConfigDeltaService configDeltaService;
   private Gson gson = new Gson();
+  private Type configurationTypeReference = new TypeToken<Map<String, String>>() {
+  }.getType();
 
   @Before
   public void setUp() throws Exception {
     configController = spy(new ConfigController(
-        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson
+        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson, configDeltaService
     ));
 
     someAppId = "1";
@@ -98,6 +116,8 @@ public class ConfigControllerTest {
     when(someRelease.getClusterName()).thenReturn(someClusterName);
     when(someRelease.getConfigurations()).thenReturn(someValidConfiguration);
     when(somePublicRelease.getConfigurations()).thenReturn(somePublicConfiguration);
+    when(configService.loadConfigurations(any(Release.class))).thenAnswer(invocation -> gson.fromJson(
+        invocation.getArgument(0, Release.class).getConfigurations(), configurationTypeReference));
     when(namespaceUtil.filterNamespaceName(defaultNamespaceName)).thenReturn(defaultNamespaceName);
     when(namespaceUtil.filterNamespaceName(somePublicNamespaceName)).thenReturn(somePublicNamespaceName);
     when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespaceName)).thenReturn(defaultNamespaceName);
@@ -218,6 +238,38 @@ public class ConfigControllerTest {
     verify(someResponse, times(1)).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
   }
 
+  @Test
+  public void testQueryConfigWithETag() throws Exception {
+    String someServerSideReleaseKey = "someReleaseKey";
+    String someETag = "\"" + someServerSideReleaseKey + "\"";
+
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/configs");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, "-1", someClientIp, someClientLabel, someMessagesAsString, request, response);
+
+    assertEquals(someServerSideReleaseKey, result.getReleaseKey());
+    assertEquals(someETag, response.getHeader(HttpHeaders.ETAG));
+
+    MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/configs");
+    conditionalRequest.addHeader(HttpHeaders.IF_NONE_MATCH, someETag);
+    MockHttpServletResponse notModifiedResponse = new MockHttpServletResponse();
+    ApolloConfig notModifiedResult = configController.queryConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, "-1", someClientIp, someClientLabel, someMessagesAsString, conditionalRequest,
+        notModifiedResponse);
+
+    assertNull(notModifiedResult);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModifiedResponse.getStatus());
+    assertEquals(someETag, notModifiedResponse.getHeader(HttpHeaders.ETAG));
+    //configurations are not loaded for the not modified response
+    verify(configService, times(1)).loadConfigurations(someRelease);
+  }
+
   @Test
   public void testQueryConfigWithAppOwnNamespace() throws Exception {
     String someClientSideReleaseKey = "1";
@@ -359,6 +411,131 @@ public class ConfigControllerTest {
         someClientIp, somePublicAppId, someDataCenter, somePublicNamespaceName, somePublicAppSideReleaseKey);
   }
 
+  @Test
+  public void testQueryConfigDelta() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    ConfigDeltaService.ConfigDelta someConfigDelta = mock(ConfigDeltaService.ConfigDelta.class);
+    Map<String, String> someChangedConfigurations = ImmutableMap.of("apollo.bar", "foo");
+    Set<String> someDeletedKeys = Sets.newHashSet("apollo.foo");
+
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(configDeltaService.findDelta(someClientSideReleaseKey, someServerSideNewReleaseKey)).thenReturn(someConfigDelta);
+    when(someConfigDelta.getChangedConfigurations()).thenReturn(someChangedConfigurations);
+    when(someConfigDelta.getDeletedKeys()).thenReturn(someDeletedKeys);
+
+    ApolloConfigDelta result = configController.queryConfigDelta(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someClientLabel, someMessagesAsString, someRequest, someResponse);
+
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertEquals(someClientSideReleaseKey, result.getBaseReleaseKey());
+    assertEquals(someChangedConfigurations, result.getConfigurations());
+    assertEquals(someDeletedKeys, result.getDeletedKeys());
+  }
+
+  @Test
+  public void testQueryConfigDeltaWithoutClientSideRelease() throws Exception {
+    String someClientSideReleaseKey = "-1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+
+    ApolloConfigDelta result = configController.queryConfigDelta(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someClientLabel, someMessagesAsString, someRequest, someResponse);
+
+    //full config is returned
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertNull(result.getBaseReleaseKey());
+    assertNull(result.getDeletedKeys());
+    assertEquals("foo", result.getConfigurations().get("apollo.bar"));
+    verify(configDeltaService, never()).findDelta(anyString(), anyString());
+  }
+
+  @Test
+  public void testQueryConfigs() throws Exception {
+    String someServerSideNewReleaseKey = "2";
+    String somePublicAppId = "somePublicAppId";
+    String somePublicReleaseKey = "3";
+    String someNamespacesAsString = gson.toJson(ImmutableMap.of(defaultNamespaceName, "1",
+        somePublicNamespaceName, somePublicReleaseKey));
+    AppNamespace somePublicAppNamespace =
+        assemblePublicAppNamespace(somePublicAppId, somePublicNamespaceName);
+
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId, someClusterName, somePublicNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(null);
+    when(appNamespaceService.findPublicNamespaceByName(somePublicNamespaceName))
+        .thenReturn(somePublicAppNamespace);
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, somePublicAppId, someClusterName, somePublicNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(somePublicRelease);
+    when(somePublicRelease.getReleaseKey()).thenReturn(somePublicReleaseKey);
+    when(somePublicRelease.getAppId()).thenReturn(somePublicAppId);
+    when(somePublicRelease.getClusterName()).thenReturn(someClusterName);
+    when(somePublicRelease.getNamespaceName()).thenReturn(somePublicNamespaceName);
+
+    ApolloConfigBatch result = configController.queryConfigs(someAppId, someClusterName, someNamespacesAsString,
+        someDataCenter, someClientIp, someClientLabel, someMessagesAsString, someRequest);
+
+    //only the changed namespace is returned
+    assertEquals(1, result.getConfigs().size());
+    assertTrue(result.getNotFoundNamespaces().isEmpty());
+    ApolloConfig apolloConfig = result.getConfigs().get(0);
+    assertEquals(someAppId, apolloConfig.getAppId());
+    assertEquals(someClusterName, apolloConfig.getCluster());
+    assertEquals(defaultNamespaceName, apolloConfig.getNamespaceName());
+    assertEquals(someServerSideNewReleaseKey, apolloConfig.getReleaseKey());
+    assertEquals("foo", apolloConfig.getConfigurations().get("apollo.bar"));
+    //messages are transformed only once for all the namespaces
+    verify(configController, times(1)).transformMessages(someMessagesAsString);
+    verify(instanceConfigAuditUtil, times(1)).audit(someAppId, someClusterName, someDataCenter,
+        someClientIp, someAppId, someClusterName, defaultNamespaceName, someServerSideNewReleaseKey);
+    verify(instanceConfigAuditUtil, times(1)).audit(someAppId, someClusterName, someDataCenter,
+        someClientIp, somePublicAppId, someClusterName, somePublicNamespaceName, somePublicReleaseKey);
+  }
+
+  @Test
+  public void testQueryConfigsWithNamespaceNotFound() throws Exception {
+    String someNamespaceNotExists = "someNamespaceNotExists";
+    String someNamespacesAsString = gson.toJson(ImmutableMap.of(defaultNamespaceName, "1",
+        someNamespaceNotExists, "-1"));
+
+    when(configService.loadConfig(someAppId, someClientIp, someClientLabel, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn("1");
+
+    ApolloConfigBatch result = configController.queryConfigs(someAppId, someClusterName, someNamespacesAsString,
+        someDataCenter, someClientIp, someClientLabel, someMessagesAsString, someRequest);
+
+    //the namespace not changed is absent, while the namespace not found is reported
+    assertTrue(result.getConfigs().isEmpty());
+    assertEquals(Lists.newArrayList(someNamespaceNotExists), result.getNotFoundNamespaces());
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithInvalidNamespaces() throws Exception {
+    configController.queryConfigs(someAppId, someClusterName, "[\"application\"]", someDataCenter,
+        someClientIp, someClientLabel, someMessagesAsString, someRequest);
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithEmptyNamespaces() throws Exception {
+    configController.queryConfigs(someAppId, someClusterName, "{}", someDataCenter,
+        someClientIp, someClientLabel, someMessagesAsString, someRequest);
+  }
+
   @Test
   public void testMergeConfigurations() throws Exception {
     Gson gson = new Gson();
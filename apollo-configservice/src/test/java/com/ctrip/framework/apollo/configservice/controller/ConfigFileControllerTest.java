@@ -22,16 +22,21 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.Before;
@@ -39,11 +44,16 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -75,8 +85,8 @@ public class ConfigFileControllerTest {
   private HttpServletResponse someResponse;
   @Mock
   private HttpServletRequest someRequest;
-  Multimap<String, String> watchedKeys2CacheKey;
-  Multimap<String, String> cacheKey2WatchedKeys;
+  ConcurrentMap<String, Set<String>> watchedKeys2CacheKey;
+  ConcurrentMap<String, Set<String>> cacheKey2WatchedKeys;
 
   private static final Gson GSON = new Gson();
 
@@ -99,10 +109,10 @@ public class ConfigFileControllerTest {
         .thenReturn(false);
 
     watchedKeys2CacheKey =
-        (Multimap<String, String>) ReflectionTestUtils
+        (ConcurrentMap<String, Set<String>>) ReflectionTestUtils
             .getField(configFileController, "watchedKeys2CacheKey");
     cacheKey2WatchedKeys =
-        (Multimap<String, String>) ReflectionTestUtils
+        (ConcurrentMap<String, Set<String>>) ReflectionTestUtils
             .getField(configFileController, "cacheKey2WatchedKeys");
   }
 
@@ -126,37 +136,39 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null, false,
             someRequest, someResponse)).thenReturn(someApolloConfig);
     when(watchKeysUtil
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(2, watchedKeys2CacheKey.size());
-    assertEquals(2, cacheKey2WatchedKeys.size());
-    assertTrue(watchedKeys2CacheKey.containsEntry(someWatchKey, cacheKey));
-    assertTrue(watchedKeys2CacheKey.containsEntry(anotherWatchKey, cacheKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, someWatchKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, anotherWatchKey));
+    assertEquals(1, cacheKey2WatchedKeys.size());
+    assertEquals(Sets.newHashSet(cacheKey), watchedKeys2CacheKey.get(someWatchKey));
+    assertEquals(Sets.newHashSet(cacheKey), watchedKeys2CacheKey.get(anotherWatchKey));
+    assertEquals(watchKeys, cacheKey2WatchedKeys.get(cacheKey));
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertTrue(response.getBody().contains(String.format("%s=%s", someKey, someValue)));
-    assertTrue(response.getBody().contains(String.format("%s=%s", anotherKey, anotherValue)));
+    String body = new String(response.getBody(), StandardCharsets.UTF_8);
+    assertTrue(body.contains(String.format("%s=%s", someKey, someValue)));
+    assertTrue(body.contains(String.format("%s=%s", anotherKey, anotherValue)));
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(response, anotherResponse);
+    //the encoded content is cached
+    assertSame(response.getBody(), anotherResponse.getBody());
 
     verify(configController, times(1))
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel,null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel,null, false,
             someRequest, someResponse);
   }
 
@@ -174,20 +186,20 @@ public class ConfigFileControllerTest {
         ImmutableMap.of(someKey, someValue);
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel,null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel,null, false,
             someRequest, someResponse)).thenReturn(someApolloConfig);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(watchKeysUtil
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
+    assertEquals(configurations, GSON.fromJson(new String(response.getBody(), StandardCharsets.UTF_8), responseType));
   }
 
   @Test
@@ -205,29 +217,98 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null, false,
             someRequest, someResponse)).thenReturn(someApolloConfig);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someClientLabel, someRequest, someResponse);
 
     verify(configController, times(2))
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null, false,
             someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
+    assertEquals(configurations, GSON.fromJson(new String(response.getBody(), StandardCharsets.UTF_8), responseType));
     assertTrue(watchedKeys2CacheKey.isEmpty());
     assertTrue(cacheKey2WatchedKeys.isEmpty());
   }
 
+  @Test
+  public void testQueryConfigAsJsonWithGzip() throws Exception {
+    Type responseType = new TypeToken<Map<String, String>>(){}.getType();
+    Map<String, String> configurations = ImmutableMap.of("someKey", Strings.repeat("someValue", 200));
+
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, someClientLabel, null, false,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+    when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip, deflate");
+
+    ResponseEntity<byte[]> response =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someClientLabel, someRequest, someResponse);
+    ResponseEntity<byte[]> anotherResponse =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(configurations, GSON.fromJson(new String(gunzip(response.getBody()), StandardCharsets.UTF_8),
+        responseType));
+    //the gzipped content is cached
+    assertSame(response.getBody(), anotherResponse.getBody());
+
+    when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(null);
+
+    ResponseEntity<byte[]> plainResponse =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someClientLabel, someRequest, someResponse);
+
+    assertNull(plainResponse.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertArrayEquals(gunzip(response.getBody()), plainResponse.getBody());
+  }
+
+  @Test
+  public void testAcceptsGzip() throws Exception {
+    assertTrue(ConfigFileController.acceptsGzip("gzip, deflate"));
+    assertTrue(ConfigFileController.acceptsGzip("deflate, GZIP;q=0.5"));
+    assertTrue(ConfigFileController.acceptsGzip("br, *"));
+    assertFalse(ConfigFileController.acceptsGzip(null));
+    assertFalse(ConfigFileController.acceptsGzip("deflate, br"));
+    assertFalse(ConfigFileController.acceptsGzip("gzip;q=0, deflate"));
+    assertFalse(ConfigFileController.acceptsGzip("gzip; q=0.0, *"));
+    assertFalse(ConfigFileController.acceptsGzip("*;q=0"));
+  }
+
+  @Test
+  public void testConfigFileContentWeight() throws Exception {
+    String smallContent = "someKey=someValue";
+    String largeContent = Strings.repeat("someKey=someValue\n", 100);
+
+    ConfigFileController.ConfigFileContent small = new ConfigFileController.ConfigFileContent(smallContent,
+        "someReleaseKey");
+    ConfigFileController.ConfigFileContent large = new ConfigFileController.ConfigFileContent(largeContent,
+        "someReleaseKey");
+
+    assertNull(small.getGzippedContent());
+    assertEquals(small.getWeight() + largeContent.length() - smallContent.length()
+        + large.getGzippedContent().length, large.getWeight());
+  }
+
   @Test
   public void testHandleMessage() throws Exception {
     String someWatchKey = "someWatchKey";
@@ -239,20 +320,28 @@ public class ConfigFileControllerTest {
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
-    Cache<String, String> cache =
-        (Cache<String, String>) ReflectionTestUtils.getField(configFileController, "localCache");
-    cache.put(someCacheKey, someValue);
-    cache.put(anotherCacheKey, someValue);
+    Cache<String, ConfigFileController.ConfigFileContent> cache =
+        (Cache<String, ConfigFileController.ConfigFileContent>) ReflectionTestUtils
+            .getField(configFileController, "localCache");
+    cache.put(someCacheKey, new ConfigFileController.ConfigFileContent(someValue, "someReleaseKey"));
+    cache.put(anotherCacheKey, new ConfigFileController.ConfigFileContent(someValue, "someReleaseKey"));
 
-    watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-    watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
+    watchedKeys2CacheKey.put(someWatchKey, Sets.newConcurrentHashSet(Sets.newHashSet(someCacheKey, anotherCacheKey)));
+    watchedKeys2CacheKey.put(anotherWatchKey, Sets.newConcurrentHashSet(Sets.newHashSet(someCacheKey, anotherCacheKey)));
 
-    cacheKey2WatchedKeys.putAll(someCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
-    cacheKey2WatchedKeys.putAll(anotherCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    cacheKey2WatchedKeys.put(someCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
+    cacheKey2WatchedKeys.put(anotherCacheKey, Sets.newHashSet(someWatchKey, anotherWatchKey));
 
     configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
     assertTrue(watchedKeys2CacheKey.isEmpty());
     assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertFalse(cache.asMap().containsKey(someCacheKey));
+  }
+
+  private byte[] gunzip(byte[] gzipped) throws IOException {
+    try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      return ByteStreams.toByteArray(inputStream);
+    }
   }
 }
@@ -17,22 +17,33 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanOutService;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigNotificationWithConfig;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.SseEmitterWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.WatchKeyRegistry;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.base.Joiner;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,8 +52,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -51,6 +65,8 @@ import java.util.concurrent.TimeUnit;
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -76,21 +92,32 @@ public class NotificationControllerV2Test {
   private WatchKeysUtil watchKeysUtil;
   @Mock
   private BizConfig bizConfig;
+  @Mock
+  private ConfigController configController;
+  @Mock
+  private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  @Mock
+  private HttpServletRequest someRequest;
 
   private Gson gson;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private WatchKeyRegistry<DeferredResultWrapper> deferredResults;
+
+  private WatchKeyRegistry<SseEmitterWrapper> streams;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(20000);
+    when(bizConfig.releaseMessageNotificationFanOutThreads()).thenReturn(2);
+
     controller = new NotificationControllerV2(
-        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
+        watchKeysUtil, releaseMessageService,
+        new NotificationFanOutService(bizConfig, new SimpleMeterRegistry()),
+        entityManagerUtil, namespaceUtil, gson, bizConfig, configController, grayReleaseRulesHolder
     );
 
-    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
-
     someAppId = "someAppId";
     someCluster = "someCluster";
     defaultCluster = ConfigConsts.CLUSTER_NAME_DEFAULT;
@@ -106,7 +133,8 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
 
     deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+        (WatchKeyRegistry<DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+    streams = (WatchKeyRegistry<SseEmitterWrapper>) ReflectionTestUtils.getField(controller, "streams");
   }
 
   @Test
@@ -128,7 +156,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -157,7 +185,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -201,7 +229,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -250,7 +278,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     ResponseEntity<List<ApolloConfigNotification>> result =
         (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
@@ -289,7 +317,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     assertEquals(watchKeysMap.size(), deferredResults.size());
 
@@ -331,16 +359,16 @@ public class NotificationControllerV2Test {
             someDataCenter)).thenReturn(watchKeysMap);
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(1000 / someBatchInterval);
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         anotherDeferredResult = controller
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     long someId = 1;
     ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
@@ -380,7 +408,7 @@ public class NotificationControllerV2Test {
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
         .pollNotification(appIdWithIncorrectCase, someCluster, notificationAsString, someDataCenter,
-            someClientIp);
+            someClientIp, null, false, someRequest);
 
     long someId = 1;
     ReleaseMessage someReleaseMessage = new ReleaseMessage(someMessage);
@@ -405,6 +433,301 @@ public class NotificationControllerV2Test {
 
   }
 
+  @Test
+  public void testPollNotificationWithConfig() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    long notificationId = someNotificationId + 1;
+    List<Release> someReleases = Lists.newArrayList(mock(Release.class));
+    ApolloConfig someConfig = assembleApolloConfig(defaultNamespace, "someReleaseKey");
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(notificationId);
+    when(releaseMessageService
+        .findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(watchKeysMap.values())))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+    when(configController.findReleases(eq(someAppId), isNull(), isNull(), eq(someCluster), eq(defaultNamespace),
+        eq(someDataCenter), any(ApolloNotificationMessages.class))).thenReturn(someReleases);
+    when(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(eq(someAppId), any(), isNull(), eq(someAppId),
+        eq(someCluster), eq(defaultNamespace))).thenReturn(null);
+    when(configController.assembleApolloConfig(someAppId, someCluster, defaultNamespace, someReleases))
+        .thenReturn(someConfig);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, null, true, someRequest);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(1, response.getBody().size());
+    ApolloConfigNotificationWithConfig notification =
+        (ApolloConfigNotificationWithConfig) response.getBody().get(0);
+    assertEquals(defaultNamespace, notification.getNamespaceName());
+    assertEquals(notificationId, notification.getNotificationId());
+    assertEquals(notificationId, notification.getMessages().get(someWatchKey).longValue());
+    assertEquals(gson.toJson(someConfig), notification.getConfig());
+
+    ApolloConfig config = gson.fromJson(gson.toJson(notification), NotificationWithApolloConfig.class).config;
+    assertEquals("someReleaseKey", config.getReleaseKey());
+    assertEquals("someValue", config.getConfigurations().get("someKey"));
+
+    verify(configController, times(1)).auditReleases(someAppId, someCluster, someDataCenter, someClientIp,
+        someReleases);
+  }
+
+  @Test
+  public void testPollNotificationWithConfigAndHandleMessage() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    String anotherClientIp = "anotherClientIp";
+    List<Release> someReleases = Lists.newArrayList(mock(Release.class));
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(configController.findReleases(eq(someAppId), isNull(), isNull(), eq(someCluster), eq(defaultNamespace),
+        eq(someDataCenter), any(ApolloNotificationMessages.class))).thenReturn(someReleases);
+    when(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(eq(someAppId), any(), isNull(), eq(someAppId),
+        eq(someCluster), eq(defaultNamespace))).thenReturn(null);
+    when(configController.assembleApolloConfig(someAppId, someCluster, defaultNamespace, someReleases))
+        .thenReturn(assembleApolloConfig(defaultNamespace, "someReleaseKey"));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, null, true, someRequest);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            anotherClientIp, null, true, someRequest);
+
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ApolloConfigNotificationWithConfig notification = (ApolloConfigNotificationWithConfig)
+        ((ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult()).getBody().get(0);
+    ApolloConfigNotificationWithConfig anotherNotification = (ApolloConfigNotificationWithConfig)
+        ((ResponseEntity<List<ApolloConfigNotification>>) anotherDeferredResult.getResult()).getBody().get(0);
+
+    assertEquals(someId, notification.getNotificationId());
+    assertEquals(someId, anotherNotification.getNotificationId());
+    //rendered once and shared by both clients
+    assertSame(notification.getConfig(), anotherNotification.getConfig());
+    verify(configController, times(1)).findReleases(eq(someAppId), isNull(), isNull(), eq(someCluster),
+        eq(defaultNamespace), eq(someDataCenter), any(ApolloNotificationMessages.class));
+    verify(configController, times(1)).auditReleases(someAppId, someCluster, someDataCenter, someClientIp,
+        someReleases);
+    verify(configController, times(1)).auditReleases(someAppId, someCluster, someDataCenter, anotherClientIp,
+        someReleases);
+  }
+
+  @Test
+  public void testPollNotificationWithConfigAndGrayReleaseRule() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(grayReleaseRulesHolder.hasGrayReleaseRule(someAppId, someClientIp, defaultNamespace)).thenReturn(true);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp, null, true, someRequest);
+
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ApolloConfigNotification notification =
+        ((ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult()).getBody().get(0);
+
+    assertFalse(notification instanceof ApolloConfigNotificationWithConfig);
+    assertEquals(someId, notification.getNotificationId());
+    verify(configController, never()).findReleases(any(), any(), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void testPollNotificationWithConfigAndGrayReleaseRuleMatchedByLabel() throws Exception {
+    String someLabel = "someLabel";
+
+    when(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someAppId, someClientIp, someLabel, someAppId,
+        someCluster, defaultNamespace)).thenReturn(1L);
+
+    assertNotifiedWithoutConfig(someLabel);
+  }
+
+  @Test
+  public void testPollNotificationWithConfigAndLabelledGrayReleaseRule() throws Exception {
+    when(grayReleaseRulesHolder.hasLabelledGrayReleaseRule(someAppId, defaultNamespace)).thenReturn(true);
+
+    assertNotifiedWithoutConfig(null);
+  }
+
+  private void assertNotifiedWithoutConfig(String clientLabel) {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey)));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster,
+            transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId), someDataCenter,
+            someClientIp, clientLabel, true, someRequest);
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(1);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ApolloConfigNotification notification =
+        ((ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult()).getBody().get(0);
+
+    assertFalse(notification instanceof ApolloConfigNotificationWithConfig);
+    verify(configController, never()).findReleases(any(), any(), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  public void testStreamNotifications() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace), someDataCenter))
+        .thenReturn(watchKeysMap);
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(TimeUnit.MINUTES.toMillis(30));
+
+    MvcResult mvcResult = subscribe(transformApolloConfigNotificationsToString(defaultNamespace,
+        someNotificationId));
+
+    assertEquals(1, streams.size());
+    assertEquals(1, streams.get(someWatchKey).size());
+    assertEquals("", mvcResult.getResponse().getContentAsString());
+
+    long someId = 10;
+    long anotherId = 11;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(someWatchKey);
+    anotherReleaseMessage.setId(anotherId);
+
+    //the stream keeps receiving notifications
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+    controller.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //the events are written by the stream writer asynchronously
+    await().atMost(5, TimeUnit.SECONDS).until(() -> parseEvents(mvcResult).size() == 2);
+    List<List<ApolloConfigNotification>> events = parseEvents(mvcResult);
+    assertEquals(2, events.size());
+    assertEquals(1, events.get(0).size());
+    assertEquals(defaultNamespace, events.get(0).get(0).getNamespaceName());
+    assertEquals(someId, events.get(0).get(0).getNotificationId());
+    assertEquals(someId, events.get(0).get(0).getMessages().get(someWatchKey).longValue());
+    assertEquals(anotherId, events.get(1).get(0).getNotificationId());
+    assertEquals(1, streams.size());
+  }
+
+  @Test
+  public void testStreamNotificationsWithNotificationIdOutDated() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    long notificationId = someNotificationId + 1;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace), someDataCenter))
+        .thenReturn(watchKeysMap);
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(TimeUnit.MINUTES.toMillis(30));
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(notificationId);
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someWatchKey)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    MvcResult mvcResult = subscribe(transformApolloConfigNotificationsToString(defaultNamespace,
+        someNotificationId));
+
+    await().atMost(5, TimeUnit.SECONDS).until(() -> parseEvents(mvcResult).size() == 1);
+    List<List<ApolloConfigNotification>> events = parseEvents(mvcResult);
+    assertEquals(1, events.size());
+    assertEquals(defaultNamespace, events.get(0).get(0).getNamespaceName());
+    assertEquals(notificationId, events.get(0).get(0).getNotificationId());
+    assertEquals(1, streams.size());
+    verify(entityManagerUtil, times(1)).closeEntityManager();
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testStreamNotificationsWithInvalidNotifications() throws Exception {
+    controller.streamNotifications(someAppId, someCluster, "[]", someDataCenter, someClientIp, null, false,
+        someRequest);
+  }
+
+  private MvcResult subscribe(String notifications) throws Exception {
+    return MockMvcBuilders.standaloneSetup(controller).build()
+        .perform(get("/notifications/v2/stream")
+            .param("appId", someAppId)
+            .param("cluster", someCluster)
+            .param("notifications", notifications)
+            .param("dataCenter", someDataCenter))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+  }
+
+  private List<List<ApolloConfigNotification>> parseEvents(MvcResult mvcResult) throws Exception {
+    List<List<ApolloConfigNotification>> events = Lists.newArrayList();
+    String eventName = null;
+    for (String line : mvcResult.getResponse().getContentAsString().split("\n")) {
+      if (line.startsWith("event:")) {
+        eventName = line.substring("event:".length());
+      } else if (line.startsWith("data:")) {
+        assertEquals(SseEmitterWrapper.NOTIFICATIONS_EVENT_NAME, eventName);
+        events.add(gson.fromJson(line.substring("data:".length()),
+            new TypeToken<List<ApolloConfigNotification>>() {
+            }.getType()));
+      }
+    }
+    return events;
+  }
+
   private String transformApolloConfigNotificationsToString(
       String namespace, long notificationId) {
     List<ApolloConfigNotification> notifications =
@@ -439,6 +762,12 @@ public class NotificationControllerV2Test {
     return notification;
   }
 
+  private ApolloConfig assembleApolloConfig(String namespace, String releaseKey) {
+    ApolloConfig config = new ApolloConfig(someAppId, someCluster, namespace, releaseKey);
+    config.setConfigurations(ImmutableMap.of("someKey", "someValue"));
+    return config;
+  }
+
   private Multimap<String, String> assembleMultiMap(String key, Iterable<String> values) {
     Multimap<String, String> multimap = HashMultimap.create();
     multimap.putAll(key, values);
@@ -457,4 +786,8 @@ public class NotificationControllerV2Test {
       assertTrue(found);
     }
   }
+
+  private static class NotificationWithApolloConfig extends ApolloConfigNotification {
+    private ApolloConfig config;
+  }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessageControllerTest {
+  @Mock
+  private ReleaseMessageScanner releaseMessageScanner;
+  @Mock
+  private BizConfig bizConfig;
+  private ReleaseMessageController releaseMessageController;
+  private List<Long> someReleaseMessageIds;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageController = new ReleaseMessageController(releaseMessageScanner, bizConfig);
+    someReleaseMessageIds = Lists.newArrayList(1L, 2L);
+  }
+
+  @Test
+  public void testOnReleaseMessagesPushed() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+
+    ResponseEntity<Void> response = releaseMessageController.onReleaseMessagesPushed(null, someReleaseMessageIds);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    verify(releaseMessageScanner, times(1)).onReleaseMessagesPushed(someReleaseMessageIds);
+  }
+
+  @Test
+  public void testOnReleaseMessagesPushedWithAccessControl() throws Exception {
+    String someToken = "someToken";
+    String anotherToken = "anotherToken";
+    when(bizConfig.isAdminServiceAccessControlEnabled()).thenReturn(true);
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn(someToken + "," + anotherToken);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+
+    assertEquals(HttpStatus.UNAUTHORIZED,
+        releaseMessageController.onReleaseMessagesPushed(null, someReleaseMessageIds).getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED,
+        releaseMessageController.onReleaseMessagesPushed("someInvalidToken", someReleaseMessageIds).getStatusCode());
+    verify(releaseMessageScanner, never()).onReleaseMessagesPushed(any());
+
+    assertEquals(HttpStatus.OK,
+        releaseMessageController.onReleaseMessagesPushed(anotherToken, someReleaseMessageIds).getStatusCode());
+    verify(releaseMessageScanner, times(1)).onReleaseMessagesPushed(someReleaseMessageIds);
+  }
+
+  @Test
+  public void testOnReleaseMessagesPushedWithPushDisabled() throws Exception {
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(false);
+
+    releaseMessageController.onReleaseMessagesPushed(null, someReleaseMessageIds);
+
+    verify(releaseMessageScanner, never()).onReleaseMessagesPushed(any());
+  }
+}
@@ -23,6 +23,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.service.AccessKeySecrets;
 import com.ctrip.framework.apollo.configservice.util.AccessKeyUtil;
 import com.ctrip.framework.apollo.core.signature.Signature;
 import com.google.common.collect.Lists;
@@ -78,7 +79,7 @@ public class ClientAuthenticationFilterTest {
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis() - 61 * 1000);
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(AccessKeySecrets.of(secrets));
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
 
     clientAuthenticationFilter.doFilter(request, response, filterChain);
@@ -94,7 +95,7 @@ public class ClientAuthenticationFilterTest {
     String oneMinAfterTimestamp = Long.toString(System.currentTimeMillis() + 61 * 1000);
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(AccessKeySecrets.of(secrets));
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAfterTimestamp);
 
     clientAuthenticationFilter.doFilter(request, response, filterChain);
@@ -106,16 +107,16 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testUnauthorized() throws Exception {
     String appId = "someAppId";
-    String availableSignature = "someSignature";
     List<String> secrets = Lists.newArrayList("someSecret");
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis());
-    String errorAuthorization = "Apollo someAppId:wrongSignature";
+    String errorAuthorization = "Apollo someAppId:" + Signature.signature(oneMinAgoTimestamp,
+        "/configs/someAppId/default/application", "anotherSecret");
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
-    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(AccessKeySecrets.of(secrets));
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
     when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(errorAuthorization);
+    when(request.getRequestURI()).thenReturn("/configs/someAppId/default/application");
     when(bizConfig.accessKeyAuthTimeDiffTolerance()).thenReturn(60);
 
     clientAuthenticationFilter.doFilter(request, response, filterChain);
@@ -127,16 +128,17 @@ public class ClientAuthenticationFilterTest {
   @Test
   public void testAuthorizedSuccessfully() throws Exception {
     String appId = "someAppId";
-    String availableSignature = "someSignature";
-    List<String> secrets = Lists.newArrayList("someSecret");
+    List<String> secrets = Lists.newArrayList("anotherSecret", "someSecret");
     String oneMinAgoTimestamp = Long.toString(System.currentTimeMillis());
-    String correctAuthorization = "Apollo someAppId:someSignature";
+    String correctAuthorization = "Apollo someAppId:" + Signature.signature(oneMinAgoTimestamp,
+        "/configs/someAppId/default/application?ip=1.1.1.1", "someSecret");
 
     when(accessKeyUtil.extractAppIdFromRequest(any())).thenReturn(appId);
-    when(accessKeyUtil.findAvailableSecret(appId)).thenReturn(secrets);
-    when(accessKeyUtil.buildSignature(any(), any(), any(), any())).thenReturn(availableSignature);
+    when(accessKeyUtil.findAvailableSecretKeys(appId)).thenReturn(AccessKeySecrets.of(secrets));
     when(request.getHeader(Signature.HTTP_HEADER_TIMESTAMP)).thenReturn(oneMinAgoTimestamp);
     when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(correctAuthorization);
+    when(request.getRequestURI()).thenReturn("/configs/someAppId/default/application");
+    when(request.getQueryString()).thenReturn("ip=1.1.1.1");
     when(bizConfig.accessKeyAuthTimeDiffTolerance()).thenReturn(60);
 
     clientAuthenticationFilter.doFilter(request, response, filterChain);
@@ -18,24 +18,32 @@ package com.ctrip.framework.apollo.configservice.integration;
 
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigBatch;
+import com.ctrip.framework.apollo.configservice.wrapper.ApolloConfigDelta;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpStatusCodeException;
 
+import java.util.Collections;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -188,6 +196,59 @@ public class ConfigControllerIntegrationTest extends AbstractBaseIntegrationTest
     assertEquals("v2-file", result.getConfigurations().get("k2"));
   }
 
+  @Test
+  @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testQueryConfigsReturnChangedAndNotFoundNamespaces() throws Exception {
+    String someNamespaceNotExists = "someNamespaceNotExists";
+    String namespaces = String.format("{\"%s\":\"%s\",\"%s\":\"%s\",\"%s\":\"%s\"}",
+        ConfigConsts.NAMESPACE_APPLICATION, "TEST-RELEASE-KEY1", someNamespace + ".xml", "-1",
+        someNamespaceNotExists, "-1");
+
+    ResponseEntity<ApolloConfigBatch> response = restTemplate
+        .getForEntity("http://{baseurl}/configs/{appId}/{clusterName}?namespaces={namespaces}",
+            ApolloConfigBatch.class, getHostUrl(), someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT, namespaces);
+    ApolloConfigBatch result = response.getBody();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(1, result.getConfigs().size());
+    ApolloConfig config = result.getConfigs().get(0);
+    assertEquals(someNamespace + ".xml", config.getNamespaceName());
+    assertEquals("TEST-RELEASE-KEY5", config.getReleaseKey());
+    assertEquals("v1-file", config.getConfigurations().get("k1"));
+    assertEquals(Collections.singletonList(someNamespaceNotExists), result.getNotFoundNamespaces());
+  }
+
+  @Test
+  @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testQueryConfigDelta() throws Exception {
+    ResponseEntity<ApolloConfigDelta> response = restTemplate
+        .getForEntity("http://{baseurl}/configs/{appId}/{clusterName}/{namespace}?releaseKey={releaseKey}&delta=true",
+            ApolloConfigDelta.class, getHostUrl(), someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT, someNamespace + ".xml",
+            "TEST-RELEASE-KEY6");
+    ApolloConfigDelta result = response.getBody();
+
+    //a release of another namespace, so full config is returned
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("TEST-RELEASE-KEY5", result.getReleaseKey());
+    assertNull(result.getBaseReleaseKey());
+    assertEquals(2, result.getConfigurations().size());
+
+    response = restTemplate
+        .getForEntity("http://{baseurl}/configs/{appId}/{clusterName}/{namespace}?releaseKey={releaseKey}&delta=true",
+            ApolloConfigDelta.class, getHostUrl(), someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT,
+            ConfigConsts.NAMESPACE_APPLICATION, "TEST-GRAY-RELEASE-KEY1");
+    result = response.getBody();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("TEST-RELEASE-KEY1", result.getReleaseKey());
+    assertEquals("TEST-GRAY-RELEASE-KEY1", result.getBaseReleaseKey());
+    assertEquals(1, result.getConfigurations().size());
+    assertEquals("v1", result.getConfigurations().get("k1"));
+    assertTrue(result.getDeletedKeys().isEmpty());
+  }
+
   @Test
   public void testQueryConfigError() throws Exception {
     String someNamespaceNotExists = "someNamespaceNotExists";
@@ -217,6 +278,20 @@ public class ConfigControllerIntegrationTest extends AbstractBaseIntegrationTest
     assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
   }
 
+  @Test
+  @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testQueryConfigNotModifiedWithETag() throws Exception {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setIfNoneMatch("\"TEST-RELEASE-KEY2\"");
+    ResponseEntity<ApolloConfig> response = restTemplate
+        .exchange("http://{baseurl}/configs/{appId}/{clusterName}/{namespace}", HttpMethod.GET,
+            new HttpEntity<>(headers), ApolloConfig.class, getHostUrl(), someAppId, someCluster, someNamespace);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    assertEquals("\"TEST-RELEASE-KEY2\"", response.getHeaders().getETag());
+  }
+
   @Test
   @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
   @Sql(scripts = "/integration-test/test-gray-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
@@ -20,9 +20,11 @@ import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 
 import org.junit.Before;
@@ -250,6 +252,34 @@ public class NotificationControllerV2IntegrationTest extends AbstractBaseIntegra
     assertEquals(newNotificationId, messages.get(key).longValue());
   }
 
+  @Test(timeout = 5000L)
+  @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/integration-test/test-release-message.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testPollNotificationWithConfig() throws Exception {
+    long someOutDatedNotificationId = 1;
+    ResponseEntity<String> result = restTemplate.getForEntity(
+        "http://{baseurl}/notifications/v2?appId={appId}&cluster={clusterName}&notifications={notifications}&withConfig=true",
+        String.class, getHostUrl(), someAppId, someCluster,
+        transformApolloConfigNotificationsToString(defaultNamespace, someOutDatedNotificationId));
+
+    long newNotificationId = 10;
+
+    List<NotificationWithConfig> notifications = gson.fromJson(result.getBody(),
+        new TypeToken<List<NotificationWithConfig>>() {
+        }.getType());
+    assertEquals(HttpStatus.OK, result.getStatusCode());
+    assertEquals(1, notifications.size());
+    assertEquals(defaultNamespace, notifications.get(0).getNamespaceName());
+    assertEquals(newNotificationId, notifications.get(0).getNotificationId());
+
+    ApolloConfig config = notifications.get(0).config;
+    assertEquals(someAppId, config.getAppId());
+    assertEquals(defaultNamespace, config.getNamespaceName());
+    assertEquals("TEST-RELEASE-KEY1", config.getReleaseKey());
+    assertEquals("v1", config.getConfigurations().get("k1"));
+  }
+
   @Test(timeout = 5000L)
   @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
   @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
@@ -679,4 +709,8 @@ public class NotificationControllerV2IntegrationTest extends AbstractBaseIntegra
     ApolloConfigNotification notification = new ApolloConfigNotification(namespace, notificationId);
     return notification;
   }
+
+  private static class NotificationWithConfig extends ApolloConfigNotification {
+    private ApolloConfig config;
+  }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import org.junit.Test;
+
+public class AccessKeySecretsTest {
+
+  private static final String SOME_SECRET = "someSecret";
+  private static final String ANOTHER_SECRET = "anotherSecret";
+  private static final String SOME_TIMESTAMP = "1582107596000";
+  private static final String SOME_PATH = "/configs/someAppId/default/application";
+
+  @Test
+  public void testVerify() {
+    AccessKeySecrets secrets = AccessKeySecrets.of(Lists.newArrayList(SOME_SECRET, ANOTHER_SECRET));
+
+    assertThat(secrets.verify(sign(SOME_PATH, "ip=1.1.1.1", SOME_SECRET), SOME_TIMESTAMP, SOME_PATH,
+        "ip=1.1.1.1")).isTrue();
+    assertThat(secrets.verify(sign(SOME_PATH, null, ANOTHER_SECRET), SOME_TIMESTAMP, SOME_PATH, null)).isTrue();
+    assertThat(secrets.verify(sign(SOME_PATH, null, ANOTHER_SECRET), SOME_TIMESTAMP, SOME_PATH, "")).isTrue();
+  }
+
+  @Test
+  public void testVerifyWithWrongSignature() {
+    AccessKeySecrets secrets = AccessKeySecrets.of(Lists.newArrayList(SOME_SECRET));
+    String signature = sign(SOME_PATH, null, SOME_SECRET);
+
+    assertThat(secrets.verify(sign(SOME_PATH, null, ANOTHER_SECRET), SOME_TIMESTAMP, SOME_PATH, null)).isFalse();
+    assertThat(secrets.verify(signature, "1582107596001", SOME_PATH, null)).isFalse();
+    assertThat(secrets.verify(signature, SOME_TIMESTAMP, SOME_PATH, "ip=1.1.1.1")).isFalse();
+    assertThat(secrets.verify(signature.substring(1), SOME_TIMESTAMP, SOME_PATH, null)).isFalse();
+    assertThat(secrets.verify(null, SOME_TIMESTAMP, SOME_PATH, null)).isFalse();
+    assertThat(AccessKeySecrets.EMPTY.verify(signature, SOME_TIMESTAMP, SOME_PATH, null)).isFalse();
+  }
+
+  @Test
+  public void testVerifyWithLongAndNonAsciiQuery() {
+    AccessKeySecrets secrets = AccessKeySecrets.of(Lists.newArrayList(SOME_SECRET));
+    String longQuery = "label=" + Strings.repeat("someLabel", 100);
+    String nonAsciiQuery = longQuery + "&ip=一.二";
+
+    assertThat(secrets.verify(sign(SOME_PATH, longQuery, SOME_SECRET), SOME_TIMESTAMP, SOME_PATH, longQuery))
+        .isTrue();
+    assertThat(secrets.verify(sign(SOME_PATH, nonAsciiQuery, SOME_SECRET), SOME_TIMESTAMP, SOME_PATH,
+        nonAsciiQuery)).isTrue();
+  }
+
+  @Test
+  public void testOf() {
+    assertThat(AccessKeySecrets.of(Collections.emptyList())).isSameAs(AccessKeySecrets.EMPTY);
+    assertThat(AccessKeySecrets.EMPTY.isEmpty()).isTrue();
+    assertThat(AccessKeySecrets.of(Lists.newArrayList(SOME_SECRET)).getSecrets()).containsExactly(SOME_SECRET);
+  }
+
+  private String sign(String path, String query, String secret) {
+    String pathWithQuery = Strings.isNullOrEmpty(query) ? path : path + "?" + query;
+    return Signature.signature(SOME_TIMESTAMP, pathWithQuery, secret);
+  }
+}
@@ -102,6 +102,9 @@ public class AccessKeyServiceWithCacheTest {
         .containsExactly("secret-1", "secret-2");
     assertThat(accessKeyServiceWithCache.getAvailableSecrets(appId.toLowerCase()))
         .containsExactly("secret-1", "secret-2");
+    // the prepared secrets are shared by requests until the access keys change
+    assertThat(accessKeyServiceWithCache.getAvailableSecretKeys(appId.toUpperCase()))
+        .isSameAs(accessKeyServiceWithCache.getAvailableSecretKeys(appId));
 
     // Update access key, disable the first one
     firstAccessKey = assembleAccessKey(1L, appId, "secret-1", false, false, 1577808004000L);
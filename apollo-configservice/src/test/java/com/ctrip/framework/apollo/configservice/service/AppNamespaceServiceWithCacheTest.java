@@ -142,6 +142,7 @@ public class AppNamespaceServiceWithCacheTest {
     assertNull(appNamespaceServiceWithCache.findPublicNamespaceByName(anotherPublicNamespace));
     assertTrue(appNamespaceServiceWithCache.findPublicNamespacesByNames(publicNamespaces).isEmpty());
     assertTrue(appNamespaceServiceWithCache.findPublicNamespacesByNames(publicNamespacesWithIncorrectCase).isEmpty());
+    long cacheVersion = appNamespaceServiceWithCache.getCacheVersion();
 
     // Add 1 private namespace and 1 public namespace
     when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0)).thenReturn(Lists
@@ -179,6 +180,7 @@ public class AppNamespaceServiceWithCacheTest {
           appNamespaceServiceWithCache.findPublicNamespacesByNames
               (publicNamespacesWithIncorrectCase));
     });
+    assertTrue(appNamespaceServiceWithCache.getCacheVersion() > cacheVersion);
 
     // Add 2 private namespaces and 1 public namespace
     when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(somePublicNamespaceId))
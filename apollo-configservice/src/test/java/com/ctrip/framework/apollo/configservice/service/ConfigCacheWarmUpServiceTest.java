@@ -0,0 +1,122 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigCacheWarmUpServiceTest {
+  private ConfigCacheWarmUpService configCacheWarmUpService;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private InstanceService instanceService;
+  @Mock
+  private ConfigService configService;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    configCacheWarmUpService = new ConfigCacheWarmUpService(bizConfig, instanceService, configService,
+        meterRegistry);
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    String someReleaseMessage = "someAppId+default+application";
+    String anotherReleaseMessage = "anotherAppId+default+application";
+    int someSize = 10;
+
+    when(bizConfig.isConfigServiceCacheEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheWarmUpSize()).thenReturn(someSize);
+    when(bizConfig.configServiceCacheWarmUpThreads()).thenReturn(2);
+    when(instanceService.findHottestNamespaces(someSize))
+        .thenReturn(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+    doThrow(new RuntimeException("some exception")).when(configService).warmUp(anotherReleaseMessage);
+
+    configCacheWarmUpService.afterPropertiesSet();
+
+    // namespaces failed to load do not block the completion
+    await().atMost(5, TimeUnit.SECONDS).until(configCacheWarmUpService::isCompleted);
+
+    verify(configService).warmUp(someReleaseMessage);
+    assertEquals(2, configCacheWarmUpService.getTotalNamespaces());
+    assertEquals(1, configCacheWarmUpService.getLoadedNamespaces());
+    assertEquals(1, configCacheWarmUpService.getFailedNamespaces());
+    assertEquals(1, meterRegistry.get("apollo.config-cache.warm-up.loaded").gauge().value(), 0);
+    assertEquals(1, meterRegistry.get("apollo.config-cache.warm-up.failed").gauge().value(), 0);
+  }
+
+  @Test
+  public void testWarmUpFailedToFindHottestNamespaces() throws Exception {
+    int someSize = 10;
+
+    when(bizConfig.isConfigServiceCacheEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheWarmUpSize()).thenReturn(someSize);
+    when(bizConfig.configServiceCacheWarmUpThreads()).thenReturn(2);
+    when(instanceService.findHottestNamespaces(someSize)).thenThrow(new RuntimeException("some exception"));
+
+    configCacheWarmUpService.afterPropertiesSet();
+
+    await().atMost(5, TimeUnit.SECONDS).until(configCacheWarmUpService::isCompleted);
+
+    verify(configService, never()).warmUp(anyString());
+  }
+
+  @Test
+  public void testWarmUpDisabled() throws Exception {
+    when(bizConfig.isConfigServiceCacheEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheWarmUpSize()).thenReturn(0);
+
+    configCacheWarmUpService.afterPropertiesSet();
+
+    assertTrue(configCacheWarmUpService.isCompleted());
+    verifyNoInteractions(instanceService, configService);
+  }
+
+  @Test
+  public void testWarmUpWithConfigServiceCacheDisabled() throws Exception {
+    when(bizConfig.isConfigServiceCacheEnabled()).thenReturn(false);
+
+    configCacheWarmUpService.afterPropertiesSet();
+
+    assertTrue(configCacheWarmUpService.isCompleted());
+    verifyNoInteractions(instanceService, configService);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.configservice.service.ConfigDeltaService.ConfigDelta;
+import com.ctrip.framework.apollo.configservice.service.config.DefaultConfigService;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigDeltaServiceTest {
+  private ConfigDeltaService configDeltaService;
+  @Mock
+  private ReleaseService releaseService;
+  @Mock
+  private GrayReleaseRulesHolder grayReleaseRulesHolder;
+
+  private String someAppId;
+  private String somePublicAppId;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    configDeltaService = new ConfigDeltaService(releaseService,
+        new DefaultConfigService(releaseService, grayReleaseRulesHolder));
+
+    someAppId = "someAppId";
+    somePublicAppId = "somePublicAppId";
+    someNamespace = "someNamespace";
+  }
+
+  @Test
+  public void testFindDelta() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Release someRelease = assembleRelease(someAppId, someNamespace, someReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2\",\"k3\":\"v3\"}");
+    Release anotherRelease = assembleRelease(someAppId, someNamespace, anotherReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2-new\",\"k4\":\"v4\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someReleaseKey, anotherReleaseKey)))
+        .thenReturn(Lists.newArrayList(someRelease, anotherRelease));
+
+    ConfigDelta configDelta = configDeltaService.findDelta(someReleaseKey, anotherReleaseKey);
+
+    assertEquals(ImmutableMap.of("k2", "v2-new", "k4", "v4"), configDelta.getChangedConfigurations());
+    assertEquals(Sets.newHashSet("k3"), configDelta.getDeletedKeys());
+
+    //cached
+    configDeltaService.findDelta(someReleaseKey, anotherReleaseKey);
+    verify(releaseService, times(1)).findByReleaseKeys(Sets.newHashSet(someReleaseKey, anotherReleaseKey));
+  }
+
+  @Test
+  public void testFindDeltaWithPublicNamespace() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    String somePublicReleaseKey = "somePublicReleaseKey";
+    Release someRelease = assembleRelease(someAppId, someNamespace, someReleaseKey, "{\"k1\":\"v1-override\"}");
+    Release anotherRelease = assembleRelease(someAppId, someNamespace, anotherReleaseKey, "{}");
+    Release somePublicRelease = assembleRelease(somePublicAppId, someNamespace, somePublicReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someReleaseKey, anotherReleaseKey, somePublicReleaseKey)))
+        .thenReturn(Lists.newArrayList(someRelease, anotherRelease, somePublicRelease));
+
+    ConfigDelta configDelta = configDeltaService.findDelta(
+        String.join(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR, someReleaseKey, somePublicReleaseKey),
+        String.join(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR, anotherReleaseKey, somePublicReleaseKey));
+
+    //the override is removed, so the public value takes effect
+    assertEquals(ImmutableMap.of("k1", "v1"), configDelta.getChangedConfigurations());
+    assertEquals(0, configDelta.getDeletedKeys().size());
+  }
+
+  @Test
+  public void testFindDeltaWithReleaseOfAnotherApp() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Release someRelease = assembleRelease(somePublicAppId, someNamespace, someReleaseKey, "{\"k1\":\"v1\"}");
+    Release anotherRelease = assembleRelease(someAppId, someNamespace, anotherReleaseKey, "{\"k2\":\"v2\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someReleaseKey, anotherReleaseKey)))
+        .thenReturn(Lists.newArrayList(someRelease, anotherRelease));
+
+    assertNull(configDeltaService.findDelta(someReleaseKey, anotherReleaseKey));
+  }
+
+  @Test
+  public void testFindDeltaWithUnknownReleaseKey() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Release anotherRelease = assembleRelease(someAppId, someNamespace, anotherReleaseKey, "{\"k2\":\"v2\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someReleaseKey, anotherReleaseKey)))
+        .thenReturn(Lists.newArrayList(anotherRelease));
+
+    assertNull(configDeltaService.findDelta(someReleaseKey, anotherReleaseKey));
+  }
+
+  @Test
+  public void testFindDeltaWithDifferentNumberOfReleases() throws Exception {
+    assertNull(configDeltaService.findDelta("someReleaseKey",
+        String.join(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR, "anotherReleaseKey", "somePublicReleaseKey")));
+  }
+
+  private Release assembleRelease(String appId, String namespace, String releaseKey, String configurations) {
+    Release release = new Release();
+    release.setAppId(appId);
+    release.setClusterName(ConfigConsts.CLUSTER_NAME_DEFAULT);
+    release.setNamespaceName(namespace);
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations(configurations);
+    return release;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanOutServiceTest {
+  private NotificationFanOutService notificationFanOutService;
+  @Mock
+  private BizConfig bizConfig;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.releaseMessageNotificationFanOutThreads()).thenReturn(2);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(200);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(10);
+
+    meterRegistry = new SimpleMeterRegistry();
+    notificationFanOutService = new NotificationFanOutService(bizConfig, meterRegistry);
+  }
+
+  @Test
+  public void testFanOut() throws Exception {
+    List<Integer> someWatchers = IntStream.range(0, 50).boxed().collect(Collectors.toList());
+    Set<Integer> notified = ConcurrentHashMap.newKeySet();
+
+    notificationFanOutService.fanOut("someKey", someWatchers, notified::add);
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(someWatchers.size(), notified.size()));
+    await().atMost(1, TimeUnit.SECONDS).untilAsserted(
+        () -> assertEquals(0, meterRegistry.get("apollo.notification.fan-out.pending").gauge().value(), 0));
+    assertEquals(5, meterRegistry.get("apollo.notification.fan-out.lag").timer().count());
+  }
+
+  @Test
+  public void testFanOutDifferentKeysInParallel() throws Exception {
+    List<Integer> someWatchers = IntStream.range(0, 200).boxed().collect(Collectors.toList());
+    List<Integer> anotherWatchers = Lists.newArrayList(-1);
+    Set<Integer> notified = ConcurrentHashMap.newKeySet();
+
+    notificationFanOutService.fanOut("someKey", someWatchers, notified::add);
+    notificationFanOutService.fanOut("anotherKey", anotherWatchers, notified::add);
+
+    // another key should not wait for all watchers of some key to be notified
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertTrue(notified.contains(-1)));
+    assertTrue(notified.size() < someWatchers.size());
+
+    await().atMost(5, TimeUnit.SECONDS)
+        .untilAsserted(() -> assertEquals(someWatchers.size() + anotherWatchers.size(), notified.size()));
+  }
+
+  @Test
+  public void testFanOutWithFailedNotifier() throws Exception {
+    List<Integer> someWatchers = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+    Set<Integer> notified = ConcurrentHashMap.newKeySet();
+
+    notificationFanOutService.fanOut("someKey", someWatchers, watcher -> {
+      if (watcher == 0) {
+        throw new IllegalStateException("some failure");
+      }
+      notified.add(watcher);
+    });
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertEquals(someWatchers.size() - 1, notified.size()));
+  }
+}
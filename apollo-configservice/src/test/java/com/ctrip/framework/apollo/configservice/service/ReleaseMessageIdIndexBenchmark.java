@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the map of release message entities previously used by {@link ReleaseMessageServiceWithCache} with
+ * {@link ReleaseMessageIdIndex}.
+ * <p>
+ * Run with <code>main</code> from the IDE, the retained heap of both is printed before the lookup benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReleaseMessageIdIndexBenchmark {
+  @Param({"1000000"})
+  private int messages;
+
+  private String[] keys;
+  private ConcurrentMap<String, ReleaseMessage> releaseMessageMap;
+  private ReleaseMessageIdIndex releaseMessageIdIndex;
+
+  @Setup
+  public void setUp() {
+    keys = new String[messages];
+    releaseMessageMap = Maps.newConcurrentMap();
+    releaseMessageIdIndex = new ReleaseMessageIdIndex();
+    for (int i = 0; i < messages; i++) {
+      keys[i] = "someAppId" + i + "+default+application";
+      ReleaseMessage releaseMessage = new ReleaseMessage(keys[i]);
+      releaseMessage.setId(i + 1);
+      releaseMessageMap.put(keys[i], releaseMessage);
+      releaseMessageIdIndex.putIfGreater(keys[i], i + 1);
+    }
+  }
+
+  @Benchmark
+  public long lookupReleaseMessageMap() {
+    return releaseMessageMap.get(keys[ThreadLocalRandom.current().nextInt(messages)]).getId();
+  }
+
+  @Benchmark
+  public long lookupReleaseMessageIdIndex() {
+    return releaseMessageIdIndex.get(keys[ThreadLocalRandom.current().nextInt(messages)]);
+  }
+
+  public static void main(String[] args) throws Exception {
+    ReleaseMessageIdIndexBenchmark benchmark = new ReleaseMessageIdIndexBenchmark();
+    benchmark.messages = 1_000_000;
+    benchmark.setUp();
+
+    // the keys are shared by both, so only the extra footprint of each structure is compared
+    long keysFootprint = GraphLayout.parseInstance((Object) benchmark.keys).totalSize();
+    System.out.printf("%d messages, map of release messages: %d MB, release message id index: %d MB%n",
+        benchmark.messages,
+        (GraphLayout.parseInstance(benchmark.releaseMessageMap).totalSize() - keysFootprint) >> 20,
+        (GraphLayout.parseInstance(benchmark.releaseMessageIdIndex).totalSize() - keysFootprint) >> 20);
+
+    new Runner(new OptionsBuilder().include(ReleaseMessageIdIndexBenchmark.class.getSimpleName()).build()).run();
+  }
+}
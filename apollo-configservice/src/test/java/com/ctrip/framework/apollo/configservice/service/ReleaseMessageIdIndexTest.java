@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReleaseMessageIdIndexTest {
+  private ReleaseMessageIdIndex releaseMessageIdIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageIdIndex = new ReleaseMessageIdIndex();
+  }
+
+  @Test
+  public void testPutIfGreater() throws Exception {
+    String someMessage = "someAppId+default+application";
+    String anotherMessage = "anotherAppId+default+application";
+
+    assertEquals(ReleaseMessageIdIndex.NO_ID, releaseMessageIdIndex.get(someMessage));
+
+    assertTrue(releaseMessageIdIndex.putIfGreater(someMessage, 2));
+    assertFalse(releaseMessageIdIndex.putIfGreater(someMessage, 1));
+    assertFalse(releaseMessageIdIndex.putIfGreater(someMessage, 2));
+    assertTrue(releaseMessageIdIndex.putIfGreater(anotherMessage, 3));
+
+    assertEquals(2, releaseMessageIdIndex.get(someMessage));
+    assertEquals(3, releaseMessageIdIndex.get(anotherMessage));
+    assertEquals(2, releaseMessageIdIndex.size());
+
+    assertTrue(releaseMessageIdIndex.putIfGreater(someMessage, 4));
+    assertEquals(4, releaseMessageIdIndex.get(someMessage));
+    assertEquals(2, releaseMessageIdIndex.size());
+  }
+
+  @Test
+  public void testResize() throws Exception {
+    int messages = 100_000;
+    for (int i = 0; i < messages; i++) {
+      releaseMessageIdIndex.putIfGreater("someAppId+default+namespace" + i, i + 1);
+    }
+
+    assertEquals(messages, releaseMessageIdIndex.size());
+    for (int i = 0; i < messages; i++) {
+      assertEquals(i + 1, releaseMessageIdIndex.get("someAppId+default+namespace" + i));
+    }
+    assertEquals(ReleaseMessageIdIndex.NO_ID, releaseMessageIdIndex.get("someAppId+default+namespace" + messages));
+  }
+
+  @Test
+  public void testReadWhileWriting() throws Exception {
+    int messages = 100_000;
+    String someMessage = "someAppId+default+application";
+    CountDownLatch written = new CountDownLatch(1);
+
+    releaseMessageIdIndex.putIfGreater(someMessage, 1);
+
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < messages; i++) {
+        releaseMessageIdIndex.putIfGreater("someAppId+default+namespace" + i, i + 1);
+        releaseMessageIdIndex.putIfGreater(someMessage, i + 2);
+      }
+      written.countDown();
+    });
+    writer.start();
+
+    // readers never see the id going backwards, even when the table is resized
+    long lastId = 1;
+    while (written.getCount() > 0) {
+      long id = releaseMessageIdIndex.get(someMessage);
+      assertTrue(id >= lastId);
+      lastId = id;
+    }
+
+    assertTrue(written.await(10, TimeUnit.SECONDS));
+    assertEquals(messages + 1, releaseMessageIdIndex.get(someMessage));
+  }
+}
@@ -21,6 +21,7 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,8 +33,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.*;
@@ -72,7 +75,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
   @Test
   public void testWhenNoReleaseMessages() throws Exception {
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn
+    when(releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages()).thenReturn
         (Collections.emptyList());
 
     releaseMessageServiceWithCache.afterPropertiesSet();
@@ -94,8 +97,8 @@ public class ReleaseMessageServiceWithCacheTest {
     ReleaseMessage anotherMsg = assembleReleaseMsg(2, anotherMsgContent);
     ReleaseMessage anotherRepeatMsg = assembleReleaseMsg(3, anotherMsgContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
-        .thenReturn(Arrays.asList(someMsg, anotherMsg, anotherRepeatMsg));
+    when(releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages())
+        .thenReturn(assembleLatestReleaseMessages(someMsg, anotherMsg, anotherRepeatMsg));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -124,40 +127,46 @@ public class ReleaseMessageServiceWithCacheTest {
   }
 
   @Test
-  public void testWhenReleaseMsgSizeBiggerThan500() throws Exception {
+  public void testWhenNewReleaseMsgSizeBiggerThan500() throws Exception {
     String someMsgContent = "msg1";
+    ReleaseMessage someMsg = assembleReleaseMsg(1, someMsgContent);
     List<ReleaseMessage> firstBatchReleaseMsg = new ArrayList<>(500);
-    for (int i = 0; i < 500; i++) {
+    for (int i = 1; i < 500; i++) {
       firstBatchReleaseMsg.add(assembleReleaseMsg(i + 1, someMsgContent));
     }
 
     String antherMsgContent = "msg2";
     ReleaseMessage antherMsg = assembleReleaseMsg(501, antherMsgContent);
+    firstBatchReleaseMsg.add(antherMsg);
+
+    ReleaseMessage lastMsg = assembleReleaseMsg(502, someMsgContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+    when(releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages())
+        .thenReturn(assembleLatestReleaseMessages(someMsg));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(1L))
         .thenReturn(firstBatchReleaseMsg);
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(500L))
-        .thenReturn(Collections.singletonList(antherMsg));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(501L))
+        .thenReturn(Collections.singletonList(lastMsg));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
-    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(500L);
+    await().atMost(scanInterval * 500, scanIntervalTimeUnit).untilAsserted(() -> {
+      ReleaseMessage latestReleaseMsg =
+          releaseMessageServiceWithCache
+              .findLatestReleaseMessageForMessages(Sets.newHashSet(someMsgContent, antherMsgContent));
 
-    ReleaseMessage latestReleaseMsg =
-        releaseMessageServiceWithCache
-            .findLatestReleaseMessageForMessages(Sets.newHashSet(someMsgContent, antherMsgContent));
+      assertNotNull(latestReleaseMsg);
+      assertEquals(502, latestReleaseMsg.getId());
+      assertEquals(someMsgContent, latestReleaseMsg.getMessage());
+    });
 
-    assertNotNull(latestReleaseMsg);
-    assertEquals(501, latestReleaseMsg.getId());
-    assertEquals(antherMsgContent, latestReleaseMsg.getMessage());
-    
     List<String> msgContentList = Arrays.asList(someMsgContent, antherMsgContent);
     List<ReleaseMessage> latestReleaseMsgGroupByMsgContent =
         releaseMessageServiceWithCache
             .findLatestReleaseMessagesGroupByMessages(Sets.newLinkedHashSet(msgContentList));
 
     assertEquals(2, latestReleaseMsgGroupByMsgContent.size());
-    assertEquals(500, latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(502, latestReleaseMsgGroupByMsgContent.get(0).getId());
     assertEquals(501, latestReleaseMsgGroupByMsgContent.get(1).getId());
   }
 
@@ -167,8 +176,8 @@ public class ReleaseMessageServiceWithCacheTest {
     long someMessageId = 1;
     ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
-        (someMessage));
+    when(releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages()).thenReturn(
+        assembleLatestReleaseMessages(someMessage));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -182,7 +191,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(someMessageId, latestReleaseMsg.getId());
     assertEquals(someMessageContent, latestReleaseMsg.getMessage());
-    assertEquals(latestReleaseMsg, latestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(latestReleaseMsg.getId(), latestReleaseMsgGroupByMsgContent.get(0).getId());
 
     long newMessageId = 2;
     ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
@@ -201,7 +210,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
       assertEquals(newMessageId, newLatestReleaseMsg.getId());
       assertEquals(someMessageContent, newLatestReleaseMsg.getMessage());
-      assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
+      assertEquals(newLatestReleaseMsg.getId(), newLatestReleaseMsgGroupByMsgContent.get(0).getId());
     });
   }
 
@@ -211,8 +220,8 @@ public class ReleaseMessageServiceWithCacheTest {
     long someMessageId = 1;
     ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
-        (someMessage));
+    when(releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages()).thenReturn(
+        assembleLatestReleaseMessages(someMessage));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -226,7 +235,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(someMessageId, latestReleaseMsg.getId());
     assertEquals(someMessageContent, latestReleaseMsg.getMessage());
-    assertEquals(latestReleaseMsg, latestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(latestReleaseMsg.getId(), latestReleaseMsgGroupByMsgContent.get(0).getId());
 
     long newMessageId = 2;
     ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
@@ -243,7 +252,46 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(newMessageId, newLatestReleaseMsg.getId());
     assertEquals(someMessageContent, newLatestReleaseMsg.getMessage());
-    assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(newLatestReleaseMsg.getId(), newLatestReleaseMsgGroupByMsgContent.get(0).getId());
+  }
+
+  @Test
+  public void testHandleMessageWithGap() throws Exception {
+    String someMessageContent = "someMessage";
+    String anotherMessageContent = "anotherMessage";
+    String yetAnotherMessageContent = "yetAnotherMessage";
+    ReleaseMessage someMessage = assembleReleaseMsg(1, someMessageContent);
+    ReleaseMessage missingMessage = assembleReleaseMsg(3, anotherMessageContent);
+    ReleaseMessage newMessage = assembleReleaseMsg(4, yetAnotherMessageContent);
+
+    when(releaseMessageRepository.findAllLatestReleaseMessagesGroupByMessages()).thenReturn(
+        assembleLatestReleaseMessages(someMessage));
+    when(releaseMessageRepository.findAllById(Lists.newArrayList(2L, 3L))).thenReturn(Lists.newArrayList
+        (missingMessage));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    releaseMessageServiceWithCache.handleMessage(newMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    // the new message is merged without waiting for the missing ones
+    assertEquals(newMessage.getId(), releaseMessageServiceWithCache.findLatestReleaseMessageForMessages(
+        Sets.newHashSet(yetAnotherMessageContent)).getId());
+
+    await().atMost(scanInterval * 500, scanIntervalTimeUnit).untilAsserted(() ->
+        assertEquals(missingMessage.getId(), releaseMessageServiceWithCache.findLatestReleaseMessageForMessages(
+            Sets.newHashSet(anotherMessageContent)).getId()));
+
+    assertEquals(newMessage.getId(), releaseMessageServiceWithCache.findLatestReleaseMessageForMessages(
+        Sets.newHashSet(someMessageContent, anotherMessageContent, yetAnotherMessageContent)).getId());
+  }
+
+  private List<Object[]> assembleLatestReleaseMessages(ReleaseMessage... releaseMessages) {
+    Map<String, Long> latestReleaseMessages = Maps.newLinkedHashMap();
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      latestReleaseMessages.merge(releaseMessage.getMessage(), releaseMessage.getId(), Math::max);
+    }
+    return latestReleaseMessages.entrySet().stream()
+        .map(entry -> new Object[]{entry.getKey(), entry.getValue()}).collect(Collectors.toList());
   }
 
   private ReleaseMessage assembleReleaseMsg(long id, String msgContent) {
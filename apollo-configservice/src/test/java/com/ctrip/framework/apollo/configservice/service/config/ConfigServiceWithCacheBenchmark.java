@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
+import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compare parsing the configurations on every request with loading the parsed configurations of the cached release.
+ * <p>
+ * Run with <code>main</code> from the IDE, add <code>-prof gc</code> to the options to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigServiceWithCacheBenchmark {
+  private static final String someAppId = "someAppId";
+  private static final String someClusterName = "default";
+  private static final String someNamespaceName = "application";
+
+  @Param({"100", "5000"})
+  private int keys;
+
+  private ConfigServiceWithCache configServiceWithCache;
+  private Release release;
+
+  @Setup
+  public void setUp() {
+    Map<String, String> configurations = Maps.newLinkedHashMap();
+    for (int i = 0; i < keys; i++) {
+      configurations.put("someKey" + i, Strings.repeat("someValue", 20) + i);
+    }
+
+    Release someRelease = new Release();
+    someRelease.setId(1);
+    someRelease.setAppId(someAppId);
+    someRelease.setClusterName(someClusterName);
+    someRelease.setNamespaceName(someNamespaceName);
+    someRelease.setConfigurations(new Gson().toJson(configurations));
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage();
+    someReleaseMessage.setId(1);
+
+    ReleaseService releaseService = mock(ReleaseService.class);
+    ReleaseMessageService releaseMessageService = mock(ReleaseMessageService.class);
+    when(releaseMessageService.findLatestReleaseMessageForMessages(anyCollection())).thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+
+    configServiceWithCache = new ConfigServiceWithCache(releaseService, releaseMessageService,
+        mock(GrayReleaseRulesHolder.class), mock(BizConfig.class), new SimpleMeterRegistry());
+    configServiceWithCache.initialize();
+
+    release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        new ApolloNotificationMessages());
+  }
+
+  @Benchmark
+  public Map<String, String> parseOnEveryRequest() {
+    return AbstractConfigService.parseConfigurations(release);
+  }
+
+  @Benchmark
+  public Map<String, String> loadFromCache() {
+    return configServiceWithCache.loadConfigurations(release);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(ConfigServiceWithCacheBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
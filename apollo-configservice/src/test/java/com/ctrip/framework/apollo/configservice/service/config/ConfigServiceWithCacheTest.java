@@ -16,9 +16,12 @@
  */
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
@@ -33,8 +36,15 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -57,6 +67,9 @@ public class ConfigServiceWithCacheTest {
   private ReleaseMessage someReleaseMessage;
   @Mock
   private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
 
   private String someAppId;
   private String someClusterName;
@@ -67,9 +80,7 @@ public class ConfigServiceWithCacheTest {
 
   @Before
   public void setUp() throws Exception {
-    configServiceWithCache = new ConfigServiceWithCache(releaseService, releaseMessageService,
-        grayReleaseRulesHolder);
-    configServiceWithCache.initialize();
+    configServiceWithCache = newConfigServiceWithCache();
 
     someAppId = "someAppId";
     someClusterName = "someClusterName";
@@ -81,6 +92,14 @@ public class ConfigServiceWithCacheTest {
     someNotificationMessages = new ApolloNotificationMessages();
   }
 
+  private ConfigServiceWithCache newConfigServiceWithCache() {
+    meterRegistry = new SimpleMeterRegistry();
+    ConfigServiceWithCache configServiceWithCache = new ConfigServiceWithCache(releaseService, releaseMessageService,
+        grayReleaseRulesHolder, bizConfig, meterRegistry);
+    configServiceWithCache.initialize();
+    return configServiceWithCache;
+  }
+
   @Test
   public void testFindActiveOne() throws Exception {
     long someId = 1;
@@ -124,6 +143,77 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(1)).findActiveOne(anotherId);
   }
 
+  @Test
+  public void testFindActiveOneWithCacheStatistics() throws Exception {
+    long someId = 1;
+
+    when(releaseService.findActiveOne(someId)).thenReturn(someRelease);
+
+    configServiceWithCache.findActiveOne(someId, someNotificationMessages);
+    configServiceWithCache.findActiveOne(someId, someNotificationMessages);
+    configServiceWithCache.findActiveOne(someId, someNotificationMessages);
+
+    assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "configIdCache", "result", "miss")
+        .functionCounter().count(), 0);
+    assertEquals(2, meterRegistry.get("cache.gets").tags("cache", "configIdCache", "result", "hit")
+        .functionCounter().count(), 0);
+    assertEquals(1, meterRegistry.get("cache.size").tags("cache", "configIdCache").gauge().value(), 0);
+  }
+
+  @Test
+  public void testFindActiveOneExceedingMaxSize() throws Exception {
+    long someId = 1;
+    long anotherId = 2;
+    Release anotherRelease = mock(Release.class);
+
+    // the release id cache gets a quarter of the budget split into 4 segments, 600 bytes per segment only fit the
+    // 512 + 4 * 2 bytes of the empty release
+    when(bizConfig.configServiceCacheMaxSizeInBytes()).thenReturn(4 * 4 * 600L);
+    when(someRelease.getConfigurations()).thenReturn("{\"someKey\":\"someValue\",\"anotherKey\":\"anotherValue\"}");
+    when(anotherRelease.getConfigurations()).thenReturn("{}");
+    when(releaseService.findActiveOne(someId)).thenReturn(someRelease);
+    when(releaseService.findActiveOne(anotherId)).thenReturn(anotherRelease);
+    configServiceWithCache = newConfigServiceWithCache();
+
+    assertEquals(someRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages));
+    assertEquals(someRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages));
+    assertEquals(anotherRelease, configServiceWithCache.findActiveOne(anotherId, someNotificationMessages));
+    assertEquals(anotherRelease, configServiceWithCache.findActiveOne(anotherId, someNotificationMessages));
+
+    // the release larger than the max size is not retained
+    verify(releaseService, times(2)).findActiveOne(someId);
+    verify(releaseService, times(1)).findActiveOne(anotherId);
+    assertTrue(meterRegistry.get("cache.evictions").tags("cache", "configIdCache").functionCounter().count() > 0);
+  }
+
+  @Test
+  public void testFindActiveOneRefreshedInBackground() throws Exception {
+    long someId = 1;
+    Release anotherRelease = mock(Release.class);
+
+    CountDownLatch reloadLatch = new CountDownLatch(1);
+
+    when(bizConfig.configServiceCacheRefreshIntervalInSeconds()).thenReturn(1);
+    when(releaseService.findActiveOne(someId)).thenReturn(someRelease);
+    configServiceWithCache = newConfigServiceWithCache();
+
+    assertEquals(someRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages));
+
+    when(releaseService.findActiveOne(someId)).thenAnswer(invocation -> {
+      reloadLatch.await();
+      return anotherRelease;
+    });
+    TimeUnit.MILLISECONDS.sleep(1100);
+
+    // the old release is returned while reloading in background
+    assertEquals(someRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages));
+    reloadLatch.countDown();
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(
+        () -> assertEquals(anotherRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages)));
+
+    verify(releaseService, times(2)).findActiveOne(someId);
+  }
+
   @Test
   public void testFindActiveOneWithReleaseNotFoundMultipleTimes() throws Exception {
     long someId = 1;
@@ -137,6 +227,27 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(1)).findActiveOne(someId);
   }
 
+  @Test
+  public void testWarmUp() throws Exception {
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    configServiceWithCache.warmUp(someKey);
+
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    assertEquals(someRelease, release);
+
+    verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
   @Test
   public void testFindLatestActiveRelease() throws Exception {
     when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
@@ -164,6 +275,41 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
 
+  @Test
+  public void testLoadConfigurationsOfCachedRelease() throws Exception {
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(someRelease.getAppId()).thenReturn(someAppId);
+    when(someRelease.getClusterName()).thenReturn(someClusterName);
+    when(someRelease.getNamespaceName()).thenReturn(someNamespaceName);
+    when(someRelease.getConfigurations()).thenReturn("{\"someKey\":\"someValue\"}");
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    Map<String, String> configurations = configServiceWithCache.loadConfigurations(release);
+    Map<String, String> anotherConfigurations = configServiceWithCache.loadConfigurations(release);
+
+    assertEquals(ImmutableMap.of("someKey", "someValue"), configurations);
+    assertSame(configurations, anotherConfigurations);
+
+    verify(someRelease, times(1)).getConfigurations();
+  }
+
+  @Test
+  public void testLoadConfigurationsOfReleaseNotCached() throws Exception {
+    Release anotherRelease = new Release();
+    anotherRelease.setAppId(someAppId);
+    anotherRelease.setClusterName(someClusterName);
+    anotherRelease.setNamespaceName(someNamespaceName);
+    anotherRelease.setConfigurations("{\"someKey\":\"someValue\"}");
+
+    assertEquals(ImmutableMap.of("someKey", "someValue"), configServiceWithCache.loadConfigurations(anotherRelease));
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithReleaseNotFound() throws Exception {
     when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn(null);
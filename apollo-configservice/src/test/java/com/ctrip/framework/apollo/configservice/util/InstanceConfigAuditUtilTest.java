@@ -19,16 +19,23 @@ package com.ctrip.framework.apollo.configservice.util;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
+import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -41,7 +48,8 @@ public class InstanceConfigAuditUtilTest {
 
   @Mock
   private InstanceService instanceService;
-  private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
+  private List<Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel>> audits;
+  private SimpleMeterRegistry meterRegistry;
 
   private String someAppId;
   private String someConfigClusterName;
@@ -56,9 +64,10 @@ public class InstanceConfigAuditUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
+    meterRegistry = new SimpleMeterRegistry();
+    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService, meterRegistry);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
+    audits = (List<Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
         ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
 
     someAppId = "someAppId";
@@ -80,10 +89,112 @@ public class InstanceConfigAuditUtilTest {
     boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
         someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
 
-    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.poll();
+    List<InstanceConfigAuditUtil.InstanceConfigAuditModel> pendingAudits = pendingAudits();
 
     assertTrue(result);
-    assertTrue(Objects.equals(someAuditModel, audit));
+    assertEquals(1, pendingAudits.size());
+    assertTrue(Objects.equals(someAuditModel, pendingAudits.get(0)));
+  }
+
+  @Test
+  public void testAuditCoalesced() throws Exception {
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+    instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, anotherReleaseKey);
+
+    List<InstanceConfigAuditUtil.InstanceConfigAuditModel> pendingAudits = pendingAudits();
+
+    assertEquals(1, pendingAudits.size());
+    assertEquals(anotherReleaseKey, pendingAudits.get(0).getReleaseKey());
+    assertEquals(1, meterRegistry.get("apollo.instance-config-audit.coalesced").counter().count(), 0);
+  }
+
+  @Test
+  public void testAuditDroppedWhenTooManyPending() throws Exception {
+    int dropped = 0;
+    for (int i = 0; i < 20000; i++) {
+      if (!instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+          someIp + i, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey)) {
+        dropped++;
+      }
+    }
+
+    assertTrue(dropped > 0);
+    assertEquals(dropped, meterRegistry.get("apollo.instance-config-audit.dropped").counter().count(), 0);
+    // the pending audit could still be coalesced
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp + 0, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+  }
+
+  @Test
+  public void testFlush() throws Exception {
+    long someInstanceId = 1;
+    Instance someInstance = assembleInstance(someInstanceId, someIp);
+
+    when(instanceService.findInstancesByIps(any())).thenReturn(Lists.newArrayList(someInstance));
+
+    instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+    for (Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel> partition : audits) {
+      instanceConfigAuditUtil.flush(partition);
+    }
+
+    assertTrue(pendingAudits().isEmpty());
+    assertEquals(1, meterRegistry.get("apollo.instance-config-audit.flush").timer().count());
+    verify(instanceService, times(1)).saveInstanceConfigs(anyList());
+  }
+
+  @Test
+  public void testDoAuditInBatch() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String anotherIp = "anotherIp";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Instance someInstance = assembleInstance(someInstanceId, someIp);
+    Instance anotherInstance = assembleInstance(anotherInstanceId, anotherIp);
+    InstanceConfig someInstanceConfig = new InstanceConfig();
+    someInstanceConfig.setId(1);
+    someInstanceConfig.setInstanceId(someInstanceId);
+    someInstanceConfig.setConfigAppId(someConfigAppId);
+    someInstanceConfig.setConfigNamespaceName(someConfigNamespace);
+    someInstanceConfig.setReleaseKey(anotherReleaseKey);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, anotherIp,
+            someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+
+    when(instanceService.findInstancesByIps(any())).thenReturn(Lists.newArrayList(someInstance));
+    when(instanceService.createInstances(anyList())).thenReturn(Lists.newArrayList(anotherInstance));
+    when(instanceService.findInstanceConfigsByInstanceIds(any())).thenReturn(Lists.newArrayList(someInstanceConfig));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel, anotherAuditModel));
+    // the release keys are cached, so no more writes
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel, anotherAuditModel));
+
+    verify(instanceService, times(1)).findInstancesByIps(any());
+    verify(instanceService, times(1)).createInstances(argThat(instances -> instances.size() == 1
+        && anotherIp.equals(instances.get(0).getIp())));
+    verify(instanceService, times(1)).saveInstanceConfigs(argThat(instanceConfigs -> instanceConfigs.size() == 2
+        && instanceConfigs.get(0) == someInstanceConfig && someReleaseKey.equals(someInstanceConfig.getReleaseKey())
+        && instanceConfigs.get(1).getInstanceId() == anotherInstanceId));
+    verify(instanceService, never()).findInstance(anyString(), anyString(), anyString(), anyString());
+  }
+
+  @Test
+  public void testDoAuditInBatchWithConcurrentInsertion() throws Exception {
+    long someInstanceId = 1;
+
+    when(instanceService.createInstances(anyList())).thenThrow(new DataIntegrityViolationException("some error"));
+    when(instanceService.findInstance(someAppId, someClusterName, someDataCenter, someIp))
+        .thenReturn(assembleInstance(someInstanceId, someIp));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
+
+    verify(instanceService, never()).saveInstanceConfigs(anyList());
+    verify(instanceService, times(1)).findInstanceConfig(someInstanceId, someConfigAppId, someConfigNamespace);
+    verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
   }
 
   @Test
@@ -104,5 +215,17 @@ public class InstanceConfigAuditUtilTest {
     verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
   }
 
+  private List<InstanceConfigAuditUtil.InstanceConfigAuditModel> pendingAudits() {
+    return audits.stream().flatMap(partition -> partition.values().stream()).collect(Collectors.toList());
+  }
 
+  private Instance assembleInstance(long id, String ip) {
+    Instance instance = new Instance();
+    instance.setId(id);
+    instance.setAppId(someAppId);
+    instance.setClusterName(someClusterName);
+    instance.setDataCenter(someDataCenter);
+    instance.setIp(ip);
+    return instance;
+  }
 }
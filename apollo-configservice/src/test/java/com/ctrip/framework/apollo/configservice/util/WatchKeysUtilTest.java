@@ -20,6 +20,7 @@ import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
@@ -30,10 +31,14 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -176,6 +181,51 @@ public class WatchKeysUtilTest {
     assertWatchKeys(somePublicAppId, clusters, somePublicNamespace, watchKeysMap.get(somePublicNamespace));
   }
 
+  @Test
+  public void testAssembleAllWatchKeysCached() throws Exception {
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+    Multimap<String, String> anotherWatchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newLinkedHashSet(Lists.newArrayList(somePublicNamespace, someNamespace)), someDC);
+
+    assertSame(watchKeysMap, anotherWatchKeysMap);
+    verify(appNamespaceService, times(1))
+        .findPublicNamespacesByNames(Sets.newHashSet(someNamespace, somePublicNamespace));
+
+    Set<String> watchKeys = watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, somePublicNamespace, someDC);
+    assertEquals(watchKeysMap.get(somePublicNamespace), watchKeys);
+    // the watch keys are interned
+    for (String watchKey : watchKeys) {
+      assertSame(Iterables.find(watchKeysMap.values(), watchKey::equals), watchKey);
+    }
+  }
+
+  @Test
+  public void testAssembleAllWatchKeysWhenAppNamespacesChange() throws Exception {
+    when(appNamespaceService.getCacheVersion()).thenReturn(1L);
+
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+
+    Set<String> clusters = Sets.newHashSet(defaultCluster, someCluster, someDC);
+    assertEquals(clusters.size() * 3, watchKeysMap.size());
+
+    //the public namespace is removed
+    when(appNamespaceService.getCacheVersion()).thenReturn(2L);
+    when(appNamespaceService.findPublicNamespacesByNames(Sets.newHashSet(someNamespace, somePublicNamespace)))
+        .thenReturn(Collections.emptyList());
+
+    Multimap<String, String> anotherWatchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+
+    assertEquals(clusters.size() * 2, anotherWatchKeysMap.size());
+    assertWatchKeys(someAppId, clusters, somePublicNamespace, anotherWatchKeysMap.get(somePublicNamespace));
+  }
+
   private void assertWatchKeys(String appId, Set<String> clusters, String namespaceName,
                                Collection<String> watchedKeys) {
     for (String cluster : clusters) {
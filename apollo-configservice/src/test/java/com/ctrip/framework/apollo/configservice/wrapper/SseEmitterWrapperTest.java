@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SseEmitterWrapperTest {
+  @Mock
+  private SseEmitter emitter;
+  private List<Runnable> writeTasks;
+  private SseEmitterWrapper sseEmitterWrapper;
+  private int maxPendingEvents;
+  private ApolloConfigNotification someNotification;
+
+  @Before
+  public void setUp() throws Exception {
+    writeTasks = Lists.newArrayList();
+    Executor someExecutor = writeTasks::add;
+    maxPendingEvents = 3;
+    sseEmitterWrapper = new SseEmitterWrapper(emitter, someExecutor, maxPendingEvents);
+    someNotification = new ApolloConfigNotification("someNamespace", 1);
+  }
+
+  @Test
+  public void testSendOnWriterOnly() throws Exception {
+    sseEmitterWrapper.setResult(someNotification);
+    sseEmitterWrapper.setResult(someNotification);
+
+    //nothing is sent on the caller thread, and one writer drains the queue
+    verify(emitter, never()).send(any(SseEventBuilder.class));
+    assertEquals(1, writeTasks.size());
+
+    writeTasks.get(0).run();
+
+    verify(emitter, times(2)).send(any(SseEventBuilder.class));
+
+    sseEmitterWrapper.setResult(someNotification);
+
+    assertEquals(2, writeTasks.size());
+  }
+
+  @Test
+  public void testCompleteWhenFallingBehind() throws Exception {
+    for (int i = 0; i < maxPendingEvents; i++) {
+      sseEmitterWrapper.setResult(someNotification);
+    }
+    verify(emitter, never()).complete();
+
+    sseEmitterWrapper.setResult(someNotification);
+
+    verify(emitter, times(1)).complete();
+
+    writeTasks.get(0).run();
+    sseEmitterWrapper.setResult(someNotification);
+
+    verify(emitter, never()).send(any(SseEventBuilder.class));
+    assertEquals(1, writeTasks.size());
+  }
+
+  @Test
+  public void testStopSendingWhenSendFailed() throws Exception {
+    doThrow(new IOException("some exception")).when(emitter).send(any(SseEventBuilder.class));
+
+    sseEmitterWrapper.setResult(someNotification);
+    sseEmitterWrapper.setResult(someNotification);
+    writeTasks.get(0).run();
+
+    verify(emitter, times(1)).send(any(SseEventBuilder.class));
+
+    sseEmitterWrapper.setResult(someNotification);
+
+    assertEquals(1, writeTasks.size());
+  }
+
+  @Test
+  public void testSendHeartbeat() throws Exception {
+    sseEmitterWrapper.sendHeartbeat();
+    //skipped since there is already an event to send
+    sseEmitterWrapper.sendHeartbeat();
+
+    writeTasks.get(0).run();
+
+    verify(emitter, times(1)).send(any(SseEventBuilder.class));
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Register and complete long poll watchers concurrently, one op is a register followed by an unregister.
+ * <p>
+ * Run with <code>main</code> from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class WatchKeyRegistryBenchmark {
+  @Param({"1000"})
+  private int watchKeys;
+
+  private String[] keys;
+  private String[] upperCaseKeys;
+  private WatchKeyRegistry<Object> watchKeyRegistry;
+
+  @Setup
+  public void setUp() {
+    keys = new String[watchKeys];
+    upperCaseKeys = new String[watchKeys];
+    for (int i = 0; i < watchKeys; i++) {
+      keys[i] = "someAppId+default+namespace" + i;
+      upperCaseKeys[i] = keys[i].toUpperCase();
+    }
+    watchKeyRegistry = new WatchKeyRegistry<>();
+  }
+
+  @Benchmark
+  public boolean registerAndUnregister() {
+    int index = ThreadLocalRandom.current().nextInt(watchKeys);
+    Object watcher = new Object();
+    watchKeyRegistry.register(keys[index], watcher);
+    return watchKeyRegistry.unregister(upperCaseKeys[index], watcher);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(WatchKeyRegistryBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WatchKeyRegistryTest {
+  private WatchKeyRegistry<Object> watchKeyRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    watchKeyRegistry = new WatchKeyRegistry<>();
+  }
+
+  @Test
+  public void testRegisterAndUnregister() throws Exception {
+    String someKey = "someKey";
+    Object someWatcher = new Object();
+    Object anotherWatcher = new Object();
+
+    assertTrue(watchKeyRegistry.register(someKey, someWatcher));
+    assertFalse(watchKeyRegistry.register(someKey, someWatcher));
+    assertTrue(watchKeyRegistry.register(someKey, anotherWatcher));
+
+    assertEquals(2, watchKeyRegistry.size());
+    assertEquals(2, watchKeyRegistry.get(someKey).size());
+
+    assertTrue(watchKeyRegistry.unregister(someKey, someWatcher));
+    assertFalse(watchKeyRegistry.unregister(someKey, someWatcher));
+
+    assertEquals(1, watchKeyRegistry.size());
+    assertTrue(watchKeyRegistry.get(someKey).contains(anotherWatcher));
+
+    assertTrue(watchKeyRegistry.unregister(someKey, anotherWatcher));
+
+    assertEquals(0, watchKeyRegistry.size());
+    assertFalse(watchKeyRegistry.containsKey(someKey));
+    assertTrue(watchKeyRegistry.get(someKey).isEmpty());
+  }
+
+  @Test
+  public void testCaseInsensitive() throws Exception {
+    String someKey = "someAppId+default+application";
+    Object someWatcher = new Object();
+
+    watchKeyRegistry.register(someKey.toUpperCase(), someWatcher);
+
+    assertTrue(watchKeyRegistry.containsKey(someKey));
+    assertTrue(watchKeyRegistry.get(someKey.toLowerCase()).contains(someWatcher));
+
+    assertTrue(watchKeyRegistry.unregister(someKey, someWatcher));
+    assertFalse(watchKeyRegistry.containsKey(someKey.toUpperCase()));
+  }
+
+  @Test
+  public void testCaseInsensitiveWithTurkishDefaultLocale() throws Exception {
+    Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      Object someWatcher = new Object();
+
+      watchKeyRegistry.register("SOMEAPPID+DEFAULT+APPLICATION", someWatcher);
+
+      assertTrue(watchKeyRegistry.get("someappid+default+application").contains(someWatcher));
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  public void testConcurrentRegisterAndUnregister() throws Exception {
+    int threads = 4;
+    int watchersPerThread = 1000;
+    int watchKeys = 10;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch registered = new CountDownLatch(threads);
+    CountDownLatch completed = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      executorService.submit(() -> {
+        Object[] watchers = new Object[watchersPerThread];
+        for (int j = 0; j < watchersPerThread; j++) {
+          watchers[j] = new Object();
+          watchKeyRegistry.register("someAppId+default+namespace" + (j % watchKeys), watchers[j]);
+        }
+        registered.countDown();
+        try {
+          registered.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        for (int j = 0; j < watchersPerThread; j++) {
+          watchKeyRegistry.unregister("SOMEAPPID+DEFAULT+NAMESPACE" + (j % watchKeys), watchers[j]);
+        }
+        completed.countDown();
+      });
+    }
+
+    assertTrue(registered.await(10, TimeUnit.SECONDS));
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    assertEquals(0, watchKeyRegistry.size());
+    for (int i = 0; i < watchKeys; i++) {
+      assertFalse(watchKeyRegistry.containsKey("someAppId+default+namespace" + i));
+    }
+  }
+}
@@ -90,6 +90,14 @@ public class AdminServiceAPI {
       return Arrays.asList(namespaceDTOs);
     }
 
+    public List<NamespaceBundleDTO> findNamespaceBundles(String appId, Env env, String clusterName,
+        boolean includeDeletedItems) {
+      NamespaceBundleDTO[] bundles = restTemplate.get(env,
+          "apps/{appId}/clusters/{clusterName}/namespace-bundles?includeDeletedItems={includeDeletedItems}",
+          NamespaceBundleDTO[].class, appId, clusterName, includeDeletedItems);
+      return Arrays.asList(bundles);
+    }
+
     public PageDTO<NamespaceDTO> findByItem(Env env, String itemKey, int page, int size) {
       ResponseEntity<PageDTO<NamespaceDTO>>
           entity =
@@ -56,16 +56,19 @@ public class AdminServiceAddressLocator {
   private final PortalSettings portalSettings;
   private final RestTemplateFactory restTemplateFactory;
   private final PortalMetaDomainService portalMetaDomainService;
+  private final FanOutExecutor fanOutExecutor;
 
   public AdminServiceAddressLocator(
       final HttpMessageConverters httpMessageConverters,
       final PortalSettings portalSettings,
       final RestTemplateFactory restTemplateFactory,
-      final PortalMetaDomainService portalMetaDomainService
+      final PortalMetaDomainService portalMetaDomainService,
+      final FanOutExecutor fanOutExecutor
   ) {
     this.portalSettings = portalSettings;
     this.restTemplateFactory = restTemplateFactory;
     this.portalMetaDomainService = portalMetaDomainService;
+    this.fanOutExecutor = fanOutExecutor;
   }
 
   @PostConstruct
@@ -96,12 +99,11 @@ public class AdminServiceAddressLocator {
 
     @Override
     public void run() {
-      boolean refreshSuccess = true;
       //refresh fail if get any env address fail
-      for (Env env : allEnvs) {
-        boolean currentEnvRefreshResult = refreshServerAddressCache(env);
-        refreshSuccess = refreshSuccess && currentEnvRefreshResult;
-      }
+      Map<Env, Boolean> refreshResults = fanOutExecutor.invokeAll("RefreshAdminServerAddress", allEnvs,
+          AdminServiceAddressLocator.this::refreshServerAddressCache);
+      boolean refreshSuccess = refreshResults.size() == allEnvs.size()
+          && refreshResults.values().stream().allMatch(Boolean::booleanValue);
 
       if (refreshSuccess) {
         refreshServiceAddressService
@@ -122,7 +124,9 @@ public class AdminServiceAddressLocator {
         if (services == null || services.length == 0) {
           continue;
         }
-        cache.put(env, Arrays.asList(services));
+        List<ServiceDTO> serviceList = Arrays.asList(services);
+        cache.put(env, serviceList);
+        restTemplateFactory.setMaxConnectionsPerRoute(env, serviceList);
         return true;
       } catch (Throwable e) {
         logger.error(String.format("Get admin server address from meta server failed. env: %s, meta server address:%s",
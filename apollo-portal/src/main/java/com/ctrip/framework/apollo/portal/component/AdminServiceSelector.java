@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.constant.TracerEventType;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpHostConnectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Order the admin services to try by their recent latency and health.
+ * <p>
+ * Each admin service keeps an EWMA of its latency and the number of its in-flight requests. The first one to try is
+ * the less loaded of two random candidates, i.e. power of two choices, the service list from
+ * {@link AdminServiceAddressLocator} is already shuffled so the first two are taken.
+ * <p>
+ * An admin service that fails to respond several times in a row is tripped and tried last, so dead or hung instances
+ * stop adding timeouts to every call. After the open duration, one GET request probes it first, and its circuit is
+ * closed again once the probe succeeds.
+ * <p>
+ * The stats of an admin service are dropped once it's not selected for a while, e.g. the instance is gone.
+ */
+class AdminServiceSelector {
+  private static final Logger logger = LoggerFactory.getLogger(AdminServiceSelector.class);
+  private static final double EWMA_ALPHA = 0.3;
+  private static final long SERVICE_STATS_EXPIRE_AFTER_ACCESS_IN_MINUTES = 10;
+
+  private final PortalConfig portalConfig;
+  private final Ticker ticker;
+  private final LoadingCache<String, ServiceStats> serviceStats;
+
+  AdminServiceSelector(PortalConfig portalConfig) {
+    this(portalConfig, Ticker.systemTicker());
+  }
+
+  AdminServiceSelector(PortalConfig portalConfig, Ticker ticker) {
+    this.portalConfig = portalConfig;
+    this.ticker = ticker;
+    // the stats of the admin services still in the list are accessed on every selection
+    serviceStats = CacheBuilder.newBuilder()
+        .expireAfterAccess(SERVICE_STATS_EXPIRE_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .ticker(ticker)
+        .build(CacheLoader.from(ServiceStats::new));
+  }
+
+  /**
+   * @param services the shuffled admin services of an env
+   * @param probeAllowed whether an admin service with an open circuit could be probed, i.e. the request is safe to
+   *                     retry
+   * @return the admin services in the order to try, admin services with an open circuit are the last
+   */
+  List<ServiceDTO> select(List<ServiceDTO> services, boolean probeAllowed) {
+    long now = ticker.read();
+    long openDurationNanos = TimeUnit.MILLISECONDS.toNanos(portalConfig.adminServiceCircuitBreakerOpenDuration());
+
+    ServiceDTO probe = null;
+    List<ServiceDTO> available = Lists.newArrayListWithCapacity(services.size());
+    List<ServiceDTO> tripped = Lists.newArrayList();
+    for (ServiceDTO service : services) {
+      ServiceStats stats = statsOf(service);
+      if (!stats.isOpen()) {
+        available.add(service);
+      } else if (probe == null && probeAllowed && stats.tryProbe(now, openDurationNanos)) {
+        probe = service;
+      } else {
+        tripped.add(service);
+      }
+    }
+
+    if (available.size() > 1 && statsOf(available.get(1)).load() < statsOf(available.get(0)).load()) {
+      available.set(1, available.set(0, available.get(1)));
+    }
+
+    if (probe == null && tripped.isEmpty()) {
+      return available;
+    }
+    List<ServiceDTO> selected = Lists.newArrayListWithCapacity(services.size());
+    if (probe != null) {
+      selected.add(probe);
+    }
+    selected.addAll(available);
+    selected.addAll(tripped);
+    return selected;
+  }
+
+  /**
+   * @return the start time of the request
+   */
+  long beforeRequest(ServiceDTO service) {
+    statsOf(service).inFlight.incrementAndGet();
+    return ticker.read();
+  }
+
+  /**
+   * @param exception the exception of the request, null if succeeded
+   */
+  void afterRequest(ServiceDTO service, long startTime, Throwable exception) {
+    ServiceStats stats = statsOf(service);
+    stats.inFlight.decrementAndGet();
+    stats.recordLatency(ticker.read() - startTime);
+
+    if (!isUnresponsive(exception)) {
+      // responded, even if with an error status
+      if (stats.close()) {
+        logger.info("Circuit of admin service {} is closed", service.getHomepageUrl());
+        Tracer.logEvent(TracerEventType.API_CIRCUIT_CLOSE, service.getHomepageUrl());
+      }
+      return;
+    }
+
+    if (stats.recordFailure(ticker.read(), portalConfig.adminServiceCircuitBreakerFailureThreshold())) {
+      logger.warn("Circuit of admin service {} is open", service.getHomepageUrl());
+      Tracer.logEvent(TracerEventType.API_CIRCUIT_OPEN, service.getHomepageUrl());
+    }
+  }
+
+  static boolean isUnresponsive(Throwable exception) {
+    if (exception == null) {
+      return false;
+    }
+    Throwable nestedException = exception.getCause();
+    return nestedException instanceof SocketTimeoutException
+        || nestedException instanceof HttpHostConnectException
+        || nestedException instanceof ConnectTimeoutException;
+  }
+
+  private ServiceStats statsOf(ServiceDTO service) {
+    return serviceStats.getUnchecked(service.getHomepageUrl());
+  }
+
+  private static class ServiceStats {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile double ewmaLatency;
+    private int consecutiveFailures;
+    // 0 means the circuit is closed
+    private volatile long openedAt;
+
+    /**
+     * The expected latency of a new request, admin services never tried are preferred
+     */
+    double load() {
+      return ewmaLatency * (inFlight.get() + 1);
+    }
+
+    synchronized void recordLatency(long latency) {
+      ewmaLatency = ewmaLatency == 0 ? latency : ewmaLatency + EWMA_ALPHA * (latency - ewmaLatency);
+    }
+
+    boolean isOpen() {
+      return openedAt != 0;
+    }
+
+    /**
+     * Only one request probes an open circuit after the open duration
+     */
+    boolean tryProbe(long now, long openDurationNanos) {
+      return now - openedAt >= openDurationNanos && probing.compareAndSet(false, true);
+    }
+
+    /**
+     * @return whether the circuit is opened by this failure
+     */
+    synchronized boolean recordFailure(long now, int failureThreshold) {
+      consecutiveFailures++;
+      boolean wasProbing = probing.getAndSet(false);
+      if (isOpen()) {
+        if (wasProbing) {
+          // probe failed, wait for another open duration
+          openedAt = now;
+        }
+        return false;
+      }
+      if (consecutiveFailures < failureThreshold) {
+        return false;
+      }
+      // ticker could be 0
+      openedAt = now == 0 ? 1 : now;
+      return true;
+    }
+
+    /**
+     * @return whether the circuit was open
+     */
+    synchronized boolean close() {
+      consecutiveFailures = 0;
+      probing.set(false);
+      if (!isOpen()) {
+        return false;
+      }
+      openedAt = 0;
+      return true;
+    }
+  }
+}
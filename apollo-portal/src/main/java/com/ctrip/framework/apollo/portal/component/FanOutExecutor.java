@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import com.ctrip.framework.apollo.common.exception.ServiceException;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.constant.TracerEventType;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the admin service calls of different envs or clusters in parallel for the aggregation pages.
+ * <p>
+ * The threads are shared and bounded by {@link PortalConfig#fanOutThreads()}, a call which could not be queued runs in
+ * the caller thread. The caller waits at most {@link PortalConfig#fanOutTimeout()} for all the calls, and gets the
+ * results of the calls that succeeded in time, so one slow or broken env does not fail the whole page. Callers which
+ * can't work with partial results, e.g. checking whether a namespace is still in use, should use
+ * {@link #invokeAllOrFail(String, Collection, Function)} instead.
+ * <p>
+ * The calls must not fan out again, otherwise the shared threads could all be waiting for queued calls.
+ */
+@Component
+public class FanOutExecutor implements DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(FanOutExecutor.class);
+  private static final int QUEUE_CAPACITY = 1024;
+
+  private final PortalConfig portalConfig;
+  private final ThreadPoolExecutor executorService;
+
+  public FanOutExecutor(final PortalConfig portalConfig) {
+    this.portalConfig = portalConfig;
+    int threads = portalConfig.fanOutThreads();
+    executorService = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(QUEUE_CAPACITY), ApolloThreadFactory.create("FanOut", true),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    executorService.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @see #invokeAll(String, Collection, Function, long)
+   */
+  public <K, V> Map<K, V> invokeAll(String name, Collection<K> keys, Function<? super K, ? extends V> task) {
+    return invokeAll(name, keys, task, portalConfig.fanOutTimeout());
+  }
+
+  /**
+   * Run the task for each key in parallel and wait for them at most the timeout.
+   *
+   * @param name the name of the calls in logs
+   * @return the results in the order of the keys, the keys whose task failed, timed out or returned null are absent
+   */
+  public <K, V> Map<K, V> invokeAll(String name, Collection<K> keys, Function<? super K, ? extends V> task,
+      long timeoutInMillis) {
+    return invokeAll(name, keys, task, timeoutInMillis, Lists.newArrayList());
+  }
+
+  /**
+   * The same as {@link #invokeAll(String, Collection, Function)}, but fails if the task of any key failed or timed out
+   *
+   * @return the results in the order of the keys, the keys whose task returned null are absent
+   * @throws ServiceException with the failed keys in the message
+   */
+  public <K, V> Map<K, V> invokeAllOrFail(String name, Collection<K> keys, Function<? super K, ? extends V> task) {
+    List<K> failedKeys = Lists.newArrayList();
+    Map<K, V> results = invokeAll(name, keys, task, portalConfig.fanOutTimeout(), failedKeys);
+    if (!failedKeys.isEmpty()) {
+      throw new ServiceException("%s failed or timed out for %s", name, failedKeys);
+    }
+    return results;
+  }
+
+  private <K, V> Map<K, V> invokeAll(String name, Collection<K> keys, Function<? super K, ? extends V> task,
+      long timeoutInMillis, List<K> failedKeys) {
+    Map<K, Future<? extends V>> futures = Maps.newLinkedHashMapWithExpectedSize(keys.size());
+    for (K key : keys) {
+      futures.put(key, executorService.submit(() -> task.apply(key)));
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+    Map<K, V> results = Maps.newLinkedHashMapWithExpectedSize(keys.size());
+    boolean interrupted = false;
+    for (Map.Entry<K, Future<? extends V>> entry : futures.entrySet()) {
+      K key = entry.getKey();
+      Future<? extends V> future = entry.getValue();
+      if (interrupted) {
+        failedKeys.add(key);
+        continue;
+      }
+      try {
+        V result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (result != null) {
+          results.put(key, result);
+        }
+      } catch (TimeoutException e) {
+        failedKeys.add(key);
+        future.cancel(true);
+        logger.warn("{} of {} timed out after {} ms", name, key, timeoutInMillis);
+        Tracer.logEvent(TracerEventType.API_FAN_OUT_TIMEOUT, name + ":" + key);
+      } catch (ExecutionException e) {
+        failedKeys.add(key);
+        logger.error("{} of {} failed", name, key, e.getCause());
+        Tracer.logError(String.format("%s of %s failed", name, key), e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        futures.values().forEach(f -> f.cancel(true));
+        failedKeys.add(key);
+        interrupted = true;
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void destroy() {
+    executorService.shutdownNow();
+  }
+}
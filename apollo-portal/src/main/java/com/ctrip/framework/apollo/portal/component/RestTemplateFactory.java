@@ -16,9 +16,28 @@
  */
 package com.ctrip.framework.apollo.portal.component;
 
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
@@ -26,20 +45,30 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.UnsupportedEncodingException;
-
+/**
+ * The rest template shared by the admin service calls of all envs.
+ * <p>
+ * Connections are pooled and kept alive, idle ones are evicted in background. Responses compressed by gzip or deflate
+ * are decompressed transparently.
+ */
 @Component
-public class RestTemplateFactory implements FactoryBean<RestTemplate>, InitializingBean {
+public class RestTemplateFactory implements FactoryBean<RestTemplate>, InitializingBean, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(RestTemplateFactory.class);
 
   private final HttpMessageConverters httpMessageConverters;
   private final PortalConfig portalConfig;
+  private final MeterRegistry meterRegistry;
 
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
   private RestTemplate restTemplate;
 
   public RestTemplateFactory(final HttpMessageConverters httpMessageConverters,
-      final PortalConfig portalConfig) {
+      final PortalConfig portalConfig,
+      final MeterRegistry meterRegistry) {
     this.httpMessageConverters = httpMessageConverters;
     this.portalConfig = portalConfig;
+    this.meterRegistry = meterRegistry;
   }
 
   public RestTemplate getObject() {
@@ -55,7 +84,25 @@ public class RestTemplateFactory implements FactoryBean<RestTemplate>, Initializ
   }
 
   public void afterPropertiesSet() throws UnsupportedEncodingException {
-    CloseableHttpClient httpClient = HttpClientBuilder.create().build();
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(portalConfig.connectionPoolMaxTotal());
+    // routes not set by env, e.g. meta servers and webhooks
+    connectionManager.setDefaultMaxPerRoute(portalConfig.connectionPoolDefaultMaxPerRoute());
+
+    httpClient = HttpClientBuilder.create()
+        .setConnectionManager(connectionManager)
+        .evictExpiredConnections()
+        .evictIdleConnections(portalConfig.connectionPoolIdleTimeout(), TimeUnit.MILLISECONDS)
+        .build();
+
+    registerPoolGauge("apollo.portal.http-client.connections.leased", PoolStats::getLeased,
+        "Number of connections in use");
+    registerPoolGauge("apollo.portal.http-client.connections.pending", PoolStats::getPending,
+        "Number of requests waiting for a connection");
+    registerPoolGauge("apollo.portal.http-client.connections.available", PoolStats::getAvailable,
+        "Number of idle connections");
+    registerPoolGauge("apollo.portal.http-client.connections.max", PoolStats::getMax,
+        "Max number of connections");
 
     restTemplate = new RestTemplate(httpMessageConverters.getConverters());
     HttpComponentsClientHttpRequestFactory requestFactory =
@@ -66,5 +113,39 @@ public class RestTemplateFactory implements FactoryBean<RestTemplate>, Initializ
     restTemplate.setRequestFactory(requestFactory);
   }
 
+  /**
+   * Limit the connections to each admin service instance of the env
+   */
+  public void setMaxConnectionsPerRoute(Env env, List<ServiceDTO> services) {
+    int maxPerRoute = portalConfig.connectionPoolMaxPerRoute(env);
+    for (ServiceDTO service : services) {
+      try {
+        HttpHost host = URIUtils.extractHost(URI.create(service.getHomepageUrl()));
+        if (host == null) {
+          continue;
+        }
+        // the same as the route planned by http client when there is no proxy
+        host = new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host), host.getSchemeName());
+        HttpRoute route = new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName()));
+        if (connectionManager.getMaxPerRoute(route) != maxPerRoute) {
+          connectionManager.setMaxPerRoute(route, maxPerRoute);
+        }
+      } catch (Throwable ex) {
+        logger.warn("Set max connections for admin service {} of env {} failed", service.getHomepageUrl(), env, ex);
+      }
+    }
+  }
 
+  @Override
+  public void destroy() throws IOException {
+    if (httpClient != null) {
+      httpClient.close();
+    }
+  }
+
+  private void registerPoolGauge(String name, ToDoubleFunction<PoolStats> stat, String description) {
+    Gauge.builder(name, connectionManager, manager -> stat.applyAsDouble(manager.getTotalStats()))
+        .description(description)
+        .register(meterRegistry);
+  }
 }
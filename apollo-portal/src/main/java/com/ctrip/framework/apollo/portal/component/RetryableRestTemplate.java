@@ -72,6 +72,7 @@ public class RetryableRestTemplate {
   private final AdminServiceAddressLocator adminServiceAddressLocator;
   private final PortalMetaDomainService portalMetaDomainService;
   private final PortalConfig portalConfig;
+  private final AdminServiceSelector adminServiceSelector;
   private volatile String lastAdminServiceAccessTokens;
   private volatile Map<Env, String> adminServiceAccessTokenMap;
 
@@ -85,6 +86,7 @@ public class RetryableRestTemplate {
     this.adminServiceAddressLocator = adminServiceAddressLocator;
     this.portalMetaDomainService = portalMetaDomainService;
     this.portalConfig = portalConfig;
+    this.adminServiceSelector = new AdminServiceSelector(portalConfig);
   }
 
 
@@ -132,15 +134,18 @@ public class RetryableRestTemplate {
     List<ServiceDTO> services = getAdminServices(env, ct);
     HttpHeaders extraHeaders = assembleExtraHeaders(env);
 
-    for (ServiceDTO serviceDTO : services) {
+    for (ServiceDTO serviceDTO : adminServiceSelector.select(services, method == HttpMethod.GET)) {
+      long startTime = adminServiceSelector.beforeRequest(serviceDTO);
       try {
 
         T result = doExecute(method, extraHeaders, serviceDTO, path, request, responseType, uriVariables);
 
+        adminServiceSelector.afterRequest(serviceDTO, startTime, null);
         ct.setStatus(Transaction.SUCCESS);
         ct.complete();
         return result;
       } catch (Throwable t) {
+        adminServiceSelector.afterRequest(serviceDTO, startTime, t);
         logger.error("Http request failed, uri: {}, method: {}", uri, method, t);
         Tracer.logError(t);
         if (canRetry(t, method)) {
@@ -175,16 +180,19 @@ public class RetryableRestTemplate {
     List<ServiceDTO> services = getAdminServices(env, ct);
     HttpEntity<Void> entity = new HttpEntity<>(assembleExtraHeaders(env));
 
-    for (ServiceDTO serviceDTO : services) {
+    for (ServiceDTO serviceDTO : adminServiceSelector.select(services, true)) {
+      long startTime = adminServiceSelector.beforeRequest(serviceDTO);
       try {
 
         ResponseEntity<T> result =
             restTemplate.exchange(parseHost(serviceDTO) + path, HttpMethod.GET, entity, reference, uriVariables);
 
+        adminServiceSelector.afterRequest(serviceDTO, startTime, null);
         ct.setStatus(Transaction.SUCCESS);
         ct.complete();
         return result;
       } catch (Throwable t) {
+        adminServiceSelector.afterRequest(serviceDTO, startTime, t);
         logger.error("Http request failed, uri: {}, method: {}", uri, HttpMethod.GET, t);
         Tracer.logError(t);
         if (canRetry(t, HttpMethod.GET)) {
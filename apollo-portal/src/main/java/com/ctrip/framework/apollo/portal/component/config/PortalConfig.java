@@ -61,6 +61,11 @@ public class PortalConfig extends RefreshableConfig {
    */
   private static final Type META_SERVERS = new TypeToken<Map<String, String>>(){}.getType();
 
+  /**
+   * admin service max connections per route of each env in "PortalDB.ServerConfig"
+   */
+  private static final Type MAX_CONNECTIONS_PER_ROUTE = new TypeToken<Map<String, Integer>>(){}.getType();
+
   private final PortalDBPropertySource portalDBPropertySource;
 
   public PortalConfig(final PortalDBPropertySource portalDBPropertySource) {
@@ -169,6 +174,90 @@ public class PortalConfig extends RefreshableConfig {
     return getIntProperty("api.readTimeout", 10000);
   }
 
+  public int connectionPoolMaxTotal() {
+    int maxTotal = getIntProperty("api.pool.maxTotal", 200);
+    return checkInt(maxTotal, 1, Integer.MAX_VALUE, 200);
+  }
+
+  public int connectionPoolDefaultMaxPerRoute() {
+    int maxPerRoute = getIntProperty("api.pool.maxPerRoute", 50);
+    return checkInt(maxPerRoute, 1, Integer.MAX_VALUE, 50);
+  }
+
+  /**
+   * @return the max connections to each admin service instance of the env
+   */
+  public int connectionPoolMaxPerRoute(Env env) {
+    int maxPerRoute = connectionPoolDefaultMaxPerRoute();
+
+    final String key = "api.pool.maxPerRoute.envs";
+    String jsonContent = getValue(key);
+    if (Strings.isNullOrEmpty(jsonContent)) {
+      return maxPerRoute;
+    }
+
+    try {
+      Map<String, Integer> map = GSON.fromJson(jsonContent, MAX_CONNECTIONS_PER_ROUTE);
+      for (Map.Entry<String, Integer> entry : map.entrySet()) {
+        if (Env.exists(entry.getKey()) && Env.valueOf(entry.getKey()) == env && entry.getValue() != null) {
+          return checkInt(entry.getValue(), 1, Integer.MAX_VALUE, maxPerRoute);
+        }
+      }
+    } catch (Exception e) {
+      logger.error("Wrong format for: {}", key, e);
+    }
+    return maxPerRoute;
+  }
+
+  /**
+   * Pooled connections idle longer than this are closed, in milliseconds
+   */
+  public int connectionPoolIdleTimeout() {
+    int idleTimeout = getIntProperty("api.pool.idleTimeout", 60000);
+    return checkInt(idleTimeout, 1, Integer.MAX_VALUE, 60000);
+  }
+
+  /**
+   * An admin service is tried last after failing to respond this many times in a row
+   */
+  public int adminServiceCircuitBreakerFailureThreshold() {
+    int threshold = getIntProperty("api.circuitBreaker.failureThreshold", 3);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, 3);
+  }
+
+  /**
+   * How long an admin service is tried last before being probed again, in milliseconds
+   */
+  public int adminServiceCircuitBreakerOpenDuration() {
+    int openDuration = getIntProperty("api.circuitBreaker.openDuration", 30000);
+    return checkInt(openDuration, 0, Integer.MAX_VALUE, 30000);
+  }
+
+  /**
+   * The max admin service calls of different envs or clusters running in parallel for the aggregation pages
+   */
+  public int fanOutThreads() {
+    int threads = getIntProperty("api.fanOut.threads", 32);
+    return checkInt(threads, 1, Integer.MAX_VALUE, 32);
+  }
+
+  /**
+   * How long the aggregation pages wait for the admin service calls of all envs or clusters, in milliseconds
+   */
+  public int fanOutTimeout() {
+    int timeout = getIntProperty("api.fanOut.timeout", 15000);
+    return checkInt(timeout, 1, Integer.MAX_VALUE, 15000);
+  }
+
+  /**
+   * How long the permissions of a user are cached by a portal instance, in milliseconds. Changes made by the instance
+   * itself take effect immediately, changes made by other instances take effect after this time, 0 means no cache.
+   */
+  public int userPermissionCacheTtl() {
+    int ttl = getIntProperty("permission.cache.ttl", 60000);
+    return checkInt(ttl, 0, Integer.MAX_VALUE, 60000);
+  }
+
   public List<Organization> organizations() {
 
     String organizations = getValue("organizations");
@@ -290,4 +379,11 @@ public class PortalConfig extends RefreshableConfig {
     }
     return Arrays.asList(value);
   }
+
+  private int checkInt(int value, int min, int max, int defaultValue) {
+    if (value >= min && value <= max) {
+      return value;
+    }
+    return defaultValue;
+  }
 }
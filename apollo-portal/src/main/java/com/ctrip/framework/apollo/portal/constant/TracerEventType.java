@@ -36,6 +36,12 @@ public interface TracerEventType {
 
   String API_RETRY = "API.Retry";
 
+  String API_CIRCUIT_OPEN = "API.CircuitOpen";
+
+  String API_CIRCUIT_CLOSE = "API.CircuitClose";
+
+  String API_FAN_OUT_TIMEOUT = "API.FanOut.Timeout";
+
   String USER_ACCESS = "User.Access";
 
   String CREATE_GRAY_RELEASE = "GrayRelease.Create";
@@ -21,6 +21,7 @@ import com.google.common.collect.Lists;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.entity.App;
+import com.ctrip.framework.apollo.portal.component.FanOutExecutor;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.environment.Env;
@@ -34,6 +35,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -46,15 +48,18 @@ public class SearchController {
   private PortalSettings   portalSettings;
   private NamespaceService namespaceService;
   private PortalConfig     portalConfig;
+  private FanOutExecutor   fanOutExecutor;
 
   public SearchController(final AppService appService,
                           final PortalSettings portalSettings,
                           final PortalConfig portalConfig,
-                          final NamespaceService namespaceService) {
+                          final NamespaceService namespaceService,
+                          final FanOutExecutor fanOutExecutor) {
     this.appService = appService;
     this.portalConfig = portalConfig;
     this.portalSettings = portalSettings;
     this.namespaceService = namespaceService;
+    this.fanOutExecutor = fanOutExecutor;
   }
 
   @GetMapping("/apps/search/by-appid-or-name")
@@ -88,9 +93,10 @@ public class SearchController {
     final AtomicLong maxTotal = new AtomicLong(0);
 
     List<Env> activeEnvs = portalSettings.getActiveEnvs();
+    Map<Env, PageDTO<NamespaceDTO>> envNamespacePages = fanOutExecutor.invokeAll("FindNamespacesByItem", activeEnvs,
+        env -> namespaceService.findNamespacesByItem(env, itemKey, pageable));
 
-    activeEnvs.forEach(env -> {
-      PageDTO<NamespaceDTO> namespacePage = namespaceService.findNamespacesByItem(env, itemKey, pageable);
+    envNamespacePages.forEach((env, namespacePage) -> {
       if (!namespacePage.hasContent()) {
         return;
       }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.listener;
+
+import java.util.Set;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when the permissions granted to users change, e.g. roles are assigned to or removed from users
+ */
+public class RolePermissionChangedEvent extends ApplicationEvent {
+
+  /**
+   * @param userIds the users whose permissions changed, empty if the permissions of any user might have changed
+   */
+  public RolePermissionChangedEvent(Set<String> userIds) {
+    super(userIds);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Set<String> getUserIds() {
+    return (Set<String>) this.source;
+  }
+}
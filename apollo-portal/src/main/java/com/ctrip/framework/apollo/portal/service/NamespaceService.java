@@ -19,6 +19,7 @@ package com.ctrip.framework.apollo.portal.service;
 import com.ctrip.framework.apollo.common.constants.GsonType;
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceBundleDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
 import com.ctrip.framework.apollo.common.dto.PageDTO;
 import com.ctrip.framework.apollo.common.dto.ReleaseDTO;
@@ -30,6 +31,7 @@ import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI;
 import com.ctrip.framework.apollo.portal.api.AdminServiceAPI.NamespaceAPI;
+import com.ctrip.framework.apollo.portal.component.FanOutExecutor;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.constant.RoleType;
@@ -61,8 +63,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.client.HttpClientErrorException;
 
 @Service
 public class NamespaceService {
@@ -85,6 +89,7 @@ public class NamespaceService {
   private final RolePermissionService rolePermissionService;
   private final AdditionalUserInfoEnrichService additionalUserInfoEnrichService;
   private final ClusterService clusterService;
+  private final FanOutExecutor fanOutExecutor;
 
   public NamespaceService(
       final PortalConfig portalConfig,
@@ -98,7 +103,8 @@ public class NamespaceService {
       final @Lazy NamespaceBranchService branchService,
       final RolePermissionService rolePermissionService,
       final AdditionalUserInfoEnrichService additionalUserInfoEnrichService,
-      ClusterService clusterService) {
+      final ClusterService clusterService,
+      final FanOutExecutor fanOutExecutor) {
     this.portalConfig = portalConfig;
     this.portalSettings = portalSettings;
     this.userInfoHolder = userInfoHolder;
@@ -111,6 +117,7 @@ public class NamespaceService {
     this.rolePermissionService = rolePermissionService;
     this.additionalUserInfoEnrichService = additionalUserInfoEnrichService;
     this.clusterService = clusterService;
+    this.fanOutExecutor = fanOutExecutor;
   }
 
 
@@ -134,22 +141,30 @@ public class NamespaceService {
   public List<NamespaceUsage> getNamespaceUsageByAppId(String appId, String namespaceName) {
     List<Env> envs = portalSettings.getActiveEnvs();
     AppNamespace appNamespace = appNamespaceService.findByAppIdAndName(appId, namespaceName);
+
+    Map<Env, List<ClusterDTO>> envClusters = fanOutExecutor.invokeAllOrFail("FindClusters", envs,
+        env -> clusterService.findClusters(env, appId));
+    Map<Env, Integer> linkedNamespaceCounts = appNamespace != null && appNamespace.isPublic()
+        ? fanOutExecutor.invokeAllOrFail("CountLinkedNamespaces", envClusters.keySet(),
+            env -> this.getPublicAppNamespaceHasAssociatedNamespace(namespaceName, env))
+        : Collections.emptyMap();
+
+    //the clusters of all the envs are queried at once
+    List<Map.Entry<Env, String>> envClusterNames = new ArrayList<>();
+    envClusters.forEach((env, clusters) -> clusters.forEach(
+        cluster -> envClusterNames.add(Maps.immutableEntry(env, cluster.getName()))));
+    Map<Map.Entry<Env, String>, NamespaceUsage> clusterUsages = fanOutExecutor.invokeAllOrFail(
+        "FindNamespaceUsage", envClusterNames,
+        envCluster -> this.getNamespaceUsageByEnv(appId, namespaceName, envCluster.getKey(), envCluster.getValue()));
+
     List<NamespaceUsage> usages = new ArrayList<>();
-    for (Env env : envs) {
-      List<ClusterDTO> clusters = clusterService.findClusters(env, appId);
-      for (ClusterDTO cluster : clusters) {
-        String clusterName = cluster.getName();
-        NamespaceUsage usage = this.getNamespaceUsageByEnv(appId, namespaceName, env, clusterName);
-        if (appNamespace != null && appNamespace.isPublic()) {
-          int associatedNamespace = this.getPublicAppNamespaceHasAssociatedNamespace(namespaceName, env);
-          usage.setLinkedNamespaceCount(associatedNamespace);
-        }
+    clusterUsages.forEach((envCluster, usage) -> {
+      usage.setLinkedNamespaceCount(linkedNamespaceCounts.getOrDefault(envCluster.getKey(), 0));
 
-        if(usage.getLinkedNamespaceCount() > 0 || usage.getBranchInstanceCount() > 0 || usage.getInstanceCount() > 0) {
-          usages.add(usage);
-        }
+      if(usage.getLinkedNamespaceCount() > 0 || usage.getBranchInstanceCount() > 0 || usage.getInstanceCount() > 0) {
+        usages.add(usage);
       }
-    }
+    });
     return usages;
   }
 
@@ -187,6 +202,44 @@ public class NamespaceService {
    * load cluster all namespace info with items
    */
   public List<NamespaceBO> findNamespaceBOs(String appId, Env env, String clusterName, boolean includeDeletedItems) {
+    List<NamespaceBundleDTO> bundles;
+    try {
+      bundles = namespaceAPI.findNamespaceBundles(appId, env, clusterName, includeDeletedItems);
+    } catch (HttpClientErrorException e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+        // the admin service is older than the portal, load the namespaces one by one
+        return findNamespaceBOsOneByOne(appId, env, clusterName, includeDeletedItems);
+      }
+      throw e;
+    }
+    if (bundles == null || bundles.isEmpty()) {
+      throw BadRequestException.namespaceNotExists();
+    }
+
+    List<ItemDTO> items = bundles.stream()
+        .flatMap(bundle -> bundle.getItems().stream())
+        .collect(Collectors.toList());
+    additionalUserInfoEnrichService.enrichAdditionalUserInfo(items, BaseDtoUserInfoEnrichedAdapter::new);
+
+    List<NamespaceBO> namespaceBOs = new ArrayList<>(bundles.size());
+    List<String> exceptionNamespaces = new LinkedList<>();
+    for (NamespaceBundleDTO bundle : bundles) {
+      NamespaceDTO namespace = bundle.getNamespace();
+      try {
+        namespaceBOs.add(transformNamespace2BO(namespace, bundle.getLatestRelease(), bundle.getItems(),
+            includeDeletedItems ? bundle.getDeletedItems() : null));
+      } catch (Exception e) {
+        LOGGER.error("parse namespace error. app id:{}, env:{}, clusterName:{}, namespace:{}",
+            appId, env, clusterName, namespace.getNamespaceName(), e);
+        exceptionNamespaces.add(namespace.getNamespaceName());
+      }
+    }
+
+    return sortNamespaceBOs(bundles.size(), namespaceBOs, exceptionNamespaces);
+  }
+
+  private List<NamespaceBO> findNamespaceBOsOneByOne(String appId, Env env, String clusterName,
+      boolean includeDeletedItems) {
 
     List<NamespaceDTO> namespaces = namespaceAPI.findNamespaceByCluster(appId, env, clusterName);
     if (namespaces == null || namespaces.size() == 0) {
@@ -218,9 +271,14 @@ public class NamespaceService {
       //ignore
     }
 
-    if(namespaceBOs.size() != namespaces.size()){
+    return sortNamespaceBOs(namespaces.size(), namespaceBOs, exceptionNamespaces);
+  }
+
+  private List<NamespaceBO> sortNamespaceBOs(int expectedSize, List<NamespaceBO> namespaceBOs,
+      List<String> exceptionNamespaces) {
+    if(namespaceBOs.size() != expectedSize){
        throw new RuntimeException(String
-           .format("Parse namespaces error, expected: %s, but actual: %s, cannot get those namespaces: %s", namespaces.size(), namespaceBOs.size(), exceptionNamespaces));
+           .format("Parse namespaces error, expected: %s, but actual: %s, cannot get those namespaces: %s", expectedSize, namespaceBOs.size(), exceptionNamespaces));
     }
 
     return namespaceBOs.stream()
@@ -283,42 +341,57 @@ public class NamespaceService {
   public Map<String, Map<String, Boolean>> getNamespacesPublishInfo(String appId) {
     Map<String, Map<String, Boolean>> result = Maps.newHashMap();
 
-    Set<Env> envs = portalConfig.publishTipsSupportedEnvs();
-    for (Env env : envs) {
-      if (portalSettings.isEnvActive(env)) {
-        result.put(env.toString(), namespaceAPI.getNamespacePublishInfo(env, appId));
-      }
-    }
+    List<Env> envs = portalConfig.publishTipsSupportedEnvs().stream()
+        .filter(portalSettings::isEnvActive)
+        .collect(Collectors.toList());
+    fanOutExecutor.invokeAllOrFail("FindNamespacePublishInfo", envs,
+        env -> namespaceAPI.getNamespacePublishInfo(env, appId))
+        .forEach((env, publishInfo) -> result.put(env.toString(), publishInfo));
 
     return result;
   }
 
   private NamespaceBO transformNamespace2BO(Env env, NamespaceDTO namespace, boolean includeDeletedItems) {
-    NamespaceBO namespaceBO = new NamespaceBO();
-    namespaceBO.setBaseInfo(namespace);
-
     String appId = namespace.getAppId();
     String clusterName = namespace.getClusterName();
     String namespaceName = namespace.getNamespaceName();
 
+    //latest Release
+    ReleaseDTO latestRelease = releaseService.loadLatestRelease(appId, env, clusterName, namespaceName);
+
+    //not Release config items
+    List<ItemDTO> items = itemService.findItems(appId, env, clusterName, namespaceName);
+    additionalUserInfoEnrichService
+        .enrichAdditionalUserInfo(items, BaseDtoUserInfoEnrichedAdapter::new);
+
+    //deleted items
+    List<ItemDTO> deletedItems = null;
+    if (includeDeletedItems) {
+      deletedItems = itemService.findDeletedItems(appId, env, clusterName, namespaceName);
+    }
+
+    return transformNamespace2BO(namespace, latestRelease, items, deletedItems);
+  }
+
+  /**
+   * @param deletedItems null if the deleted items are not included
+   */
+  private NamespaceBO transformNamespace2BO(NamespaceDTO namespace, ReleaseDTO latestRelease, List<ItemDTO> items,
+      List<ItemDTO> deletedItems) {
+    NamespaceBO namespaceBO = new NamespaceBO();
+    namespaceBO.setBaseInfo(namespace);
+
     fillAppNamespaceProperties(namespaceBO);
 
     List<ItemBO> itemBOs = new LinkedList<>();
     namespaceBO.setItems(itemBOs);
 
-    //latest Release
-    ReleaseDTO latestRelease;
     Map<String, String> releaseItems = new HashMap<>();
     Map<String, ItemDTO> deletedItemDTOs = new HashMap<>();
-    latestRelease = releaseService.loadLatestRelease(appId, env, clusterName, namespaceName);
     if (latestRelease != null) {
       releaseItems = GSON.fromJson(latestRelease.getConfigurations(), GsonType.CONFIG);
     }
 
-    //not Release config items
-    List<ItemDTO> items = itemService.findItems(appId, env, clusterName, namespaceName);
-    additionalUserInfoEnrichService
-        .enrichAdditionalUserInfo(items, BaseDtoUserInfoEnrichedAdapter::new);
     int modifiedItemCnt = 0;
     for (ItemDTO itemDTO : items) {
 
@@ -331,15 +404,14 @@ public class NamespaceService {
       itemBOs.add(itemBO);
     }
 
-    if (includeDeletedItems) {
-      //deleted items
-      itemService.findDeletedItems(appId, env, clusterName, namespaceName).forEach(item -> {
+    if (deletedItems != null) {
+      deletedItems.forEach(item -> {
         deletedItemDTOs.put(item.getKey(), item);
       });
 
-      List<ItemBO> deletedItems = parseDeletedItems(items, releaseItems, deletedItemDTOs);
-      itemBOs.addAll(deletedItems);
-      modifiedItemCnt += deletedItems.size();
+      List<ItemBO> deletedItemBOs = parseDeletedItems(items, releaseItems, deletedItemDTOs);
+      itemBOs.addAll(deletedItemBOs);
+      modifiedItemCnt += deletedItemBOs.size();
     }
 
     namespaceBO.setItemModifiedCnt(modifiedItemCnt);
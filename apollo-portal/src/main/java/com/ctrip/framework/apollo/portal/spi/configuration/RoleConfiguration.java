@@ -27,6 +27,7 @@ import com.ctrip.framework.apollo.portal.service.RolePermissionService;
 import com.ctrip.framework.apollo.portal.spi.UserService;
 import com.ctrip.framework.apollo.portal.spi.defaultimpl.DefaultRoleInitializationService;
 import com.ctrip.framework.apollo.portal.spi.defaultimpl.DefaultRolePermissionService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -43,6 +44,7 @@ public class RoleConfiguration {
     private final PortalConfig portalConfig;
     private final ConsumerRoleRepository consumerRoleRepository;
     private final UserService userService;
+    private final ApplicationEventPublisher publisher;
 
     public RoleConfiguration(final RoleRepository roleRepository,
         final RolePermissionRepository rolePermissionRepository,
@@ -50,7 +52,8 @@ public class RoleConfiguration {
         final PermissionRepository permissionRepository,
         final PortalConfig portalConfig,
         final ConsumerRoleRepository consumerRoleRepository,
-        final UserService userService) {
+        final UserService userService,
+        final ApplicationEventPublisher publisher) {
       this.roleRepository = roleRepository;
       this.rolePermissionRepository = rolePermissionRepository;
       this.userRoleRepository = userRoleRepository;
@@ -58,6 +61,7 @@ public class RoleConfiguration {
       this.portalConfig = portalConfig;
       this.consumerRoleRepository = consumerRoleRepository;
       this.userService = userService;
+      this.publisher = publisher;
     }
 
     @Bean
@@ -70,6 +74,6 @@ public class RoleConfiguration {
     public RolePermissionService rolePermissionService() {
         return new DefaultRolePermissionService(roleRepository, rolePermissionRepository,
             userRoleRepository, permissionRepository, portalConfig, consumerRoleRepository,
-            userService);
+            userService, publisher);
     }
 }
@@ -23,34 +23,50 @@ import com.ctrip.framework.apollo.portal.entity.po.Permission;
 import com.ctrip.framework.apollo.portal.entity.po.Role;
 import com.ctrip.framework.apollo.portal.entity.po.RolePermission;
 import com.ctrip.framework.apollo.portal.entity.po.UserRole;
+import com.ctrip.framework.apollo.portal.listener.RolePermissionChangedEvent;
 import com.ctrip.framework.apollo.portal.repository.PermissionRepository;
 import com.ctrip.framework.apollo.portal.repository.RolePermissionRepository;
 import com.ctrip.framework.apollo.portal.repository.RoleRepository;
 import com.ctrip.framework.apollo.portal.repository.UserRoleRepository;
 import com.ctrip.framework.apollo.portal.service.RolePermissionService;
 import com.ctrip.framework.apollo.portal.spi.UserService;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import java.util.Comparator;
 import java.util.LinkedHashSet;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 /**
  * Created by timothy on 2017/4/26.
+ * <p>
+ * The permissions granted to each user are cached, and invalidated after the roles of users or the permissions of
+ * roles are changed by this portal instance. Changes made by other instances take effect after
+ * {@link PortalConfig#userPermissionCacheTtl()}.
  */
 public class DefaultRolePermissionService implements RolePermissionService {
+    private static final int MAX_CACHED_USERS = 10000;
+    private static final Joiner PERMISSION_KEY_JOINER = Joiner.on(":");
 
     private final RoleRepository roleRepository;
     private final RolePermissionRepository rolePermissionRepository;
@@ -59,6 +75,12 @@ public class DefaultRolePermissionService implements RolePermissionService {
     private final PortalConfig portalConfig;
     private final ConsumerRoleRepository consumerRoleRepository;
     private final UserService userService;
+    private final ApplicationEventPublisher publisher;
+
+    // userId -> keys of the permissions granted to the user
+    private final Cache<String, Set<String>> userPermissionsCache;
+    // increased on every change, so that permissions loaded before a change are not cached
+    private final AtomicLong permissionsVersion = new AtomicLong();
 
     public DefaultRolePermissionService(final RoleRepository roleRepository,
         final RolePermissionRepository rolePermissionRepository,
@@ -66,7 +88,8 @@ public class DefaultRolePermissionService implements RolePermissionService {
         final PermissionRepository permissionRepository,
         final PortalConfig portalConfig,
         final ConsumerRoleRepository consumerRoleRepository,
-        final UserService userService) {
+        final UserService userService,
+        final ApplicationEventPublisher publisher) {
       this.roleRepository = roleRepository;
       this.rolePermissionRepository = rolePermissionRepository;
       this.userRoleRepository = userRoleRepository;
@@ -74,6 +97,11 @@ public class DefaultRolePermissionService implements RolePermissionService {
       this.portalConfig = portalConfig;
       this.consumerRoleRepository = consumerRoleRepository;
       this.userService = userService;
+      this.publisher = publisher;
+      this.userPermissionsCache = CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_USERS)
+          .expireAfterWrite(portalConfig.userPermissionCacheTtl(), TimeUnit.MILLISECONDS)
+          .build();
     }
 
     /**
@@ -129,6 +157,9 @@ public class DefaultRolePermissionService implements RolePermissionService {
         }).collect(Collectors.toList());
 
         userRoleRepository.saveAll(toCreate);
+        if (!toAssignUserIds.isEmpty()) {
+            publisher.publishEvent(new RolePermissionChangedEvent(Sets.newHashSet(toAssignUserIds)));
+        }
         return toAssignUserIds;
     }
 
@@ -150,6 +181,9 @@ public class DefaultRolePermissionService implements RolePermissionService {
         }
 
         userRoleRepository.saveAll(existedUserRoles);
+        if (!existedUserRoles.isEmpty()) {
+            publisher.publishEvent(new RolePermissionChangedEvent(Sets.newHashSet(userIds)));
+        }
     }
 
     /**
@@ -185,35 +219,64 @@ public class DefaultRolePermissionService implements RolePermissionService {
      * Check whether user has the permission
      */
     public boolean userHasPermission(String userId, String permissionType, String targetId) {
-        Permission permission =
-                permissionRepository.findTopByPermissionTypeAndTargetId(permissionType, targetId);
-        if (permission == null) {
-            return false;
+        if (isSuperAdmin(userId)) {
+            return permissionRepository.findTopByPermissionTypeAndTargetId(permissionType, targetId) != null;
         }
 
-        if (isSuperAdmin(userId)) {
-            return true;
+        return findUserPermissions(userId).contains(permissionKey(permissionType, targetId));
+    }
+
+    private Set<String> findUserPermissions(String userId) {
+        Set<String> permissions = userPermissionsCache.getIfPresent(userId);
+        if (permissions != null) {
+            return permissions;
         }
 
+        long version = permissionsVersion.get();
+        permissions = loadUserPermissions(userId);
+        userPermissionsCache.put(userId, permissions);
+        // the permissions might be changed while loading
+        if (version != permissionsVersion.get()) {
+            userPermissionsCache.invalidate(userId);
+        }
+        return permissions;
+    }
+
+    private Set<String> loadUserPermissions(String userId) {
         List<UserRole> userRoles = userRoleRepository.findByUserId(userId);
         if (CollectionUtils.isEmpty(userRoles)) {
-            return false;
+            return Collections.emptySet();
         }
 
         Set<Long> roleIds =
             userRoles.stream().map(UserRole::getRoleId).collect(Collectors.toSet());
         List<RolePermission> rolePermissions = rolePermissionRepository.findByRoleIdIn(roleIds);
         if (CollectionUtils.isEmpty(rolePermissions)) {
-            return false;
+            return Collections.emptySet();
         }
 
-        for (RolePermission rolePermission : rolePermissions) {
-            if (rolePermission.getPermissionId() == permission.getId()) {
-                return true;
-            }
-        }
+        Set<Long> permissionIds =
+            rolePermissions.stream().map(RolePermission::getPermissionId).collect(Collectors.toSet());
+        return StreamSupport.stream(permissionRepository.findAllById(permissionIds).spliterator(), false)
+            .map(permission -> permissionKey(permission.getPermissionType(), permission.getTargetId()))
+            .collect(ImmutableSet.toImmutableSet());
+    }
 
-        return false;
+    /**
+     * PortalDB compares the permission type and target id case-insensitively, so does the cached permissions
+     */
+    private static String permissionKey(String permissionType, String targetId) {
+        return PERMISSION_KEY_JOINER.join(permissionType, targetId).toLowerCase(Locale.ROOT);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRolePermissionChanged(RolePermissionChangedEvent event) {
+        permissionsVersion.incrementAndGet();
+        if (event.getUserIds().isEmpty()) {
+            userPermissionsCache.invalidateAll();
+        } else {
+            userPermissionsCache.invalidateAll(event.getUserIds());
+        }
     }
 
     @Override
@@ -295,6 +358,8 @@ public class DefaultRolePermissionService implements RolePermissionService {
             // 5. delete Consumer Role
             consumerRoleRepository.batchDeleteByRoleIds(roleIds, operator);
         }
+
+        publisher.publishEvent(new RolePermissionChangedEvent(Collections.emptySet()));
     }
 
     @Transactional
@@ -322,5 +387,7 @@ public class DefaultRolePermissionService implements RolePermissionService {
             // 5. delete Consumer Role
             consumerRoleRepository.batchDeleteByRoleIds(roleIds, operator);
         }
+
+        publisher.publishEvent(new RolePermissionChangedEvent(Collections.emptySet()));
     }
 }
@@ -57,6 +57,8 @@ function deleteNamespaceModalDirective($window, $q, $translate, toastr, AppUtil,
                                 scope.toDeleteNamespace.forceDeleteButton = true;
                             }
                             showDeleteNamespaceConfirmDialog();
+                        }, function (result) {
+                            AppUtil.showErrorMsg(result, $translate.instant('Common.DeleteFailed'));
                         });
                     }
                 })
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.portal.AbstractUnitTest;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.collect.Lists;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+public class AdminServiceSelectorTest extends AbstractUnitTest {
+  @Mock
+  private PortalConfig portalConfig;
+
+  private FakeTicker ticker;
+  private AdminServiceSelector adminServiceSelector;
+
+  private ServiceDTO serviceOne = mockService("http://10.0.0.1");
+  private ServiceDTO serviceTwo = mockService("http://10.0.0.2");
+  private ServiceDTO serviceThree = mockService("http://10.0.0.3");
+  private List<ServiceDTO> services = Lists.newArrayList(serviceOne, serviceTwo, serviceThree);
+  private ResourceAccessException socketTimeoutException = new ResourceAccessException("");
+
+  @Before
+  public void setUp() throws Exception {
+    socketTimeoutException.initCause(new SocketTimeoutException());
+
+    when(portalConfig.adminServiceCircuitBreakerFailureThreshold()).thenReturn(2);
+    when(portalConfig.adminServiceCircuitBreakerOpenDuration()).thenReturn(1000);
+
+    ticker = new FakeTicker();
+    adminServiceSelector = new AdminServiceSelector(portalConfig, ticker);
+  }
+
+  @Test
+  public void testSelectWithoutStats() throws Exception {
+    assertEquals(services, adminServiceSelector.select(services, true));
+  }
+
+  @Test
+  public void testSelectLessLoaded() throws Exception {
+    request(serviceOne, 100, null);
+    request(serviceTwo, 10, null);
+
+    assertEquals(Lists.newArrayList(serviceTwo, serviceOne, serviceThree), adminServiceSelector.select(services, true));
+    // only the first two are compared
+    assertEquals(Lists.newArrayList(serviceThree, serviceOne, serviceTwo),
+        adminServiceSelector.select(Lists.newArrayList(serviceThree, serviceOne, serviceTwo), true));
+  }
+
+  @Test
+  public void testSelectWithInFlightRequests() throws Exception {
+    request(serviceOne, 10, null);
+    request(serviceTwo, 15, null);
+
+    adminServiceSelector.beforeRequest(serviceOne);
+
+    assertEquals(Lists.newArrayList(serviceTwo, serviceOne, serviceThree), adminServiceSelector.select(services, true));
+  }
+
+  @Test
+  public void testCircuitOpenAfterConsecutiveFailures() throws Exception {
+    request(serviceOne, 10, socketTimeoutException);
+
+    assertEquals(Lists.newArrayList(serviceTwo, serviceOne, serviceThree), adminServiceSelector.select(services, true));
+
+    request(serviceOne, 10, socketTimeoutException);
+
+    assertEquals(Lists.newArrayList(serviceTwo, serviceThree, serviceOne), adminServiceSelector.select(services, true));
+  }
+
+  @Test
+  public void testCircuitNotOpenWithErrorResponses() throws Exception {
+    HttpServerErrorException someException = new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
+
+    request(serviceOne, 10, someException);
+    request(serviceOne, 10, someException);
+    request(serviceOne, 10, someException);
+
+    // slower, but not tripped
+    assertEquals(Lists.newArrayList(serviceTwo, serviceOne, serviceThree), adminServiceSelector.select(services, true));
+  }
+
+  @Test
+  public void testCircuitHalfOpen() throws Exception {
+    List<ServiceDTO> tripped = Lists.newArrayList(serviceTwo, serviceThree, serviceOne);
+
+    request(serviceOne, 10, socketTimeoutException);
+    request(serviceOne, 10, socketTimeoutException);
+
+    ticker.advance(999, TimeUnit.MILLISECONDS);
+    assertEquals(tripped, adminServiceSelector.select(services, true));
+
+    ticker.advance(1, TimeUnit.MILLISECONDS);
+    // only retryable requests probe
+    assertEquals(tripped, adminServiceSelector.select(services, false));
+    assertEquals(services, adminServiceSelector.select(services, true));
+    // only one request probes at a time
+    assertEquals(tripped, adminServiceSelector.select(services, true));
+
+    // probe failed, wait for another open duration
+    request(serviceOne, 10, socketTimeoutException);
+    assertEquals(tripped, adminServiceSelector.select(services, true));
+    ticker.advance(1000, TimeUnit.MILLISECONDS);
+    assertEquals(services, adminServiceSelector.select(services, true));
+
+    // probe succeeded
+    request(serviceOne, 10, null);
+    assertEquals(Lists.newArrayList(serviceTwo, serviceOne, serviceThree),
+        adminServiceSelector.select(services, false));
+  }
+
+  @Test
+  public void testStatsDroppedForServicesGone() throws Exception {
+    request(serviceOne, 10, socketTimeoutException);
+    request(serviceOne, 10, socketTimeoutException);
+
+    assertEquals(Lists.newArrayList(serviceTwo, serviceThree, serviceOne), adminServiceSelector.select(services, false));
+
+    // serviceOne is not in the list for a while, while the others are still selected
+    List<ServiceDTO> remainingServices = Lists.newArrayList(serviceTwo, serviceThree);
+    for (int i = 0; i < 11; i++) {
+      ticker.advance(1, TimeUnit.MINUTES);
+      assertEquals(remainingServices, adminServiceSelector.select(remainingServices, false));
+    }
+
+    // a new instance with the same address starts over
+    assertEquals(services, adminServiceSelector.select(services, false));
+    assertEquals(3, ((Cache<?, ?>) ReflectionTestUtils.getField(adminServiceSelector, "serviceStats")).size());
+  }
+
+  private void request(ServiceDTO service, long latencyInMillis, Throwable exception) {
+    long startTime = adminServiceSelector.beforeRequest(service);
+    ticker.advance(latencyInMillis, TimeUnit.MILLISECONDS);
+    adminServiceSelector.afterRequest(service, startTime, exception);
+  }
+
+  private ServiceDTO mockService(String homePageUrl) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(homePageUrl);
+    return serviceDTO;
+  }
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = 1;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long time, TimeUnit timeUnit) {
+      nanos += timeUnit.toNanos(time);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import com.ctrip.framework.apollo.common.exception.ServiceException;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.entry;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FanOutExecutorTest {
+  @Mock
+  private PortalConfig portalConfig;
+
+  private FanOutExecutor fanOutExecutor;
+
+  @Before
+  public void setUp() throws Exception {
+    when(portalConfig.fanOutThreads()).thenReturn(4);
+
+    fanOutExecutor = new FanOutExecutor(portalConfig);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fanOutExecutor.destroy();
+  }
+
+  @Test
+  public void testInvokeAllInParallel() throws Exception {
+    List<String> keys = Lists.newArrayList("DEV", "FAT", "UAT", "PRO");
+    CountDownLatch allStarted = new CountDownLatch(keys.size());
+
+    when(portalConfig.fanOutTimeout()).thenReturn(5000);
+
+    // every call waits for the others, so they only complete when running in parallel
+    Map<String, String> results = fanOutExecutor.invokeAll("someCall", keys, key -> {
+      allStarted.countDown();
+      try {
+        allStarted.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return key.toLowerCase();
+    });
+
+    assertThat(allStarted.getCount()).isEqualTo(0);
+    assertThat(results).containsExactly(entry("DEV", "dev"), entry("FAT", "fat"), entry("UAT", "uat"),
+        entry("PRO", "pro"));
+  }
+
+  @Test
+  public void testInvokeAllWithPartialResults() throws Exception {
+    List<String> keys = Lists.newArrayList("DEV", "FAT", "UAT", "PRO");
+    CountDownLatch never = new CountDownLatch(1);
+    AtomicInteger interrupted = new AtomicInteger();
+
+    long start = System.currentTimeMillis();
+    Map<String, String> results = fanOutExecutor.invokeAll("someCall", keys, key -> {
+      switch (key) {
+        case "FAT":
+          throw new IllegalStateException("some error");
+        case "UAT":
+          try {
+            never.await();
+          } catch (InterruptedException e) {
+            interrupted.incrementAndGet();
+          }
+          return key;
+        case "PRO":
+          return null;
+        default:
+          return key;
+      }
+    }, 200);
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+    assertThat(results).containsOnlyKeys("DEV");
+
+    // the timed out call is cancelled
+    await().atMost(5, TimeUnit.SECONDS).until(() -> interrupted.get() == 1);
+  }
+
+  @Test
+  public void testInvokeAllOrFail() throws Exception {
+    List<String> keys = Lists.newArrayList("DEV", "FAT", "UAT");
+
+    when(portalConfig.fanOutTimeout()).thenReturn(5000);
+
+    // null results are not failures
+    Map<String, String> results = fanOutExecutor.invokeAllOrFail("someCall", keys,
+        key -> "FAT".equals(key) ? null : key.toLowerCase());
+
+    assertThat(results).containsExactly(entry("DEV", "dev"), entry("UAT", "uat"));
+
+    assertThatExceptionOfType(ServiceException.class)
+        .isThrownBy(() -> fanOutExecutor.invokeAllOrFail("someCall", keys, key -> {
+          if ("DEV".equals(key)) {
+            return key;
+          }
+          throw new IllegalStateException("some error");
+        }))
+        .withMessage("someCall failed or timed out for [FAT, UAT]");
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 Apollo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ctrip.framework.apollo.portal.component;
+
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.environment.Env;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RestTemplateFactoryTest {
+  @Mock
+  private PortalConfig portalConfig;
+
+  private SimpleMeterRegistry meterRegistry;
+  private RestTemplateFactory restTemplateFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    when(portalConfig.connectionPoolMaxTotal()).thenReturn(200);
+    when(portalConfig.connectionPoolDefaultMaxPerRoute()).thenReturn(50);
+    when(portalConfig.connectionPoolIdleTimeout()).thenReturn(60000);
+
+    meterRegistry = new SimpleMeterRegistry();
+    restTemplateFactory = new RestTemplateFactory(new HttpMessageConverters(), portalConfig, meterRegistry);
+    restTemplateFactory.afterPropertiesSet();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    restTemplateFactory.destroy();
+  }
+
+  @Test
+  public void testSetMaxConnectionsPerRoute() throws Exception {
+    int someMaxPerRoute = 7;
+    ServiceDTO someService = new ServiceDTO();
+    someService.setHomepageUrl("http://10.0.0.1:8090/");
+    ServiceDTO anotherService = new ServiceDTO();
+    anotherService.setHomepageUrl("https://admin.example.com");
+
+    when(portalConfig.connectionPoolMaxPerRoute(Env.PRO)).thenReturn(someMaxPerRoute);
+
+    restTemplateFactory.setMaxConnectionsPerRoute(Env.PRO, Lists.newArrayList(someService, anotherService));
+
+    // the limits should be set on the routes planned by http client
+    PoolingHttpClientConnectionManager connectionManager = (PoolingHttpClientConnectionManager) ReflectionTestUtils
+        .getField(restTemplateFactory, "connectionManager");
+    DefaultRoutePlanner routePlanner = new DefaultRoutePlanner(null);
+    HttpRoute someRoute = routePlanner.determineRoute(new HttpHost("10.0.0.1", 8090, "http"),
+        new HttpGet("http://10.0.0.1:8090/apps"), new BasicHttpContext());
+    HttpRoute anotherRoute = routePlanner.determineRoute(new HttpHost("admin.example.com", -1, "https"),
+        new HttpGet("https://admin.example.com/apps"), new BasicHttpContext());
+    HttpRoute yetAnotherRoute = routePlanner.determineRoute(new HttpHost("10.0.0.2", 8090, "http"),
+        new HttpGet("http://10.0.0.2:8090/apps"), new BasicHttpContext());
+
+    assertEquals(someMaxPerRoute, connectionManager.getMaxPerRoute(someRoute));
+    assertEquals(someMaxPerRoute, connectionManager.getMaxPerRoute(anotherRoute));
+    assertEquals(50, connectionManager.getMaxPerRoute(yetAnotherRoute));
+  }
+
+  @Test
+  public void testConnectionPoolMetrics() throws Exception {
+    assertEquals(200, meterRegistry.get("apollo.portal.http-client.connections.max").gauge().value(), 0);
+    assertEquals(0, meterRegistry.get("apollo.portal.http-client.connections.leased").gauge().value(), 0);
+    assertEquals(0, meterRegistry.get("apollo.portal.http-client.connections.pending").gauge().value(), 0);
+  }
+}
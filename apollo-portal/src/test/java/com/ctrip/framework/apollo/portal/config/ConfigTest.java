@@ -19,6 +19,7 @@ package com.ctrip.framework.apollo.portal.config;
 
 import com.ctrip.framework.apollo.portal.AbstractUnitTest;
 import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
+import com.ctrip.framework.apollo.portal.environment.Env;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -86,5 +87,15 @@ public class ConfigTest extends AbstractUnitTest{
 
   }
 
+  @Test
+  public void testConnectionPoolMaxPerRoute() {
+    when(environment.getProperty("api.pool.maxPerRoute")).thenReturn("20");
+    when(environment.getProperty("api.pool.maxPerRoute.envs")).thenReturn("{\"pro\": 100, \"dev\": 0}");
+
+    Assert.assertEquals(100, config.connectionPoolMaxPerRoute(Env.PRO));
+    Assert.assertEquals(20, config.connectionPoolMaxPerRoute(Env.DEV));
+    Assert.assertEquals(20, config.connectionPoolMaxPerRoute(Env.FAT));
+  }
+
 
 }
@@ -18,11 +18,15 @@ package com.ctrip.framework.apollo.portal.service;
 
 import com.ctrip.framework.apollo.common.dto.ClusterDTO;
 import com.ctrip.framework.apollo.common.dto.ItemDTO;
+import com.ctrip.framework.apollo.common.dto.NamespaceBundleDTO;
 import com.ctrip.framework.apollo.common.dto.NamespaceDTO;
 import com.ctrip.framework.apollo.common.dto.ReleaseDTO;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.ServiceException;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.portal.component.FanOutExecutor;
 import com.ctrip.framework.apollo.portal.component.PortalSettings;
+import com.ctrip.framework.apollo.portal.component.config.PortalConfig;
 import com.ctrip.framework.apollo.portal.entity.vo.NamespaceUsage;
 import com.ctrip.framework.apollo.portal.environment.Env;
 import com.ctrip.framework.apollo.portal.AbstractUnitTest;
@@ -37,6 +41,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -48,6 +55,7 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOf
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -76,6 +84,8 @@ public class NamespaceServiceTest extends AbstractUnitTest {
   private PortalSettings portalSettings;
   @Mock
   private ClusterService clusterService;
+  @Spy
+  private FanOutExecutor fanOutExecutor = new FanOutExecutor(new PortalConfig(mock(PortalDBPropertySource.class)));
 
   @InjectMocks
   private NamespaceService namespaceService;
@@ -122,6 +132,8 @@ public class NamespaceServiceTest extends AbstractUnitTest {
     when(appNamespaceService.findByAppIdAndName(testAppId, testNamespaceName))
         .thenReturn(applicationAppNamespace);
     when(appNamespaceService.findPublicAppNamespace("hermes")).thenReturn(hermesAppNamespace);
+    when(namespaceAPI.findNamespaceBundles(testAppId, Env.DEV, testClusterName, true))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
     when(namespaceAPI.findNamespaceByCluster(testAppId, Env.DEV, testClusterName)).thenReturn(namespaces);
     when(releaseService.loadLatestRelease(testAppId, Env.DEV, testClusterName,
                                           testNamespaceName)).thenReturn(someRelease);
@@ -151,6 +163,65 @@ public class NamespaceServiceTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testFindNamespaceBundles() {
+    AppNamespace applicationAppNamespace = createAppNamespace(testAppId, testNamespaceName, false);
+    applicationAppNamespace.setFormat(ConfigFileFormat.Properties.getValue());
+    AppNamespace hermesAppNamespace = createAppNamespace("someOtherAppId", "hermes", true);
+    hermesAppNamespace.setFormat(ConfigFileFormat.XML.getValue());
+
+    NamespaceDTO application = createNamespace(testAppId, testClusterName, testNamespaceName);
+    application.setId(1);
+    NamespaceDTO hermes = createNamespace(testAppId, testClusterName, "hermes");
+    hermes.setId(2);
+
+    ReleaseDTO someRelease = new ReleaseDTO();
+    someRelease.setConfigurations("{\"a\":\"123\",\"b\":\"123\",\"d\":\"123\"}");
+
+    ItemDTO i1 = new ItemDTO("a", "123", "", 1);
+    ItemDTO i2 = new ItemDTO("b", "1", "", 2);
+    ItemDTO i3 = new ItemDTO("", "", "#dddd", 3);
+    ItemDTO i4 = new ItemDTO("c", "1", "", 4);
+    ItemDTO deletedItem = new ItemDTO("d", "123", "", 5);
+    ItemDTO hermesItem = new ItemDTO("x", "y", "", 1);
+
+    NamespaceBundleDTO applicationBundle = new NamespaceBundleDTO();
+    applicationBundle.setNamespace(application);
+    applicationBundle.setLatestRelease(someRelease);
+    applicationBundle.setItems(Arrays.asList(i1, i2, i3, i4));
+    applicationBundle.setDeletedItems(Collections.singletonList(deletedItem));
+    NamespaceBundleDTO hermesBundle = new NamespaceBundleDTO();
+    hermesBundle.setNamespace(hermes);
+    hermesBundle.setItems(Collections.singletonList(hermesItem));
+
+    when(appNamespaceService.findByAppIdAndName(testAppId, testNamespaceName)).thenReturn(applicationAppNamespace);
+    when(appNamespaceService.findPublicAppNamespace("hermes")).thenReturn(hermesAppNamespace);
+    when(namespaceAPI.findNamespaceBundles(testAppId, Env.DEV, testClusterName, true))
+        .thenReturn(Arrays.asList(hermesBundle, applicationBundle));
+
+    List<NamespaceBO> namespaceBOs = namespaceService.findNamespaceBOs(testAppId, Env.DEV, testClusterName);
+
+    assertEquals(2, namespaceBOs.size());
+    NamespaceBO applicationBO = namespaceBOs.get(0);
+    assertEquals(testNamespaceName, applicationBO.getBaseInfo().getNamespaceName());
+    assertEquals(ConfigFileFormat.Properties.getValue(), applicationBO.getFormat());
+    assertEquals(5, applicationBO.getItems().size());
+    assertEquals(3, applicationBO.getItemModifiedCnt());
+    assertThat(applicationBO.getItems().get(4).isDeleted()).isTrue();
+    assertEquals("d", applicationBO.getItems().get(4).getItem().getKey());
+    NamespaceBO hermesBO = namespaceBOs.get(1);
+    assertEquals("hermes", hermesBO.getBaseInfo().getNamespaceName());
+    assertEquals(ConfigFileFormat.XML.getValue(), hermesBO.getFormat());
+    assertEquals(1, hermesBO.getItemModifiedCnt());
+
+    // user info of all the namespaces is enriched at once, and nothing is loaded namespace by namespace
+    verify(additionalUserInfoEnrichService, times(1)).enrichAdditionalUserInfo(any(), any());
+    verify(namespaceAPI, never()).findNamespaceByCluster(any(), any(), any());
+    verify(releaseService, never()).loadLatestRelease(any(), any(), any(), any());
+    verify(itemService, never()).findItems(any(), any(), any(), any());
+    verify(itemService, never()).findDeletedItems(any(), any(), any(), any());
+  }
+
   @Test
   public void testDeletePrivateNamespace() {
     String operator = "user";
@@ -199,6 +270,26 @@ public class NamespaceServiceTest extends AbstractUnitTest {
     assertThat(usage.getLinkedNamespaceCount()).isEqualTo(0);
   }
 
+  @Test
+  public void testGetNamespaceUsageWithUnavailableEnv() {
+    Env anotherEnv = Env.FAT;
+    AppNamespace privateNamespace = createAppNamespace(testAppId, testNamespaceName, false);
+
+    when(portalSettings.getActiveEnvs()).thenReturn(Lists.newArrayList(testEnv, anotherEnv));
+    ClusterDTO cluster = new ClusterDTO();
+    cluster.setName(testClusterName);
+    cluster.setAppId(testAppId);
+    when(clusterService.findClusters(testEnv, testAppId)).thenReturn(Lists.newArrayList(cluster));
+    when(clusterService.findClusters(anotherEnv, testAppId)).thenThrow(new IllegalStateException("unavailable"));
+    when(appNamespaceService.findByAppIdAndName(testAppId, testNamespaceName)).thenReturn(privateNamespace);
+
+    //the usage is incomplete without the unavailable env, so it fails instead of being partial
+    assertThatExceptionOfType(ServiceException.class)
+        .isThrownBy(() -> namespaceService.getNamespaceUsageByAppId(testAppId, testNamespaceName))
+        .withMessageContaining(anotherEnv.toString());
+    verify(instanceService, never()).getInstanceCountByNamespace(any(), any(), any(), any());
+  }
+
   @Test
   public void testDeleteEmptyNamespace() {
     String branchName = "branch";
@@ -320,6 +320,68 @@ public class RolePermissionServiceTest extends AbstractIntegrationTest {
 
   }
 
+  @Test
+  @Sql(scripts = "/sql/permission/insert-test-roles.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-permissions.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-userroles.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-rolepermissions.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testUserHasPermissionWithDifferentCase() throws Exception {
+    String someUser = "someUser";
+    String someUserWithNoPermission = "someUserWithNoPermission";
+
+    // the target id is compared case-insensitively by PortalDB, e.g. the appId in the request path
+    assertTrue(rolePermissionService.userHasPermission(someUser, "somePermissionType", "SOMETARGETID"));
+    assertTrue(rolePermissionService.userHasPermission(someUser, "SomePermissionType", "sometargetid"));
+
+    assertFalse(rolePermissionService.userHasPermission(someUserWithNoPermission, "somePermissionType",
+        "SOMETARGETID"));
+  }
+
+  @Test
+  @Sql(scripts = "/sql/permission/insert-test-roles.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-permissions.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-rolepermissions.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testUserHasPermissionAfterRolesChanged() throws Exception {
+    String someRoleName = "someRoleName";
+    String someTargetId = "someTargetId";
+    String somePermissionType = "somePermissionType";
+    String someUser = "someUserWithRolesChanged";
+    Set<String> users = Sets.newHashSet(someUser);
+
+    assertFalse(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+
+    rolePermissionService.assignRoleToUsers(someRoleName, users, someCreatedBy);
+    assertTrue(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+
+    rolePermissionService.removeRoleFromUsers(someRoleName, users, someLastModifiedBy);
+    assertFalse(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+  }
+
+  @Test
+  @Sql(scripts = "/sql/permission/insert-test-roles.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-permissions.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/permission/insert-test-rolepermissions.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/sql/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testUserHasPermissionCached() throws Exception {
+    String someRoleName = "someRoleName";
+    String someTargetId = "someTargetId";
+    String somePermissionType = "somePermissionType";
+    String someUser = "someUserWithPermissionCached";
+
+    rolePermissionService.assignRoleToUsers(someRoleName, Sets.newHashSet(someUser), someCreatedBy);
+    assertTrue(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+
+    // changes not made by the service are not seen until the cache expires
+    userRoleRepository.deleteAll(userRoleRepository.findByUserId(someUser));
+    assertTrue(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+
+    // all the cached permissions are invalidated when the permissions of an app are deleted
+    rolePermissionService.deleteRolePermissionsByAppId("someAppId", someLastModifiedBy);
+    assertFalse(rolePermissionService.userHasPermission(someUser, somePermissionType, someTargetId));
+  }
+
   private Role assembleRole(String roleName) {
     Role role = new Role();
     role.setRoleName(roleName);